@@ -0,0 +1,33 @@
+package com.github.karsaig.approvalcrest.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, which takes the usual JMH options, always with the GC profiler so
+ * the allocation per assertion is reported next to the throughput.
+ * <p>
+ * The module is only built with the {@code benchmarks} profile:
+ * <pre>
+ * mvn install -Pbenchmarks -DskipTests
+ * java -jar approvalcrest-benchmarks/target/benchmarks.jar SameBeanAsBenchmark -p nodes=1000
+ * </pre>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
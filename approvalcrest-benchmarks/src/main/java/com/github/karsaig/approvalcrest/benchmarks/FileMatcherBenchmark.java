@@ -0,0 +1,105 @@
+package com.github.karsaig.approvalcrest.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.karsaig.approvalcrest.FileMatcherConfig;
+import com.github.karsaig.approvalcrest.matcher.ContentMatcher;
+import com.github.karsaig.approvalcrest.matcher.JsonMatcher;
+import com.github.karsaig.approvalcrest.matcher.TestMetaInformation;
+import com.github.karsaig.approvalcrest.testdata.Person;
+import com.github.karsaig.approvalcrest.util.InMemoryFsInfo;
+import com.github.karsaig.approvalcrest.util.InMemoryFsUtil;
+import com.google.common.jimfs.Jimfs;
+
+/**
+ * Throughput of {@code sameJsonAsApproved} and {@code sameContentAsApproved} assertions that pass, reading their
+ * approved files from an in-memory file system. The approved files are created by the matchers themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileMatcherBenchmark {
+
+    private static final FileMatcherConfig APPROVING_CONFIG = new FileMatcherConfig(false, true, false, false, true);
+    private static final FileMatcherConfig MATCHING_CONFIG = new FileMatcherConfig(false, false, false, false, true);
+
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+
+    private FileSystem fileSystem;
+    private TestMetaInformation testMeta;
+    private List<Person> actual;
+    private String actualContent;
+
+    @Setup
+    public void setUp() throws IOException {
+        fileSystem = Jimfs.newFileSystem(InMemoryFsUtil.JIMFS_UNIX_CONFIG);
+        Path testPath = Files.createDirectories(fileSystem.getPath("test", "path"));
+        Path resourcePath = Files.createDirectories(fileSystem.getPath("resources"));
+        testMeta = new InMemoryTestMeta(new InMemoryFsInfo(fileSystem, testPath, resourcePath, fileSystem.getPath("work")));
+        actual = Fixtures.people(nodes);
+        actualContent = Fixtures.content(nodes);
+
+        new JsonMatcher<>(testMeta, APPROVING_CONFIG).matches(actual);
+        new ContentMatcher<>(testMeta, APPROVING_CONFIG).matches(actualContent);
+        approveCreatedFiles();
+
+        verify(sameJsonAsApproved(), "sameJsonAsApproved");
+        verify(sameContentAsApproved(), "sameContentAsApproved");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Benchmark
+    public boolean sameJsonAsApproved() {
+        return new JsonMatcher<>(testMeta, MATCHING_CONFIG).matches(actual);
+    }
+
+    @Benchmark
+    public boolean sameContentAsApproved() {
+        return new ContentMatcher<>(testMeta, MATCHING_CONFIG).matches(actualContent);
+    }
+
+    private void approveCreatedFiles() throws IOException {
+        List<Path> notApproved;
+        try (Stream<Path> files = Files.walk(fileSystem.getPath("/"))) {
+            notApproved = files.filter(file -> file.getFileName() != null && file.getFileName().toString().contains("-not-approved."))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : notApproved) {
+            Files.move(file, file.resolveSibling(file.getFileName().toString().replace("-not-approved.", "-approved.")));
+        }
+    }
+
+    private static void verify(boolean matches, String benchmark) {
+        if (!matches) {
+            throw new IllegalStateException(benchmark + " does not match its approved file");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.karsaig.approvalcrest.benchmarks;
+
+import static com.github.karsaig.approvalcrest.testdata.cyclic.CircularReferenceBean.Builder.circularReferenceBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.karsaig.approvalcrest.testdata.Person;
+import com.github.karsaig.approvalcrest.testdata.cyclic.CircularReferenceBean;
+import com.github.karsaig.approvalcrest.util.TestDataGenerator;
+
+/**
+ * Builds the inputs of the benchmarks from the {@code testing-common} fixtures, scaled to a number of nodes: the JSON
+ * values, objects and arrays included, the input serialises to.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Generated persons serialising to about {@code nodes} values. Each person serialises to its object, five
+     * properties, its current address with six properties, and an array of previous addresses alike.
+     */
+    static List<Person> people(int nodes) {
+        List<Person> result = new ArrayList<>();
+        int remaining = nodes - 1;
+        for (long index = 1L; remaining > 0; index++) {
+            Person person = TestDataGenerator.generatePerson(index);
+            result.add(person);
+            remaining -= 14 + 7 * person.getPreviousAddresses().size();
+        }
+        return result;
+    }
+
+    /**
+     * {@link #people(int)}, with every list of previous addresses reversed.
+     */
+    static List<Person> peopleWithReversedAddresses(int nodes) {
+        List<Person> result = people(nodes);
+        for (Person person : result) {
+            Collections.reverse(person.getPreviousAddresses());
+        }
+        return result;
+    }
+
+    /**
+     * A parent referencing children that all reference it back. Each child serialises to its object, its attribute and
+     * the reference to the parent.
+     */
+    static CircularReferenceBean cyclic(int nodes) {
+        String[] childAttributes = new String[Math.max(1, (nodes - 4) / 3)];
+        for (int i = 0; i < childAttributes.length; i++) {
+            childAttributes[i] = "child" + i;
+        }
+        return circularReferenceBean("parent", childAttributes).build();
+    }
+
+    /**
+     * Text with one line per node.
+     */
+    static String content(int nodes) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < nodes; i++) {
+            result.append("Line ").append(i).append(" of the content to approve\n");
+        }
+        return result.toString();
+    }
+}
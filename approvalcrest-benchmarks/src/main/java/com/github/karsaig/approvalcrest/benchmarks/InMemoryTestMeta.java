@@ -0,0 +1,43 @@
+package com.github.karsaig.approvalcrest.benchmarks;
+
+import java.nio.file.Path;
+
+import com.github.karsaig.approvalcrest.matcher.TestMetaInformation;
+import com.github.karsaig.approvalcrest.util.InMemoryFsInfo;
+
+/**
+ * Test information placing approved files on an in-memory file system.
+ */
+class InMemoryTestMeta implements TestMetaInformation {
+
+    private final InMemoryFsInfo fileSystem;
+
+    InMemoryTestMeta(InMemoryFsInfo fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    @Override
+    public Path getTestClassPath() {
+        return fileSystem.getTestPath();
+    }
+
+    @Override
+    public String testClassName() {
+        return "FileMatcherBenchmark";
+    }
+
+    @Override
+    public String testMethodName() {
+        return "approved";
+    }
+
+    @Override
+    public Path getApprovedDirectory() {
+        return fileSystem.getResourcePath();
+    }
+
+    @Override
+    public Path workingDirectory() {
+        return fileSystem.getWorkingDirectory();
+    }
+}
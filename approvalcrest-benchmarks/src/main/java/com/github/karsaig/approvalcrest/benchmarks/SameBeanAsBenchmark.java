@@ -0,0 +1,113 @@
+package com.github.karsaig.approvalcrest.benchmarks;
+
+import static org.hamcrest.Matchers.startsWith;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.karsaig.approvalcrest.matcher.DiagnosingCustomisableMatcher;
+import com.github.karsaig.approvalcrest.testdata.Person;
+import com.github.karsaig.approvalcrest.testdata.cyclic.CircularReferenceBean;
+
+/**
+ * Throughput of {@code sameBeanAs} assertions that pass, each creating its matcher like an assertion in a test does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SameBeanAsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+
+    private List<Person> expected;
+    private List<Person> actual;
+    private List<Person> actualWithReversedAddresses;
+    private CircularReferenceBean expectedCyclic;
+    private CircularReferenceBean actualCyclic;
+
+    @Setup
+    public void setUp() {
+        expected = Fixtures.people(nodes);
+        actual = Fixtures.people(nodes);
+        actualWithReversedAddresses = Fixtures.peopleWithReversedAddresses(nodes);
+        expectedCyclic = Fixtures.cyclic(nodes);
+        actualCyclic = Fixtures.cyclic(nodes);
+
+        verify(sameBeanAs(), "sameBeanAs");
+        verify(ignoringPath(), "ignoringPath");
+        verify(ignoringPattern(), "ignoringPattern");
+        verify(ignoringType(), "ignoringType");
+        verify(sortField(), "sortField");
+        verify(aliases(), "aliases");
+        verify(cyclicGraph(), "cyclicGraph");
+    }
+
+    @Benchmark
+    public boolean sameBeanAs() {
+        return new DiagnosingCustomisableMatcher<>(expected).matches(actual);
+    }
+
+    @Benchmark
+    public boolean ignoringPath() {
+        return new DiagnosingCustomisableMatcher<>(expected)
+                .ignoring("currentAddress.streetName", "previousAddresses.postCode")
+                .matches(actual);
+    }
+
+    @Benchmark
+    public boolean ignoringPattern() {
+        return new DiagnosingCustomisableMatcher<>(expected)
+                .ignoring(startsWith("street"))
+                .matches(actual);
+    }
+
+    @Benchmark
+    public boolean ignoringType() {
+        return new DiagnosingCustomisableMatcher<>(expected)
+                .ignoring(LocalDate.class)
+                .matches(actual);
+    }
+
+    @Benchmark
+    public boolean sortField() {
+        return new DiagnosingCustomisableMatcher<>(expected)
+                .sortField("previousAddresses")
+                .matches(actualWithReversedAddresses);
+    }
+
+    @Benchmark
+    public boolean aliases() {
+        return new DiagnosingCustomisableMatcher<>(expected)
+                .withAlias("BELGIUM", "B")
+                .withAlias("city", "CityName1", "C1")
+                .matches(actual);
+    }
+
+    @Benchmark
+    public boolean cyclicGraph() {
+        return new DiagnosingCustomisableMatcher<>(expectedCyclic).matches(actualCyclic);
+    }
+
+    private static void verify(boolean matches, String benchmark) {
+        if (!matches) {
+            throw new IllegalStateException(benchmark + " does not match its input");
+        }
+    }
+}
@@ -9,16 +9,19 @@
  */
 package com.github.karsaig.approvalcrest;
 
-import static com.github.karsaig.approvalcrest.JsonElementUtil.anyMatchesFieldName;
+import static java.lang.reflect.Modifier.isFinal;
 import static java.lang.reflect.Modifier.isStatic;
 import static java.util.Collections.newSetFromMap;
 import static org.apache.commons.lang3.ClassUtils.isPrimitiveOrWrapper;
 
 import java.io.Closeable;
 import java.lang.reflect.Field;
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,8 +35,39 @@ import org.hamcrest.Matcher;
  */
 public class CyclicReferenceDetector {
 
-    private Set<Object> nodesInPaths = newSetFromMap(new IdentityHashMap<>());
-    private Set<Object> objectsWithCircularReferences = newSetFromMap(new IdentityHashMap<>());
+    // Whether the instances of a class are certain to be acyclic, worked out once per class from the declared types of
+    // its fields: when every field holds a leaf or an instance of a final class that is itself acyclic, no object can
+    // be reached twice on a path starting from one of its instances
+    private static final ClassValue<Boolean> ACYCLIC_TYPES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return decideIsAcyclic(type);
+        }
+    };
+    // Classes whose decision is being worked out on the current thread, reaching one of them again means a cycle
+    private static final ThreadLocal<Set<Class<?>>> TYPES_BEING_DECIDED = ThreadLocal.withInitial(HashSet::new);
+
+    // The instance fields each class declares, not including the ones of its superclasses
+    private static final ClassValue<Field[]> INSTANCE_FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<>();
+            for (Field field : type.getDeclaredFields()) {
+                if (!isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private final Deque<Frame> path = new ArrayDeque<>();
+    private final Map<Object, FieldsFrame> objectsInPath = new IdentityHashMap<>();
+    private final Set<Object> visitedContainers = newSetFromMap(new IdentityHashMap<>());
+    private final Set<Object> exploredObjects = newSetFromMap(new IdentityHashMap<>());
+    private final Set<Object> objectsWithCircularReferences = newSetFromMap(new IdentityHashMap<>());
+    private FieldNamePatterns<Matcher<String>> patternsToIgnore;
 
     /**
      * Returns a set of classes that have circular reference.
@@ -46,7 +80,7 @@ public class CyclicReferenceDetector {
         CyclicReferenceDetector cyclicReferenceDetector = new CyclicReferenceDetector();
 
         if (object != null) {
-            cyclicReferenceDetector.detectCircularReferenceOnObject(object, matcherConfiguration);
+            cyclicReferenceDetector.detectCircularReferences(object, matcherConfiguration);
         }
 
         return getClasses(cyclicReferenceDetector.objectsWithCircularReferences);
@@ -67,78 +101,124 @@ public class CyclicReferenceDetector {
     }
 
     /**
-     * Detects classes that have circular reference.
+     * Walks the object graph depth first, keeping the path from the root on a deque instead of the call stack, so deep
+     * graphs do not overflow it.
      *
-     * @param object the object to check if it has circular reference fields
-     * @param clazz  the class being used (necessary if we also checking super class as getDeclaredFields only returns
-     *               fields of a given class, but not its super class)
+     * @param root the object to check if it has circular reference fields
      */
-    private void detectCircularReferenceOnFields(Object object, Class<?> clazz, MatcherConfiguration matcherConfiguration) {
-        if (objectsWithCircularReferences.contains(object)) {
-            return;
-        }
-
-        for (Field field : clazz.getDeclaredFields()) {
-            if (!isStatic(field.getModifiers())) {
-                if (!anyMatchesFieldName(field, matcherConfiguration.getPatternsToIgnore())) {
-                    try {
-                        Object fieldValue = ReflectUtil.getFieldValue(field, object);
-                        if (fieldValue != null) {
-                            detectCircularReferenceOnObject(fieldValue, matcherConfiguration);
-                        }
-                    } catch (InaccessibleFieldException e) {
-                        // Field is in a locked module and Unsafe is unavailable — skip it.
-                        // If we can't read it, Gson can't serialize it reflectively either;
-                        // the getter-based adapter will handle it during serialization.
-                    }
+    private void detectCircularReferences(Object root, MatcherConfiguration matcherConfiguration) {
+        patternsToIgnore = matcherConfiguration.getFieldNamePatternsToIgnore();
+        detectCircularReferenceOnObject(root, matcherConfiguration);
+        while (!path.isEmpty()) {
+            Frame frame = path.peek();
+            Object next = frame.next(matcherConfiguration);
+            if (next != null) {
+                detectCircularReferenceOnObject(next, matcherConfiguration);
+            } else {
+                path.pop();
+                frame.leave();
+                if (!path.isEmpty()) {
+                    path.peek().reachedFrame(frame.lowestReachedDepth);
                 }
             }
         }
-        detectCircularReferencesFromTheSuperClass(object, clazz, matcherConfiguration);
     }
 
-
-
     /**
-     * Detects circular reference on a given field.
-     * If a field is a {@link Iterable} or a {@link Map}, loops through the values and
-     * detects cycles.
+     * Detects circular reference on a given object: records it when it is already on the path, or puts it on the
+     * path so its fields, or the values of an {@link Iterable} or a {@link Map}, are checked next.
      *
      * @param object the object to detect circular reference on
      */
-    @SuppressWarnings({"unchecked", "rawtypes"})
+    @SuppressWarnings("unchecked")
     private void detectCircularReferenceOnObject(Object object, MatcherConfiguration matcherConfiguration) {
-        if (isIgnoredType(object, matcherConfiguration)) {
+        if (isAcyclic(object.getClass()) || exploredObjects.contains(object) || isIgnoredType(object, matcherConfiguration)) {
             return;
         }
 
-        boolean isValid = validateAnObject(object);
-        boolean isInPath = nodesInPaths.contains(object);
-
-        if (!isValid && isInPath) {
+        FieldsFrame inPath = objectsInPath.get(object);
+        if (inPath != null) {
+            objectsWithCircularReferences.add(object);
+            path.peek().reachedFrame(inPath.depth);
             return;
         }
 
-        if (isInPath) {
-            objectsWithCircularReferences.add(object);
+        if (visitedContainers.contains(object)) {
             return;
         }
 
         if (object instanceof Iterable && !treatAsNotIterable(object)) {
-            nodesInPaths.add(object);
-            detectCircularReferenceFromObjectsContainedInAnIterable((Iterable) object, matcherConfiguration);
+            visitedContainers.add(object);
+            path.push(new ElementsFrame(((Iterable<Object>) object).iterator(), null));
         } else if (object instanceof Map) {
-            nodesInPaths.add(object);
-            detectCircularReferencesFromObjectsInAMap((Map) object, matcherConfiguration);
+            visitedContainers.add(object);
+            Map<Object, Object> map = (Map<Object, Object>) object;
+            path.push(new ElementsFrame(map.values().iterator(), map.keySet()));
+        } else if (validateAnObject(object)) {
+            FieldsFrame frame = new FieldsFrame(object, path.size());
+            objectsInPath.put(object, frame);
+            path.push(frame);
         }
+    }
 
-        if (isValid) {
-            nodesInPaths.add(object);
-            detectCircularReferenceOnFields(object, object.getClass(), matcherConfiguration);
-            nodesInPaths.remove(object);
+    /**
+     * Checks whether no instance of the given class can take part in a circular reference, whatever its field values.
+     * The subgraph of such an instance is skipped as a whole.
+     *
+     * @param type the runtime class of an object, or the final type of a field
+     * @return true if the instances of the class are certain to be acyclic
+     */
+    public static boolean isAcyclic(Class<?> type) {
+        if (isLeaf(type)) {
+            return true;
+        }
+        if (Iterable.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type) || TYPES_BEING_DECIDED.get().contains(type)) {
+            return false;
+        }
+        return ACYCLIC_TYPES.get(type);
+    }
+
+    /**
+     * Checks whether no value of a field declared as the given type can take part in a circular reference: a leaf, or
+     * an instance of a final class that is itself acyclic.
+     *
+     * @param fieldType the declared type of a field
+     * @return true if the values of such a field are certain to be acyclic
+     */
+    public static boolean isAcyclicFieldType(Class<?> fieldType) {
+        return isLeaf(fieldType) || isFinal(fieldType.getModifiers()) && isAcyclic(fieldType);
+    }
+
+    private static boolean decideIsAcyclic(Class<?> type) {
+        Set<Class<?>> typesBeingDecided = TYPES_BEING_DECIDED.get();
+        typesBeingDecided.add(type);
+        try {
+            for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+                for (Field field : INSTANCE_FIELDS.get(clazz)) {
+                    if (!isAcyclicFieldType(field.getType())) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            typesBeingDecided.remove(type);
         }
     }
 
+    /**
+     * Checks whether the instances of a type are never looked into: the ones {@link #validateAnObject(Object)} rejects
+     * and are not iterated, and arrays, which have no declared fields.
+     */
+    private static boolean isLeaf(Class<?> type) {
+        return type.isPrimitive()
+                || isPrimitiveOrWrapper(type)
+                || type == String.class
+                || type == Class.class
+                || type.isArray()
+                || Enum.class.isAssignableFrom(type);
+    }
+
     private boolean isIgnoredType(Object object, MatcherConfiguration matcherConfiguration) {
         for (Class<?> clazz : matcherConfiguration.getTypesToIgnore()) {
             if (clazz.isInstance(object)) {
@@ -160,38 +240,111 @@ public class CyclicReferenceDetector {
     }
 
     /**
-     * For objects with super classes, check for objects subject to circular reference in super class.
-     *
-     * @param object the object to check if it has circular reference
-     * @param clazz  Used to prevent stackOverFlow exception
+     * An object on the path, with the values still to be checked below it.
      */
-    private void detectCircularReferencesFromTheSuperClass(Object object, Class<?> clazz, MatcherConfiguration matcherConfiguration) {
-        Class<?> superclass = clazz.getSuperclass();
+    private abstract static class Frame {
+        int lowestReachedDepth = Integer.MAX_VALUE;
+
+        /**
+         * Returns the next value to check, or null once there are none left.
+         */
+        abstract Object next(MatcherConfiguration matcherConfiguration);
 
-        if (superclass != null && validateAnObject(object)) {
-            detectCircularReferenceOnFields(object, superclass, matcherConfiguration);
+        void leave() {
+        }
+
+        /**
+         * Records that a value below this frame is, or leads back to, the object at the given depth of the path.
+         */
+        final void reachedFrame(int depth) {
+            lowestReachedDepth = Math.min(lowestReachedDepth, depth);
         }
     }
 
     /**
-     * Detects circular references on {@link Map}s, i.e HashMap, TreeMap, etc.
-     *
-     * @param map the {@link Map} with objects to checks for cyclic references on
+     * The non-null values of an {@link Iterable}, or the values and then the keys of a {@link Map}.
      */
-    private void detectCircularReferencesFromObjectsInAMap(Map<Object, Object> map, MatcherConfiguration matcherConfiguration) {
-        detectCircularReferenceFromObjectsContainedInAnIterable(map.values(), matcherConfiguration);
-        detectCircularReferenceFromObjectsContainedInAnIterable(map.keySet(), matcherConfiguration);
+    private static final class ElementsFrame extends Frame {
+        private Iterator<Object> elements;
+        private Iterable<Object> thenElements;
+
+        ElementsFrame(Iterator<Object> elements, Iterable<Object> thenElements) {
+            this.elements = elements;
+            this.thenElements = thenElements;
+        }
+
+        @Override
+        Object next(MatcherConfiguration matcherConfiguration) {
+            while (true) {
+                while (elements.hasNext()) {
+                    Object element = elements.next();
+                    if (element != null) {
+                        return element;
+                    }
+                }
+                if (thenElements == null) {
+                    return null;
+                }
+                elements = thenElements.iterator();
+                thenElements = null;
+            }
+        }
     }
 
     /**
-     * Detects circular references on {@link Iterable}s, i.e {@link Collection}s.
-     *
-     * @param iterable the object to iterate through.
+     * The non-null field values of an object, class by class up its hierarchy. The fields of superclasses are not
+     * checked once the object itself is found to have a circular reference.
      */
-    private void detectCircularReferenceFromObjectsContainedInAnIterable(Iterable<Object> iterable, MatcherConfiguration matcherConfiguration) {
-        for (Object elementInCollection : iterable) {
-            if (elementInCollection != null) {
-                detectCircularReferenceOnObject(elementInCollection, matcherConfiguration);
+    private final class FieldsFrame extends Frame {
+        private final Object object;
+        private final int depth;
+        private Class<?> clazz;
+        private Field[] fields;
+        private int nextField;
+
+        FieldsFrame(Object object, int depth) {
+            this.object = object;
+            this.depth = depth;
+            this.clazz = object.getClass();
+            this.fields = objectsWithCircularReferences.contains(object) ? NO_FIELDS : INSTANCE_FIELDS.get(clazz);
+        }
+
+        @Override
+        Object next(MatcherConfiguration matcherConfiguration) {
+            while (true) {
+                while (nextField < fields.length) {
+                    Field field = fields[nextField++];
+                    if (!patternsToIgnore.anyMatches(field.getName())) {
+                        try {
+                            Object fieldValue = ReflectUtil.getFieldValue(field, object);
+                            if (fieldValue != null) {
+                                return fieldValue;
+                            }
+                        } catch (InaccessibleFieldException e) {
+                            // Field is in a locked module and Unsafe is unavailable — skip it.
+                            // If we can't read it, Gson can't serialize it reflectively either;
+                            // the getter-based adapter will handle it during serialization.
+                        }
+                    }
+                }
+                clazz = clazz.getSuperclass();
+                if (clazz == null || objectsWithCircularReferences.contains(object)) {
+                    return null;
+                }
+                fields = INSTANCE_FIELDS.get(clazz);
+                nextField = 0;
+            }
+        }
+
+        /**
+         * Takes the object off the path. When nothing below it led back to it or above, its subgraph holds no path to
+         * an object that could be on the path later, so checking it again would find nothing new.
+         */
+        @Override
+        void leave() {
+            objectsInPath.remove(object);
+            if (lowestReachedDepth > depth) {
+                exploredObjects.add(object);
             }
         }
     }
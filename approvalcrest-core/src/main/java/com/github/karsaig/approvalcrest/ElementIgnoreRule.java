@@ -11,6 +11,8 @@ package com.github.karsaig.approvalcrest;
 
 import java.util.Objects;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.JsonElement;
 import org.hamcrest.Matcher;
 
@@ -22,10 +24,15 @@ import org.hamcrest.Matcher;
  * @see FieldsIgnorer#removeMatchingElements
  */
 public class ElementIgnoreRule {
+    private static final int MAX_CACHED_VALUES = 4096;
 
     private final String path;
     private final Matcher<?> valueMatcher;
     private final String value;
+    // The same few values come up in the elements of large arrays, the matcher is asked once for each
+    private final Cache<Object, Boolean> matchesByValue = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_VALUES)
+            .build();
 
     private ElementIgnoreRule(String path, Matcher<?> valueMatcher, String value) {
         this.path = path;
@@ -61,14 +68,19 @@ public class ElementIgnoreRule {
 
     /**
      * Whether the given leaf field element satisfies this rule and its containing element should
-     * therefore be removed.
+     * therefore be removed. The answer of the matcher is remembered for each primitive value, the
+     * matcher is expected to give the same answer for the same value every time.
      */
     public boolean matches(JsonElement leaf) {
         if (leaf == null) {
             return false;
         }
         if (valueMatcher != null) {
-            return valueMatcher.matches(JsonElementUtil.jsonElementToJavaValue(leaf));
+            Object javaValue = JsonElementUtil.jsonElementToJavaValue(leaf);
+            if (javaValue == null || javaValue instanceof JsonElement) {
+                return valueMatcher.matches(javaValue);
+            }
+            return matchesByValue.asMap().computeIfAbsent(javaValue, valueMatcher::matches);
         }
         return leaf.isJsonPrimitive() && value.equals(leaf.getAsString());
     }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.karsaig.approvalcrest;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * {@link ElementIgnoreRule}s with the paths leading to the arrays they filter compiled into a trie, so the rules
+ * sharing a prefix are followed down the Json tree together, and all of them are applied in one walk.
+ * <p>
+ * The rules are a snapshot of the given list, taken when this instance is created. Applying them removes and records
+ * the same as applying them one by one, in the order they were given.
+ */
+public final class ElementIgnoreRules {
+    private static final String PATH_SEPARATOR_PATTERN = Pattern.quote(".");
+    private static final ElementIgnoreRules NONE = new ElementIgnoreRules(emptyList());
+
+    private final List<ElementIgnoreRule> rules;
+    // The field within each element of the filtered array, by rule index
+    private final String[] leafFields;
+    private final Node root = new Node();
+
+    private ElementIgnoreRules(List<ElementIgnoreRule> rules) {
+        this.rules = unmodifiableList(new ArrayList<>(rules));
+        leafFields = new String[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            String[] segments = rules.get(i).getPath().split(PATH_SEPARATOR_PATTERN);
+            if (segments.length == 0) {
+                continue;
+            }
+            leafFields[i] = segments[segments.length - 1];
+            Node node = root;
+            node.rules.set(i);
+            for (int j = 0; j < segments.length - 1; j++) {
+                node = node.children.computeIfAbsent(segments[j], segment -> new Node());
+                node.rules.set(i);
+            }
+            node.ending.set(i);
+        }
+    }
+
+    /**
+     * Returns the rules removing no element.
+     */
+    public static ElementIgnoreRules none() {
+        return NONE;
+    }
+
+    public static ElementIgnoreRules of(List<ElementIgnoreRule> rules) {
+        return new ElementIgnoreRules(rules);
+    }
+
+    public List<ElementIgnoreRule> getRules() {
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Checks whether these rules are still the ones in the given list, the same instances in the same order.
+     */
+    public boolean isOf(List<ElementIgnoreRule> rules) {
+        if (this.rules.size() != rules.size()) {
+            return false;
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            if (this.rules.get(i) != rules.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the array elements matching the rules, see {@link FieldsIgnorer#removeMatchingElements}.
+     *
+     * @param tracker records the removed elements, can be null
+     */
+    public void removeMatchingElements(JsonElement json, IgnoredFieldsTracker tracker) {
+        if (json == null || json.isJsonNull() || root.rules.isEmpty()) {
+            return;
+        }
+        List<List<String>> removedPaths = null;
+        if (tracker != null) {
+            removedPaths = new ArrayList<>(rules.size());
+            for (int i = 0; i < rules.size(); i++) {
+                removedPaths.add(new ArrayList<>());
+            }
+        }
+        removeMatchingElements(json, root, root.rules, "", removedPaths);
+        if (tracker != null) {
+            // Rule by rule, as removing them one after the other records them
+            for (List<String> paths : removedPaths) {
+                for (String path : paths) {
+                    tracker.recordIgnored(path, IgnoredFieldsTracker.Reason.IGNORE_ELEMENT_MATCH);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the given rules of the trie node to the Json element, the arrays in it being the ones the rules ending
+     * at the node filter, and the objects the ones the rules below it go down.
+     */
+    private void removeMatchingElements(JsonElement element, Node node, BitSet ruleIndexes, String path,
+                                        List<List<String>> removedPaths) {
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            // In the order of the rules: a rule ending here filters the array before the rules after it go down the
+            // elements left, the rules in between go down the elements together
+            BitSet goingDown = new BitSet();
+            for (int i = ruleIndexes.nextSetBit(0); i >= 0; i = ruleIndexes.nextSetBit(i + 1)) {
+                if (node.ending.get(i)) {
+                    goDownElements(array, node, goingDown, path, removedPaths);
+                    goingDown.clear();
+                    filterArray(array, i, path, removedPaths);
+                } else {
+                    goingDown.set(i);
+                }
+            }
+            goDownElements(array, node, goingDown, path, removedPaths);
+            return;
+        }
+        if (!element.isJsonObject()) {
+            return;
+        }
+        JsonObject jo = element.getAsJsonObject();
+        BitSet missing = null;
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+            BitSet childRuleIndexes = (BitSet) child.rules.clone();
+            childRuleIndexes.and(ruleIndexes);
+            if (childRuleIndexes.isEmpty()) {
+                continue;
+            }
+            String field = entry.getKey();
+            JsonElement childElement = jo.get(field);
+            if (childElement == null) {
+                if (missing == null) {
+                    missing = new BitSet();
+                }
+                missing.or(childRuleIndexes);
+            } else if (!childElement.isJsonNull()) {
+                removeMatchingElements(childElement, child, childRuleIndexes, path.isEmpty() ? field : path + "." + field, removedPaths);
+            }
+        }
+        if (missing != null) {
+            // Descend through GraphAdapter envelope keys transparently.
+            for (Map.Entry<String, JsonElement> entry : jo.entrySet()) {
+                if (FieldsIgnorer.isGraphAdapterKey(entry.getKey()) && entry.getValue().isJsonObject()) {
+                    removeMatchingElements(entry.getValue(), node, missing, path, removedPaths);
+                }
+            }
+        }
+    }
+
+    private void goDownElements(JsonArray array, Node node, BitSet ruleIndexes, String path, List<List<String>> removedPaths) {
+        if (ruleIndexes.isEmpty()) {
+            return;
+        }
+        for (JsonElement arrayElement : array) {
+            if (!arrayElement.isJsonNull()) {
+                removeMatchingElements(arrayElement, node, ruleIndexes, path, removedPaths);
+            }
+        }
+    }
+
+    private void filterArray(JsonArray array, int ruleIndex, String arrayPath, List<List<String>> removedPaths) {
+        ElementIgnoreRule rule = rules.get(ruleIndex);
+        String leafField = leafFields[ruleIndex];
+        Iterator<JsonElement> iterator = array.iterator();
+        int idx = 0;
+        while (iterator.hasNext()) {
+            JsonElement arrayElement = iterator.next();
+            if (arrayElement.isJsonObject() && rule.matches(arrayElement.getAsJsonObject().get(leafField))) {
+                iterator.remove();
+                if (removedPaths != null) {
+                    removedPaths.get(ruleIndex).add(arrayPath + "[" + idx + "]");
+                }
+            }
+            idx++;
+        }
+    }
+
+    /**
+     * A segment of the paths leading to the filtered arrays, with the rules going through it and the segments
+     * following it.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        // The rules going through this node, including the ones ending at it
+        private final BitSet rules = new BitSet();
+        // The rules filtering the arrays found at this node
+        private final BitSet ending = new BitSet();
+    }
+}
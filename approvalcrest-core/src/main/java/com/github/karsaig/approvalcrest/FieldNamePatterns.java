@@ -0,0 +1,121 @@
+package com.github.karsaig.approvalcrest;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.hamcrest.Matcher;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Field name patterns, with the patterns each field name matched remembered. The same few field names come up in every
+ * object of a large tree, so each distinct name is matched against the patterns once, instead of once per object.
+ * <p>
+ * The patterns are a snapshot of the given list, taken when this instance is created. The patterns are expected to
+ * give the same answer for the same field name every time, like the {@link Matcher}s of Hamcrest do.
+ *
+ * @param <P> the type of the patterns, a {@link Matcher} or something holding one
+ */
+public final class FieldNamePatterns<P> {
+    private static final int MAX_CACHED_FIELD_NAMES = 4096;
+    private static final FieldNamePatterns<?> NONE = new FieldNamePatterns<>(emptyList(), pattern -> {
+        throw new IllegalArgumentException("No pattern to take the matcher of");
+    });
+
+    private final List<P> patterns;
+    private final Function<P, Matcher<String>> matcherOf;
+    private final Cache<String, List<P>> matches = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_FIELD_NAMES)
+            .build();
+
+    private FieldNamePatterns(List<P> patterns, Function<P, Matcher<String>> matcherOf) {
+        this.patterns = unmodifiableList(new ArrayList<>(patterns));
+        this.matcherOf = matcherOf;
+    }
+
+    /**
+     * Returns the patterns matching no field name.
+     */
+    @SuppressWarnings("unchecked")
+    public static <P> FieldNamePatterns<P> none() {
+        return (FieldNamePatterns<P>) NONE;
+    }
+
+    public static FieldNamePatterns<Matcher<String>> of(List<Matcher<String>> patterns) {
+        return new FieldNamePatterns<>(patterns, Function.identity());
+    }
+
+    /**
+     * @param matcherOf returns the field name matcher of a pattern
+     */
+    public static <P> FieldNamePatterns<P> of(List<P> patterns, Function<P, Matcher<String>> matcherOf) {
+        return new FieldNamePatterns<>(patterns, matcherOf);
+    }
+
+    public List<P> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Returns the field name matcher of one of the patterns.
+     */
+    public Matcher<String> getMatcher(P pattern) {
+        return matcherOf.apply(pattern);
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Checks whether these patterns are still the ones in the given list, the same instances in the same order.
+     */
+    public boolean isOf(List<?> patterns) {
+        if (this.patterns.size() != patterns.size()) {
+            return false;
+        }
+        for (int i = 0; i < patterns.size(); i++) {
+            if (this.patterns.get(i) != patterns.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean anyMatches(String fieldName) {
+        return !findMatches(fieldName).isEmpty();
+    }
+
+    /**
+     * Returns the first pattern matching the field name, or null when none does.
+     */
+    public P findFirstMatch(String fieldName) {
+        List<P> result = findMatches(fieldName);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Returns every pattern matching the field name, in the order they were given.
+     */
+    public List<P> findMatches(String fieldName) {
+        if (patterns.isEmpty()) {
+            return emptyList();
+        }
+        return matches.asMap().computeIfAbsent(fieldName, this::match);
+    }
+
+    private List<P> match(String fieldName) {
+        List<P> result = new ArrayList<>(1);
+        for (P pattern : patterns) {
+            if (matcherOf.apply(pattern).matches(fieldName)) {
+                result.add(pattern);
+            }
+        }
+        return result.isEmpty() ? emptyList() : unmodifiableList(result);
+    }
+}
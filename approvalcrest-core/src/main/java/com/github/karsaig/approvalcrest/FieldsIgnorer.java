@@ -18,17 +18,22 @@ import org.hamcrest.Matcher;
 import java.util.*;
 import java.util.regex.Pattern;
 
-import static java.lang.Math.max;
-import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 
 /**
  * Responsible for traversing the Json tree and ignore the specified set of field paths.
  */
 public class FieldsIgnorer {
+    /**
+     * Used to be put in front of the names of the fields holding a set, a map or a collection of a type to sort. Those
+     * fields are told to {@link SortAwareJsonWriter}s instead, the names the matchers write never hold it; elements of
+     * sets and maps are still ordered as if they did. Json written with it is still understood: {@link #findPaths}
+     * finds the fields under either name and {@link #removeSetMarker(String)} takes it off.
+     */
     public static final String MARKER = "!_TO_BE_SORTED_!";
     public static final Pattern MARKER_PATTERN = Pattern.compile(MARKER);
-    private static final String PATH_SEPARATOR_PATTERN = Pattern.quote(".");
+    // Below this many elements, sorting in parallel costs more than it saves
+    private static final int PARALLEL_SORT_THRESHOLD = 8192;
 
     public static String removeSetMarker(String json) {
         return MARKER_PATTERN.matcher(json).replaceAll("");
@@ -78,7 +83,7 @@ public class FieldsIgnorer {
     }
 
     public static JsonElement findPaths(Gson gson, Object object, Set<String> pathsToFind, List<SortField<Matcher<String>>> fieldMatchersToSort, Map<String, List<SortField<String>>> pathsToSort) {
-        JsonElement jsonElement = gson.toJsonTree(object);
+        JsonElement jsonElement = SortAwareJsonTreeWriter.toJsonTree(gson, object);
 
         JsonElement filteredJson = findPaths(jsonElement, pathsToFind);
         applySorting(filteredJson, pathsToSort, fieldMatchersToSort, true);
@@ -110,28 +115,42 @@ public class FieldsIgnorer {
         if (jsonElement == null || jsonElement.isJsonNull() || pathsToFind.isEmpty()) {
             return jsonElement;
         }
+        return findPaths(jsonElement, PathTrie.compile(pathsToFind), tracker, reasonMap);
+    }
 
-        String pathToFind = headOf(pathsToFind);
-        List<String> pathSegments = asList(pathToFind.split(PATH_SEPARATOR_PATTERN));
-        try {
-            boolean removed = findPath(jsonElement, pathToFind, pathSegments);
-            if (removed && tracker != null && reasonMap != null) {
-                IgnoredFieldsTracker.Reason reason = reasonMap.getOrDefault(pathToFind, IgnoredFieldsTracker.Reason.IGNORE_PATH);
-                tracker.recordIgnored(pathToFind, reason);
-            }
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException(pathToFind + " does not exist", e);
+    /**
+     * Removes all the compiled paths in one walk of the Json tree, following the paths sharing a prefix together.
+     * Removes and records the same as removing the paths one by one, in the order they were compiled.
+     */
+    public static JsonElement findPaths(JsonElement jsonElement, PathTrie pathsToFind,
+                                         IgnoredFieldsTracker tracker,
+                                         Map<String, IgnoredFieldsTracker.Reason> reasonMap) {
+        if (jsonElement == null || jsonElement.isJsonNull() || pathsToFind.isEmpty()) {
+            return jsonElement;
         }
-        return findPaths(jsonElement, removePathFromSet(pathsToFind, pathToFind), tracker, reasonMap);
-    }
 
-    private static Set<String> removePathFromSet(Set<String> setToRemoveFrom, String stringToRemove) {
-        Set<String> set = new HashSet<>(setToRemoveFrom);
-        set.remove(stringToRemove);
-        return set;
+        BitSet paths = new BitSet(pathsToFind.size());
+        paths.set(0, pathsToFind.size());
+        BitSet removed = findPaths(jsonElement, pathsToFind, pathsToFind.getRoot(), paths);
+        if (tracker != null && reasonMap != null) {
+            for (String path : pathsToFind.getPaths()) {
+                int index = pathsToFind.indexOf(path);
+                if (index >= 0 && removed.get(index)) {
+                    tracker.recordIgnored(path, reasonMap.getOrDefault(path, IgnoredFieldsTracker.Reason.IGNORE_PATH));
+                }
+            }
+        }
+        return jsonElement;
     }
 
-    private static boolean findPath(JsonElement jsonElement, String pathToFind, List<String> pathSegments) {
+    /**
+     * Applies the given paths below the trie node to the Json element. A path removes an array element, or a field
+     * on the way to its last segment, when that leaves it empty; when several paths do, the last one in order does.
+     *
+     * @return the paths that removed something from the element itself
+     */
+    private static BitSet findPaths(JsonElement jsonElement, PathTrie trie, PathTrie.Node node, BitSet paths) {
+        BitSet removed = new BitSet();
         if (jsonElement.isJsonArray()) {
             JsonArray jsonArray = jsonElement.getAsJsonArray();
             Iterator<JsonElement> iterator = jsonArray.iterator();
@@ -141,10 +160,11 @@ public class FieldsIgnorer {
                 if (arrayElement.isJsonNull() || arrayElement.isJsonPrimitive()) {
                     continue;
                 }
-                boolean ignoredElement = findPath(arrayElement, pathToFind, pathSegments);
-                if (ignoredElement && JsonElementUtil.isEmpty(arrayElement)) {
+                BitSet ignoredElement = findPaths(arrayElement, trie, node, paths);
+                if (!ignoredElement.isEmpty() && JsonElementUtil.isEmpty(arrayElement)) {
                     iterator.remove();
-                    result |= true;
+                    removed.set(ignoredElement.length() - 1);
+                    result = true;
                 }
             }
             // If non-primitive elements were removed and only primitives/nulls remain,
@@ -167,131 +187,92 @@ public class FieldsIgnorer {
                     }
                 }
             }
-            return result;
-        } else {
-            String field = headOf(pathSegments);
-            if (pathSegments.size() == 1) {
-                return ignorePath(jsonElement, pathToFind);
-            } else {
-                if (jsonElement.isJsonObject()) {
-                    JsonObject jo = jsonElement.getAsJsonObject();
-                    JsonElement child = jo.get(field);
-                    if (child == null) {
-                        child = jo.get(MARKER + field);
-                        if (child == null) {
-                            // Try descending through GraphAdapter envelope keys
-                            for (Map.Entry<String, JsonElement> entry : jo.entrySet()) {
-                                if (isGraphAdapterKey(entry.getKey()) && entry.getValue().isJsonObject()) {
-                                    boolean changed = findPath(entry.getValue(), pathToFind, pathSegments);
-                                    if (changed) {
-                                        if (JsonElementUtil.isEmpty(entry.getValue())) {
-                                            jo.remove(entry.getKey());
-                                        }
-                                        return true;
-                                    }
-                                }
-                            }
-                            return false;
-                        }
-                        List<String> tail = pathSegments.subList(1, pathSegments.size());
-                        boolean changed = findPath(child, pathToFind, tail);
-                        if (changed && JsonElementUtil.isEmpty(child)) {
-                            jo.remove(field);
-                            return true;
-                        }
-                    } else {
-                        List<String> tail = pathSegments.subList(1, pathSegments.size());
-                        boolean changed = findPath(child, pathToFind, tail);
-                        if (changed && JsonElementUtil.isEmpty(child)) {
-                            jo.remove(field);
-                            return true;
+            return removed;
+        }
+
+        for (PathTrie.Node child : node.children.values()) {
+            int firstPath = paths.nextSetBit(child.first);
+            if (firstPath < 0 || firstPath >= child.end) {
+                continue;
+            }
+            for (int pathIndex : child.pathIndexes) {
+                if (paths.get(pathIndex)) {
+                    try {
+                        if (ignorePath(jsonElement, child.segment)) {
+                            removed.set(pathIndex);
                         }
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(trie.getPath(pathIndex) + " does not exist", e);
                     }
                 }
-                return false;
             }
-        }
-    }
-
-    /**
-     * Remove array elements matching the given rules. Each rule's path points at a field within
-     * an array's elements; the innermost array on the path is filtered. Intermediate arrays are
-     * traversed transparently (fan-out), so a path such as {@code entry.resource.meta.tag.system}
-     * filters the {@code tag} array of every {@code entry}. Missing, empty or non-array paths are
-     * a silent no-op; an element without the leaf field, or that is not a JSON object, is kept.
-     */
-    public static void removeMatchingElements(JsonElement root, List<ElementIgnoreRule> rules, IgnoredFieldsTracker tracker) {
-        if (root == null || root.isJsonNull() || rules == null || rules.isEmpty()) {
-            return;
-        }
-        for (ElementIgnoreRule rule : rules) {
-            List<String> segments = asList(rule.getPath().split(PATH_SEPARATOR_PATTERN));
-            if (segments.isEmpty()) {
+            BitSet deeperPaths = paths.get(0, child.end);
+            deeperPaths.clear(0, child.first + child.pathIndexes.size());
+            if (deeperPaths.isEmpty() || !jsonElement.isJsonObject()) {
                 continue;
             }
-            String leafField = segments.get(segments.size() - 1);
-            List<String> prefix = segments.subList(0, segments.size() - 1);
-            removeMatchingElements(root, prefix, leafField, rule, tracker, "");
-        }
-    }
 
-    private static void removeMatchingElements(JsonElement element, List<String> prefix, String leafField,
-                                               ElementIgnoreRule rule, IgnoredFieldsTracker tracker, String currentPath) {
-        if (element == null || element.isJsonNull()) {
-            return;
-        }
-        if (element.isJsonArray()) {
-            if (prefix.isEmpty()) {
-                filterArray(element.getAsJsonArray(), leafField, rule, tracker, currentPath);
-            } else {
-                for (JsonElement child : element.getAsJsonArray()) {
-                    removeMatchingElements(child, prefix, leafField, rule, tracker, currentPath);
+            JsonObject jo = jsonElement.getAsJsonObject();
+            JsonElement childElement = jo.get(child.segment);
+            boolean marked = false;
+            if (childElement == null) {
+                childElement = jo.get(MARKER + child.segment);
+                marked = childElement != null;
+            }
+            int lastRemoved = -1;
+            if (childElement != null) {
+                BitSet changed = findPaths(childElement, trie, child, deeperPaths);
+                if (!changed.isEmpty() && JsonElementUtil.isEmpty(childElement)) {
+                    lastRemoved = changed.length() - 1;
+                    jo.remove(child.segment);
+                    removed.set(lastRemoved);
+                }
+                if (lastRemoved < 0 || marked) {
+                    continue;
                 }
             }
-            return;
-        }
-        if (prefix.isEmpty() || !element.isJsonObject()) {
-            return;
-        }
-        JsonObject jo = element.getAsJsonObject();
-        String field = headOf(prefix);
-        List<String> tail = prefix.subList(1, prefix.size());
-        String childPath = currentPath.isEmpty() ? field : currentPath + "." + field;
-        JsonElement child = getChild(jo, field);
-        if (child != null) {
-            removeMatchingElements(child, tail, leafField, rule, tracker, childPath);
-        } else {
-            // Descend through GraphAdapter envelope keys transparently.
-            for (Map.Entry<String, JsonElement> entry : jo.entrySet()) {
-                if (isGraphAdapterKey(entry.getKey()) && entry.getValue().isJsonObject()) {
-                    removeMatchingElements(entry.getValue(), prefix, leafField, rule, tracker, currentPath);
+            // The field is not there, or no longer there for the paths after the one removing it
+            for (int i = deeperPaths.nextSetBit(lastRemoved + 1); i >= 0; i = deeperPaths.nextSetBit(i + 1)) {
+                if (findPathInGraphAdapterEnvelope(jo, trie, node, i)) {
+                    removed.set(i);
                 }
             }
         }
+        return removed;
     }
 
-    private static void filterArray(JsonArray array, String leafField, ElementIgnoreRule rule,
-                                    IgnoredFieldsTracker tracker, String arrayPath) {
-        Iterator<JsonElement> iterator = array.iterator();
-        int idx = 0;
-        while (iterator.hasNext()) {
-            JsonElement arrayElement = iterator.next();
-            if (arrayElement.isJsonObject() && rule.matches(getChild(arrayElement.getAsJsonObject(), leafField))) {
-                iterator.remove();
-                if (tracker != null) {
-                    tracker.recordIgnored(arrayPath + "[" + idx + "]", IgnoredFieldsTracker.Reason.IGNORE_ELEMENT_MATCH);
+    /**
+     * Descends through GraphAdapter envelope keys, until the first entry the path removes something from.
+     */
+    private static boolean findPathInGraphAdapterEnvelope(JsonObject jo, PathTrie trie, PathTrie.Node node, int pathIndex) {
+        BitSet path = new BitSet(pathIndex + 1);
+        path.set(pathIndex);
+        for (Map.Entry<String, JsonElement> entry : jo.entrySet()) {
+            if (isGraphAdapterKey(entry.getKey()) && entry.getValue().isJsonObject()) {
+                boolean changed = !findPaths(entry.getValue(), trie, node, path).isEmpty();
+                if (changed) {
+                    if (JsonElementUtil.isEmpty(entry.getValue())) {
+                        jo.remove(entry.getKey());
+                    }
+                    return true;
                 }
             }
-            idx++;
         }
+        return false;
     }
 
-    private static JsonElement getChild(JsonObject jo, String field) {
-        JsonElement child = jo.get(field);
-        if (child == null) {
-            child = jo.get(MARKER + field);
+    /**
+     * Remove array elements matching the given rules. Each rule's path points at a field within
+     * an array's elements; the innermost array on the path is filtered. Intermediate arrays are
+     * traversed transparently (fan-out), so a path such as {@code entry.resource.meta.tag.system}
+     * filters the {@code tag} array of every {@code entry}. Missing, empty or non-array paths are
+     * a silent no-op; an element without the leaf field, or that is not a JSON object, is kept.
+     */
+    public static void removeMatchingElements(JsonElement root, List<ElementIgnoreRule> rules, IgnoredFieldsTracker tracker) {
+        if (root == null || root.isJsonNull() || rules == null || rules.isEmpty()) {
+            return;
         }
-        return child;
+        ElementIgnoreRules.of(rules).removeMatchingElements(root, tracker);
     }
 
     public static void applySorting(JsonElement jsonElement, Map<String, List<SortField<String>>> pathsToSort, List<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile) {
@@ -299,96 +280,28 @@ public class FieldsIgnorer {
     }
 
     public static void applySorting(JsonElement jsonElement, Map<String, List<SortField<String>>> pathsToSort, List<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile, SortedFieldsTracker tracker) {
-        if (jsonElement == null || jsonElement.isJsonNull()) return;
-        Map<String, PathLevel> pathMap = pathsToSort.isEmpty() ? Collections.emptyMap() : getPathsMap(pathsToSort);
-        applySortingInternal(jsonElement, pathMap, pathsToSort, fieldMatchersToSort, sortFile, tracker, "");
+        applySorting(jsonElement, pathsToSort, FieldNamePatterns.of(fieldMatchersToSort, SortField::getSortFieldSelector), sortFile, tracker);
     }
 
-    private static void applySortingInternal(JsonElement jsonElement, Map<String, PathLevel> pathMap,
-            Map<String, List<SortField<String>>> pathsToSort,
-            List<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile,
-            SortedFieldsTracker tracker, String currentPath) {
-        if (jsonElement != null && !jsonElement.isJsonNull()) {
-            if (jsonElement.isJsonObject()) {
-                JsonObject jsonObject = jsonElement.getAsJsonObject();
-                // Sort object keys inline (#5: replaces separate sortJsonFields pass)
-                if (sortFile) {
-                    List<FieldNamePair> toSort = getFiledNamePairs(jsonObject);
-                    Collections.sort(toSort);
-                    for (FieldNamePair pair : toSort) {
-                        JsonElement element = jsonObject.remove(pair.originalKey);
-                        jsonObject.add(pair.originalKey, element);
-                    }
-                }
-                for (Map.Entry<String, JsonElement> actual : jsonObject.entrySet()) {
-                    JsonElement actualValue = actual.getValue();
-                    if (actualValue.isJsonNull() || actualValue.isJsonPrimitive()) {
-                        continue;
-                    }
-                    FieldNamePair fieldNamePair = convertToKeyPair(actual.getKey());
-                    if (isGraphAdapterKey(fieldNamePair.newKey)) {
-                        // Transparent: descend with same pathMap, don't consume a level
-                        applySortingInternal(actualValue, pathMap, pathsToSort, fieldMatchersToSort, sortFile, tracker, currentPath);
-                        continue;
-                    }
-                    PathLevel pathLevel = pathMap.getOrDefault(fieldNamePair.newKey, PathLevel.EMPTY);
-                    Map<String, PathLevel> nextPathMap = pathLevel.nextLevel.isEmpty()
-                            ? Collections.emptyMap() : getPathsMap(pathLevel.nextLevel);
-                    String childPath = currentPath.isEmpty() ? fieldNamePair.newKey : currentPath + "." + fieldNamePair.newKey;
-                    applySortingInternal(actualValue, nextPathMap, pathLevel.nextLevel, fieldMatchersToSort, sortFile, tracker, childPath);
-                    if (actualValue.isJsonArray()) {
-                        List<SortField<String>> matchingPathMatchers = anyPathMatch(fieldNamePair.newKey, pathMap, sortFile);
-                        List<SortField<Matcher<String>>> matchingFieldMatchers = anyFieldMatcherMatches(fieldNamePair.newKey, fieldMatchersToSort, sortFile);
-                        if (fieldNamePair.shouldSortDueToType() || !matchingPathMatchers.isEmpty() || !matchingFieldMatchers.isEmpty()) {
-                            sortJsonArray(actualValue.getAsJsonArray(), matchingPathMatchers, matchingFieldMatchers);
-                            if (tracker != null) {
-                                recordSortMatches(tracker, childPath, matchingPathMatchers, matchingFieldMatchers);
-                            }
-                        }
-                    }
-                }
-            } else if (jsonElement.isJsonArray()) {
-                // Recurse into each element first so nested arrays are sorted before
-                // computing the root sort key (bottom-up ordering).
-                Map<String, List<SortField<String>>> innerPathsToSort;
-                if (pathsToSort.containsKey("")) {
-                    innerPathsToSort = new HashMap<>(pathsToSort);
-                    innerPathsToSort.remove("");
-                } else {
-                    innerPathsToSort = pathsToSort;
-                }
-                // #3: Build the PathLevel map once for all elements in this array
-                Map<String, PathLevel> innerPathMap;
-                if (innerPathsToSort == pathsToSort) {
-                    innerPathMap = pathMap; // "" was not in map; same pathsToSort, reuse existing map
-                } else if (innerPathsToSort.isEmpty()) {
-                    innerPathMap = Collections.emptyMap();
-                } else {
-                    innerPathMap = getPathsMap(innerPathsToSort);
-                }
-                Iterator<JsonElement> iter = jsonElement.getAsJsonArray().iterator();
-                while (iter.hasNext()) {
-                    JsonElement current = iter.next();
-                    if (current.isJsonNull() || current.isJsonPrimitive()) {
-                        continue;
-                    }
-                    applySortingInternal(current, innerPathMap, innerPathsToSort, fieldMatchersToSort, sortFile, tracker, currentPath);
-                }
-                // Sort the array itself last (root), so the sort key reflects the
-                // already-sorted state of nested elements.
-                List<SortField<String>> rootSortFields = pathsToSort.getOrDefault("", emptyList());
-                List<SortField<Matcher<String>>> rootFieldMatchers = anyFieldMatcherMatches("", fieldMatchersToSort, sortFile);
-                if (!rootSortFields.isEmpty() || !rootFieldMatchers.isEmpty()) {
-                    sortJsonArray(jsonElement.getAsJsonArray(), rootSortFields, rootFieldMatchers);
-                    if (tracker != null) {
-                        recordSortMatches(tracker, currentPath, rootSortFields, rootFieldMatchers);
-                    }
-                }
-            }
+    public static void applySorting(JsonElement jsonElement, Map<String, List<SortField<String>>> pathsToSort, FieldNamePatterns<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile, SortedFieldsTracker tracker) {
+        new JsonTreeFilter(null, null, tracker)
+                .sorting(pathsToSort, fieldMatchersToSort, sortFile)
+                .filter(jsonElement);
+    }
+
+    /**
+     * Orders the fields of the object by name.
+     */
+    static void sortFieldNames(JsonObject jsonObject) {
+        List<String> toSort = new ArrayList<>(jsonObject.keySet());
+        Collections.sort(toSort);
+        for (String key : toSort) {
+            JsonElement element = jsonObject.remove(key);
+            jsonObject.add(key, element);
         }
     }
 
-    private static void recordSortMatches(SortedFieldsTracker tracker, String path,
+    static void recordSortMatches(SortedFieldsTracker tracker, String path,
             List<SortField<String>> matchingPathMatchers,
             List<SortField<Matcher<String>>> matchingFieldMatchers) {
         if (!matchingPathMatchers.isEmpty()) {
@@ -399,7 +312,7 @@ public class FieldsIgnorer {
         }
     }
 
-    private static List<SortField<String>> anyPathMatch(String fieldName, Map<String, PathLevel> pathMap, boolean sortFile) {
+    static List<SortField<String>> anyPathMatch(String fieldName, Map<String, PathLevel> pathMap, boolean sortFile) {
         if (sortFile) {
             PathLevel nextLevelSet = pathMap.get(fieldName);
             if(nextLevelSet != null){
@@ -409,7 +322,7 @@ public class FieldsIgnorer {
         return emptyList();
     }
 
-    private static Map<String, PathLevel> getPathsMap(Map<String, List<SortField<String>>> pathsToSort) {
+    static Map<String, PathLevel> getPathsMap(Map<String, List<SortField<String>>> pathsToSort) {
         if (pathsToSort.isEmpty()) {
             return Collections.emptyMap();
         }
@@ -426,7 +339,7 @@ public class FieldsIgnorer {
         return result;
     }
 
-    private static Map<String, PathLevel> getPathsMap(List<SortField<String>> pathsToSort) {
+    static Map<String, PathLevel> getPathsMap(List<SortField<String>> pathsToSort) {
         if (pathsToSort.isEmpty()) {
             return Collections.emptyMap();
         }
@@ -446,7 +359,7 @@ public class FieldsIgnorer {
         return result;
     }
 
-    private static class PathLevel {
+    static class PathLevel {
         public static final PathLevel EMPTY = new PathLevel(emptyList(), Collections.emptyMap());
 
         private final List<SortField<String>> currentLevel;
@@ -487,118 +400,55 @@ public class FieldsIgnorer {
         }
     }
 
-    private static List<SortField<Matcher<String>>> anyFieldMatcherMatches(String fieldName, List<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile) {
+    static List<SortField<Matcher<String>>> anyFieldMatcherMatches(String fieldName, FieldNamePatterns<SortField<Matcher<String>>> fieldMatchersToSort, boolean sortFile) {
         if (sortFile) {
-            List<SortField<Matcher<String>>> result = new ArrayList<>();
-            for (SortField<Matcher<String>> matcher : fieldMatchersToSort) {
-                if (matcher.getSortFieldSelector().matches(fieldName)) {
-                    result.add(matcher);
-                }
-            }
-            return result;
+            return fieldMatchersToSort.findMatches(fieldName);
         }
         return emptyList();
     }
 
-    private static void sortJsonArray(JsonArray input, List<SortField<String>> matchingPathMatchers, List<SortField<Matcher<String>>> matchingFieldMatchers) {
-        List<SortElement> toSort = new ArrayList<>(input.size());
-        Iterator<JsonElement> iter = input.iterator();
-        while (iter.hasNext()) {
-            JsonElement actual = iter.next();
+    static void sortJsonArray(JsonArray input, List<SortField<String>> matchingPathMatchers, List<SortField<Matcher<String>>> matchingFieldMatchers) {
+        // The field names in the elements repeat, match them against the patterns once for the whole array
+        List<Matcher<String>> innerIgnoredFieldMatchers = new ArrayList<>();
+        for (SortField<Matcher<String>> fm : matchingFieldMatchers) {
+            innerIgnoredFieldMatchers.addAll(fm.getIgnoredFieldMatchersForSorting());
+        }
+        sortJsonArray(input, new SortKeyWriter(matchingPathMatchers, FieldNamePatterns.of(matchingFieldMatchers, SortField::getSortFieldSelector), FieldNamePatterns.of(innerIgnoredFieldMatchers)));
+    }
+
+    /**
+     * Sorts the array by the keys of its elements and returns the keys, in the sorted order.
+     */
+    private static List<String> sortJsonArray(JsonArray input, SortKeyWriter sortKeys) {
+        SortElement[] toSort = new SortElement[input.size()];
+        for (int i = 0; i < toSort.length; i++) {
+            JsonElement actual = input.get(i);
             // When a direct element is itself an array (e.g. List<List<Bean>>), apply
             // the configured sort to it before computing its sort key. The sort was
             // configured for this collection; direct array elements are part of that
             // same collection and fan-out applies.
             // Elements that are objects (beans) are NOT sorted here; only their fields
             // that were explicitly configured via sortField will be sorted via applySorting.
+            String key;
             if (actual.isJsonArray()) {
-                sortJsonArray(actual.getAsJsonArray(), matchingPathMatchers, matchingFieldMatchers);
+                key = SortKeyWriter.keyOfArray(sortJsonArray(actual.getAsJsonArray(), sortKeys));
+            } else {
+                key = sortKeys.keyOf(actual);
             }
-            toSort.add(new SortElement(getFilteredStringForSorting(actual, matchingPathMatchers, matchingFieldMatchers).toString(), actual));
-            iter.remove();
+            toSort[i] = new SortElement(key, actual);
         }
-        Collections.sort(toSort);
-        for (SortElement actual : toSort) {
-            input.add(actual.original);
+        // Both sorts are stable, equal keys keep their order
+        if (toSort.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(toSort);
+        } else {
+            Arrays.sort(toSort);
         }
-    }
-
-    private static JsonElement getFilteredStringForSorting(JsonElement jsonElement, List<SortField<String>> pathMatchers, List<SortField<Matcher<String>>> fieldMatchers) {
-        if (areAllMatchersEmpty(pathMatchers, fieldMatchers)) {
-            return jsonElement;
+        List<String> sortedKeys = new ArrayList<>(toSort.length);
+        for (int i = 0; i < toSort.length; i++) {
+            input.set(i, toSort[i].original);
+            sortedKeys.add(toSort[i].value);
         }
-
-        if (jsonElement.isJsonObject()) {
-            JsonObject jsonForSort = new JsonObject();
-
-            // Merge ignored paths/matchers from fieldMatchers into the path map so that
-            // SortField<Matcher<String>>.ignoring(String) and .ignoring(Matcher) work for
-            // fields inside elements, not just path-based SortField<String>.
-            List<SortField<String>> combinedPaths = new ArrayList<>(pathMatchers);
-            List<Matcher<String>> innerIgnoredFieldMatchers = new ArrayList<>();
-            for (SortField<Matcher<String>> fm : fieldMatchers) {
-                for (String ignoredPath : fm.getIgnoredPathsForSorting()) {
-                    combinedPaths.add(SortField.of(ignoredPath, Collections.singletonList(ignoredPath), Collections.emptyList()));
-                }
-                innerIgnoredFieldMatchers.addAll(fm.getIgnoredFieldMatchersForSorting());
-            }
-            Map<String, PathLevel> pathMap = getPathsMap(combinedPaths);
-
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
-            for (Map.Entry<String, JsonElement> actual : jsonObject.entrySet()) {
-                JsonElement actualValue = actual.getValue();
-                String actualKey = actual.getKey();
-                FieldNamePair fieldNamePair = convertToKeyPair(actualKey);
-
-                if (isGraphAdapterKey(fieldNamePair.newKey)) {
-                    // Transparent: recurse with same pathMatchers/fieldMatchers
-                    jsonForSort.add(actualKey, getFilteredStringForSorting(actualValue, pathMatchers, fieldMatchers));
-                    continue;
-                }
-
-                PathLevel matchingPath = pathMap.getOrDefault(fieldNamePair.newKey, PathLevel.EMPTY);
-
-                List<SortField<Matcher<String>>> matchingFieldMatchers = anyFieldMatcherMatches(fieldNamePair.newKey, fieldMatchers, true);
-                List<SortField<String>> matchingPathMatchers = anyPathMatch(fieldNamePair.newKey, pathMap, true);
-                boolean matchedByInnerFieldMatcher = anyInnerMatcherMatches(fieldNamePair.newKey, innerIgnoredFieldMatchers);
-
-                if (!matchingPathMatchers.isEmpty() || !matchingFieldMatchers.isEmpty() || matchedByInnerFieldMatcher) {
-                    // leaf match — strip this field entirely from the sort key (primitive or complex)
-                } else if (actualValue.isJsonNull() || actualValue.isJsonPrimitive()) {
-                    jsonForSort.add(actualKey, actualValue);
-                } else {
-                    List<SortField<String>> nextLevelSortFields = new ArrayList<>();
-                    for (List<SortField<String>> sortFields : matchingPath.nextLevel.values()) {
-                        nextLevelSortFields.addAll(sortFields);
-                    }
-                    jsonForSort.add(actualKey, getFilteredStringForSorting(actualValue, nextLevelSortFields, fieldMatchers));
-                }
-            }
-
-            return jsonForSort;
-        } else if (jsonElement.isJsonArray()) {
-            JsonArray actualArray = jsonElement.getAsJsonArray();
-            JsonArray jsonForSort = new JsonArray(actualArray.size());
-            for (JsonElement current : actualArray) {
-                if (current.isJsonNull() || current.isJsonPrimitive()) {
-                    jsonForSort.add(current);
-                } else {
-                    jsonForSort.add(getFilteredStringForSorting(current, pathMatchers, fieldMatchers));
-                }
-            }
-            return jsonForSort;
-        }
-
-        return jsonElement;
-    }
-
-    private static boolean anyInnerMatcherMatches(String fieldName, List<Matcher<String>> matchers) {
-        for (Matcher<String> matcher : matchers) {
-            if (matcher.matches(fieldName)) {
-                return true;
-            }
-        }
-        return false;
+        return sortedKeys;
     }
 
     /**
@@ -620,23 +470,6 @@ public class FieldsIgnorer {
 
 
 
-    private static boolean areAllMatchersEmpty(List<SortField<String>> matchingPathMatchers, List<SortField<Matcher<String>>> matchingFieldMatchers){
-        if(matchingPathMatchers.isEmpty() && matchingFieldMatchers.isEmpty()){
-            return true;
-        }
-        for(SortField<String> matchingPathMatcher : matchingPathMatchers) {
-            if(!matchingPathMatcher.isEmpty()){
-                return false;
-            }
-        }
-        for(SortField<Matcher<String>> matchingFieldMatcher : matchingFieldMatchers) {
-            if(!matchingFieldMatcher.isEmpty()){
-                return false;
-            }
-        }
-        return true;
-    }
-
     private static class SortElement implements Comparable<SortElement> {
         private final String value;
         private final JsonElement original;
@@ -656,44 +489,12 @@ public class FieldsIgnorer {
         }
     }
 
-    private static class FieldNamePair implements Comparable<FieldNamePair> {
-        private final String originalKey;
-        private final String newKey;
-
-        public FieldNamePair(String originalKey, String newKey) {
-            this.originalKey = originalKey;
-            this.newKey = newKey;
-        }
-
-        public String getOriginalKey() {
-            return originalKey;
-        }
-
-        public String getNewKey() {
-            return newKey;
-        }
-
-        public boolean shouldSortDueToType() {
-            return !originalKey.equals(newKey);
-        }
-
-        @Override
-        public int compareTo(FieldNamePair keyPair) {
-            return newKey.compareTo(keyPair.newKey);
-        }
-    }
-
     public static void sortJsonFields(JsonElement jsonElement, boolean sortFile) {
         if (sortFile) {
             if (jsonElement != null && !jsonElement.isJsonNull()) {
                 if (jsonElement.isJsonObject()) {
                     JsonObject jsonObject = jsonElement.getAsJsonObject();
-                    List<FieldNamePair> toSort = getFiledNamePairs(jsonObject);
-                    Collections.sort(toSort);
-                    for (FieldNamePair actual : toSort) {
-                        JsonElement element = jsonObject.remove(actual.originalKey);
-                        jsonObject.add(actual.originalKey, element);
-                    }
+                    sortFieldNames(jsonObject);
                     for (Map.Entry<String, JsonElement> actual : jsonObject.entrySet()) {
                         sortJsonFields(actual.getValue(), sortFile);
                     }
@@ -711,33 +512,12 @@ public class FieldsIgnorer {
         }
     }
 
-    private static List<FieldNamePair> getFiledNamePairs(JsonObject input) {
-        List<FieldNamePair> result = new ArrayList<>(input.size());
-        for (String actual : input.keySet()) {
-            result.add(convertToKeyPair(actual));
-        }
-        return result;
-    }
-
-    private static FieldNamePair convertToKeyPair(String input) {
-        return new FieldNamePair(input, getOriginalFieldName(input));
-    }
-
-    private static String getOriginalFieldName(String input) {
-        String result = input;
-        if (result.startsWith(MARKER)) {
-            result = result.substring(MARKER.length());
-        }
-        return result;
-    }
-
-    private static boolean ignorePath(JsonElement jsonElement, String pathToIgnore) {
+    private static boolean ignorePath(JsonElement jsonElement, String lastSegment) {
         if (!jsonElement.isJsonNull()) {
             if (!jsonElement.isJsonObject()) {
                 throw new IllegalArgumentException();
             }
             JsonObject jo = jsonElement.getAsJsonObject();
-            String lastSegment = getLastSegmentOf(pathToIgnore);
             boolean removedElement = jo.remove(lastSegment) != null;
             removedElement |= jo.remove(MARKER + lastSegment) != null;
             if (!removedElement) {
@@ -756,19 +536,6 @@ public class FieldsIgnorer {
         return false;
     }
 
-    private static String getLastSegmentOf(String fieldPath) {
-        String[] paths = fieldPath.split(PATH_SEPARATOR_PATTERN);
-        if (paths.length == 0) {
-            return fieldPath;
-        }
-
-        return paths[max(0, paths.length - 1)];
-    }
-
-    private static String headOf(Collection<String> paths) {
-        return paths.iterator().next();
-    }
-
     private static boolean collectionElementMatchesTypesToSort(Collection<?> collection, Collection<Class<?>> typesToSort) {
         for (Object element : collection) {
             if (element != null) {
@@ -3,19 +3,15 @@ package com.github.karsaig.approvalcrest;
 import com.github.karsaig.approvalcrest.matcher.alias.AliasMap;
 import com.github.karsaig.approvalcrest.matcher.machinereadable.AliasTracker;
 import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import org.hamcrest.Matcher;
 
 import java.lang.reflect.Field;
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 public class JsonElementUtil {
 
@@ -104,14 +100,7 @@ public class JsonElementUtil {
 
     public static void filterByCustomMatcherPatterns(JsonElement json, MatcherConfiguration matcherConfiguration,
                                                       IgnoredFieldsTracker tracker) {
-        List<AbstractMap.SimpleEntry<Matcher<String>, Matcher<?>>> patterns = matcherConfiguration.getCustomMatcherPatterns();
-        if (!patterns.isEmpty()) {
-            List<Matcher<String>> patternKeys = new ArrayList<>();
-            for (AbstractMap.SimpleEntry<Matcher<String>, Matcher<?>> entry : patterns) {
-                patternKeys.add(entry.getKey());
-            }
-            filterByFieldMatchers(json, patternKeys, tracker, IgnoredFieldsTracker.Reason.CUSTOM_MATCHER_PATTERN);
-        }
+        filterByFieldMatchers(json, matcherConfiguration.getCustomMatcherFieldNamePatterns(), tracker, IgnoredFieldsTracker.Reason.CUSTOM_MATCHER_PATTERN);
     }
 
     public static boolean isEmpty(JsonElement jsonElement) {
@@ -150,82 +139,27 @@ public class JsonElementUtil {
 
     public static void filterByFieldMatchers(JsonElement jsonElement, List<Matcher<String>> matchers,
                                               IgnoredFieldsTracker tracker, IgnoredFieldsTracker.Reason reason) {
-        if (jsonElement != null && !matchers.isEmpty() && !jsonElement.isJsonNull()) {
-            filterFieldsByFieldMatchers(jsonElement, matchers, tracker, reason, "");
-        }
-    }
-
-    private static boolean filterFieldsByFieldMatchers(JsonElement jsonElement, List<Matcher<String>> matchers,
-                                                        IgnoredFieldsTracker tracker, IgnoredFieldsTracker.Reason reason,
-                                                        String currentPath) {
-        if (jsonElement.isJsonObject()) {
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
-            boolean changes = false;
-            Iterator<Map.Entry<String, JsonElement>> iter = jsonObject.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<String, JsonElement> entry = iter.next();
-                Matcher<String> matchedPattern = findMatchingPattern(entry.getKey(), matchers);
-                if (matchedPattern != null) {
-                    iter.remove();
-                    changes = true;
-                    if (tracker != null && reason != null) {
-                        String childPath = currentPath.isEmpty() ? entry.getKey() : currentPath + "." + entry.getKey();
-                        tracker.recordIgnoredPattern(childPath, reason, matchedPattern.toString());
-                    }
-                } else {
-                    JsonElement je = entry.getValue();
-                    String childPath = tracker != null ? (currentPath.isEmpty() ? entry.getKey() : currentPath + "." + entry.getKey()) : "";
-                    boolean changed = filterFieldsByFieldMatchers(je, matchers, tracker, reason, childPath);
-                    if (changed && isEmpty(je)) {
-                        iter.remove();
-                        changes = true;
-                        if (tracker != null) {
-                            tracker.recordRemovedEmpty(childPath, collectChildPaths(tracker, childPath));
-                        }
-                    }
-                }
-            }
-            return changes;
-        } else if (jsonElement.isJsonArray()) {
-            JsonArray jsonArray = jsonElement.getAsJsonArray();
-            Iterator<JsonElement> iterator = jsonArray.iterator();
-            boolean changes = false;
-            int idx = 0;
-            while (iterator.hasNext()) {
-                JsonElement je = iterator.next();
-                String elemPath = tracker != null ? currentPath + "[" + idx + "]" : "";
-                boolean changed = filterFieldsByFieldMatchers(je, matchers, tracker, reason, elemPath);
-                if (changed && isEmpty(je)) {
-                    iterator.remove();
-                    changes = true;
-                } else {
-                    idx++;
-                }
-            }
-            return changes;
-        }
-        return false;
-    }
-
-    private static Matcher<String> findMatchingPattern(String fieldName, List<Matcher<String>> matchers) {
-        for (Matcher<String> matcher : matchers) {
-            if (matcher.matches(fieldName)) {
-                return matcher;
-            }
-        }
-        return null;
+        filterByFieldMatchers(jsonElement, FieldNamePatterns.of(matchers), tracker, reason);
     }
 
-    private static List<String> collectChildPaths(IgnoredFieldsTracker tracker, String parentPath) {
-        List<String> causes = new ArrayList<>();
-        String prefix = parentPath + ".";
-        for (IgnoredFieldsTracker.IgnoredField field : tracker.getFields()) {
-            if (field.getPath().startsWith(prefix)) {
-                String desc = field.getPath() + " (" + field.getReason() + ")";
-                causes.add(desc);
-            }
+    /**
+     * Removes the fields whose name matches any of the patterns, and the objects and arrays left empty by it, see
+     * {@link JsonTreeFilter#ignoringFieldNames} and {@link JsonTreeFilter#ignoringCustomMatcherFieldNames}.
+     *
+     * @param reason the reason the removed fields are recorded with, {@link IgnoredFieldsTracker.Reason#CUSTOM_MATCHER_PATTERN}
+     *               or {@link IgnoredFieldsTracker.Reason#IGNORE_PATTERN}, only the objects left empty are recorded
+     *               when null
+     */
+    public static <P> void filterByFieldMatchers(JsonElement jsonElement, FieldNamePatterns<P> patterns,
+                                                  IgnoredFieldsTracker tracker, IgnoredFieldsTracker.Reason reason) {
+        IgnoredFieldsTracker filterTracker = reason == null && tracker != null ? new RemovedEmptyTracker(tracker) : tracker;
+        JsonTreeFilter filter = new JsonTreeFilter(filterTracker, null, null);
+        if (reason == IgnoredFieldsTracker.Reason.CUSTOM_MATCHER_PATTERN) {
+            filter.ignoringCustomMatcherFieldNames(patterns);
+        } else {
+            filter.ignoringFieldNames(patterns);
         }
-        return causes;
+        filter.filter(jsonElement);
     }
 
     public static List<JsonElement> collectValuesByFieldNamePattern(JsonElement root, Matcher<String> fieldNamePattern) {
@@ -253,66 +187,51 @@ public class JsonElementUtil {
     }
 
     /**
-     * Walks {@code root} recursively and replaces every non-boolean, non-null JSON primitive
-     * that matches an entry in {@code aliases} with the alias string (in-place mutation).
-     * The last registered matching entry in the map wins.
+     * Replaces every non-boolean, non-null JSON primitive that matches an entry in {@code aliases} with the alias
+     * string (in-place mutation), see {@link JsonTreeFilter#aliasing}. The last registered matching entry in the map
+     * wins.
      */
     public static void applyAliases(JsonElement root, AliasMap aliases) {
-        applyAliasesRecursive(root, aliases, "", null, null);
+        applyAliases(root, aliases, null);
     }
 
     public static void applyAliases(JsonElement root, AliasMap aliases, AliasTracker tracker) {
-        applyAliasesRecursive(root, aliases, "", null, tracker);
+        new JsonTreeFilter(null, tracker, null)
+                .aliasing(aliases)
+                .filter(root);
     }
 
-    private static void applyAliasesRecursive(JsonElement element, AliasMap aliases,
-                                               String currentPath, String fieldName, AliasTracker tracker) {
-        if (element == null || element.isJsonNull()) {
-            return;
+    /**
+     * Records only the objects left empty to the tracker it wraps, the fields removed are not recorded without a reason.
+     */
+    private static final class RemovedEmptyTracker extends IgnoredFieldsTracker {
+        private final IgnoredFieldsTracker tracker;
+
+        private RemovedEmptyTracker(IgnoredFieldsTracker tracker) {
+            this.tracker = tracker;
         }
-        if (element.isJsonObject()) {
-            JsonObject obj = element.getAsJsonObject();
-            for (Map.Entry<String, JsonElement> entry : new ArrayList<>(obj.entrySet())) {
-                String childField = entry.getKey();
-                String childPath = currentPath.isEmpty() ? childField : currentPath + "." + childField;
-                JsonElement child = entry.getValue();
-                if (child.isJsonPrimitive()) {
-                    JsonPrimitive prim = child.getAsJsonPrimitive();
-                    if (!prim.isBoolean()) {
-                        String coerced = prim.getAsString();
-                        Optional<String> alias = aliases.resolve(childPath, childField, coerced);
-                        if (alias.isPresent()) {
-                            obj.addProperty(childField, alias.get());
-                            if (tracker != null) {
-                                tracker.recordAlias(childPath, coerced, alias.get());
-                            }
-                        }
-                    }
-                } else {
-                    applyAliasesRecursive(child, aliases, childPath, childField, tracker);
-                }
-            }
-        } else if (element.isJsonArray()) {
-            JsonArray arr = element.getAsJsonArray();
-            for (int i = 0; i < arr.size(); i++) {
-                JsonElement child = arr.get(i);
-                if (child.isJsonPrimitive()) {
-                    JsonPrimitive prim = child.getAsJsonPrimitive();
-                    if (!prim.isBoolean()) {
-                        String coerced = prim.getAsString();
-                        Optional<String> alias = aliases.resolve(currentPath, fieldName != null ? fieldName : "", coerced);
-                        if (alias.isPresent()) {
-                            arr.set(i, new JsonPrimitive(alias.get()));
-                            if (tracker != null) {
-                                tracker.recordAlias(currentPath + "[" + i + "]", coerced, alias.get());
-                            }
-                        }
-                    }
-                } else {
-                    applyAliasesRecursive(child, aliases, currentPath, fieldName, tracker);
-                }
-            }
+
+        @Override
+        public void recordIgnored(String path, Reason reason) {
+        }
+
+        @Override
+        public void recordIgnoredPattern(String path, Reason reason, String patternDescription) {
+        }
+
+        @Override
+        public void recordRemovedEmpty(String path, List<String> causes) {
+            tracker.recordRemovedEmpty(path, causes);
+        }
+
+        @Override
+        public List<IgnoredField> getFields() {
+            return tracker.getFields();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return tracker.isEmpty();
         }
     }
 }
-
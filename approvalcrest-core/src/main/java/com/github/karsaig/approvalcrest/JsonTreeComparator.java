@@ -0,0 +1,362 @@
+package com.github.karsaig.approvalcrest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Compares two Json trees the same way {@code JSONAssert.assertEquals(expected, actual, true)} compares the Json
+ * written from them, without writing the trees and parsing them again: the fields of objects are compared regardless
+ * of their order, the elements of arrays in order, and numbers by their double value. The differences are described
+ * with the message JSONAssert fails with, only once the trees turn out to differ.
+ * <p>
+ * JSONAssert compares the text of a root value that is not an object or an array, or refuses to parse it, so those
+ * are left to it, see {@link #canCompare}.
+ * <p>
+ * Equal trees are told apart from different ones by one walk that stops at the first difference. Only once they
+ * differ are the objects and arrays in them hashed, bottom-up, and the differences are looked for in the subtrees
+ * whose hashes differ, so the subtrees equal on both sides are neither walked again nor described.
+ * <p>
+ * Arrays can also be diffed instead of compared index by index, see {@link #compare(JsonElement, JsonElement, boolean,
+ * boolean)}: their elements are matched by hash with {@link MyersDiff}, and only the elements removed, added or changed
+ * are described, by their index, instead of every element after the first one added or removed, or only the sizes.
+ */
+public final class JsonTreeComparator {
+    // Enough to diff arrays of thousands of elements differing in hundreds, see MyersDiff
+    private static final int MAX_DIFF_STEPS = 10_000_000;
+
+    private final boolean serializeNulls;
+    private final boolean diffArrays;
+    private final StringBuilder message = new StringBuilder();
+    // The hashes of the objects and arrays, by identity, see hashOf
+    private final Map<JsonElement, Integer> hashes = new IdentityHashMap<>();
+
+    private JsonTreeComparator(boolean serializeNulls, boolean diffArrays) {
+        this.serializeNulls = serializeNulls;
+        this.diffArrays = diffArrays;
+    }
+
+    /**
+     * Tells whether the trees can be compared without writing them, which is when both are objects or arrays.
+     */
+    public static boolean canCompare(JsonElement expected, JsonElement actual) {
+        return isObjectOrArray(expected) && isObjectOrArray(actual);
+    }
+
+    /**
+     * Compares the trees {@link #canCompare} tells can be compared.
+     *
+     * @param serializeNulls whether the fields holding null are written, see {@link Gson#serializeNulls()}
+     * @return {@code null} when the trees are equal, the differences otherwise
+     */
+    public static String compare(JsonElement expected, JsonElement actual, boolean serializeNulls) {
+        return compare(expected, actual, serializeNulls, false);
+    }
+
+    /**
+     * Compares the trees {@link #canCompare} tells can be compared, diffing the arrays that differ when asked to.
+     * <p>
+     * A diffed array is described by the elements removed from the expected one, {@code [i]\nExpected: value\n but
+     * none found}, the elements added to it, {@code [j]\nUnexpected: value}, and the elements changed in place, which
+     * are compared as usual. Arrays differing too much to be diffed quickly are compared as they are otherwise.
+     *
+     * @param serializeNulls whether the fields holding null are written, see {@link Gson#serializeNulls()}
+     * @param diffArrays     whether to diff the arrays instead of comparing their elements index by index
+     * @return {@code null} when the trees are equal, the differences otherwise
+     */
+    public static String compare(JsonElement expected, JsonElement actual, boolean serializeNulls, boolean diffArrays) {
+        JsonTreeComparator comparator = new JsonTreeComparator(serializeNulls, diffArrays);
+        if (comparator.isEqual(expected, actual)) {
+            return null;
+        }
+        if (expected.isJsonObject() && actual.isJsonObject()) {
+            comparator.compareObjects("", expected.getAsJsonObject(), actual.getAsJsonObject());
+        } else if (expected.isJsonArray() && actual.isJsonArray()) {
+            comparator.compareArrays("", expected.getAsJsonArray(), actual.getAsJsonArray());
+        } else {
+            comparator.fail("", expected, actual);
+        }
+        return comparator.message.toString();
+    }
+
+    private static boolean isObjectOrArray(JsonElement element) {
+        return element != null && (element.isJsonObject() || element.isJsonArray());
+    }
+
+    private boolean isEqual(JsonElement expected, JsonElement actual) {
+        if (expected == actual) {
+            return true;
+        }
+        if (expected.isJsonNull() || actual.isJsonNull()) {
+            return expected.isJsonNull() && actual.isJsonNull();
+        }
+        if (expected.isJsonObject()) {
+            return actual.isJsonObject() && isEqual(expected.getAsJsonObject(), actual.getAsJsonObject());
+        }
+        if (expected.isJsonArray()) {
+            return actual.isJsonArray() && isEqual(expected.getAsJsonArray(), actual.getAsJsonArray());
+        }
+        return actual.isJsonPrimitive() && isEqual(expected.getAsJsonPrimitive(), actual.getAsJsonPrimitive());
+    }
+
+    private boolean isEqual(JsonObject expected, JsonObject actual) {
+        int fields = 0;
+        for (Map.Entry<String, JsonElement> entry : expected.entrySet()) {
+            if (isWritten(entry.getValue())) {
+                JsonElement actualValue = getWritten(actual, entry.getKey());
+                if (actualValue == null || !isEqual(entry.getValue(), actualValue)) {
+                    return false;
+                }
+                fields++;
+            }
+        }
+        return fields == countWritten(actual);
+    }
+
+    private boolean isEqual(JsonArray expected, JsonArray actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!isEqual(expected.get(i), actual.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEqual(JsonPrimitive expected, JsonPrimitive actual) {
+        if (expected.isString() && actual.isString()) {
+            return expected.getAsString().equals(actual.getAsString());
+        }
+        if (expected.isBoolean() && actual.isBoolean()) {
+            return expected.getAsBoolean() == actual.getAsBoolean();
+        }
+        if (expected.isNumber() && actual.isNumber() && numberText(expected).equals(numberText(actual))) {
+            return true;
+        }
+        Object expectedValue = valueOf(expected);
+        Object actualValue = valueOf(actual);
+        if (expectedValue instanceof Number && actualValue instanceof Number) {
+            return ((Number) expectedValue).doubleValue() == ((Number) actualValue).doubleValue();
+        }
+        return expectedValue.getClass().isAssignableFrom(actualValue.getClass()) && expectedValue.equals(actualValue);
+    }
+
+    private void compareValues(String field, JsonElement expected, JsonElement actual) {
+        if (expected.isJsonNull() && actual.isJsonNull()) {
+            return;
+        }
+        if (isObjectOrArray(expected) && isObjectOrArray(actual) && hashOf(expected) == hashOf(actual) && isEqual(expected, actual)) {
+            // The hashes of different subtrees can still be equal, so they are only taken for a hint
+            return;
+        }
+        if (expected.isJsonObject() && actual.isJsonObject()) {
+            compareObjects(field, expected.getAsJsonObject(), actual.getAsJsonObject());
+        } else if (expected.isJsonArray() && actual.isJsonArray()) {
+            compareArrays(field, expected.getAsJsonArray(), actual.getAsJsonArray());
+        } else if (!expected.isJsonPrimitive() || !actual.isJsonPrimitive()
+                || !isEqual(expected.getAsJsonPrimitive(), actual.getAsJsonPrimitive())) {
+            fail(field, expected, actual);
+        }
+    }
+
+    private void compareObjects(String prefix, JsonObject expected, JsonObject actual) {
+        for (String key : sortedWrittenKeys(expected)) {
+            JsonElement actualValue = getWritten(actual, key);
+            if (actualValue == null) {
+                fail(prefix + "\nExpected: " + key + "\n     but none found\n");
+            } else {
+                compareValues(prefix.isEmpty() ? key : prefix + "." + key, expected.get(key), actualValue);
+            }
+        }
+        for (String key : sortedWrittenKeys(actual)) {
+            if (getWritten(expected, key) == null) {
+                fail(prefix + "\nUnexpected: " + key + "\n");
+            }
+        }
+    }
+
+    private void compareArrays(String prefix, JsonArray expected, JsonArray actual) {
+        if (diffArrays && describeDiff(prefix, expected, actual)) {
+            return;
+        }
+        if (expected.size() != actual.size()) {
+            fail(prefix + "[]: Expected " + expected.size() + " values but got " + actual.size());
+            return;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            compareValues(prefix + "[" + i + "]", expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Describes the elements removed, added and changed, telling whether the arrays could be diffed in
+     * {@link #MAX_DIFF_STEPS}.
+     */
+    private boolean describeDiff(String prefix, JsonArray expected, JsonArray actual) {
+        int[] expectedHashes = hashesOfElements(expected);
+        int[] actualHashes = hashesOfElements(actual);
+        int[] matches = MyersDiff.match(expected.size(), actual.size(),
+                (i, j) -> expectedHashes[i] == actualHashes[j] && isEqual(expected.get(i), actual.get(j)), MAX_DIFF_STEPS);
+        if (matches == null) {
+            return false;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < expected.size() || j < actual.size()) {
+            // The elements up to the next matched pair differ
+            int nextI = i;
+            while (nextI < expected.size() && matches[nextI] < 0) {
+                nextI++;
+            }
+            int nextJ = nextI < expected.size() ? matches[nextI] : actual.size();
+            for (; i < nextI && j < nextJ; i++, j++) {
+                compareValues(prefix + "[" + i + "]", expected.get(i), actual.get(j));
+            }
+            for (; i < nextI; i++) {
+                fail(prefix + "[" + i + "]\nExpected: " + describe(expected.get(i)) + "\n     but none found\n");
+            }
+            for (; j < nextJ; j++) {
+                fail(prefix + "[" + j + "]\nUnexpected: " + describe(actual.get(j)) + "\n");
+            }
+            i++;
+            j++;
+        }
+        return true;
+    }
+
+    private int[] hashesOfElements(JsonArray array) {
+        int[] elementHashes = new int[array.size()];
+        for (int i = 0; i < elementHashes.length; i++) {
+            elementHashes[i] = hashOf(array.get(i));
+        }
+        return elementHashes;
+    }
+
+    private void fail(String field, JsonElement expected, JsonElement actual) {
+        fail(field + "\nExpected: " + describe(expected) + "\n     got: " + describe(actual) + "\n");
+    }
+
+    private void fail(String failure) {
+        if (message.length() != 0) {
+            message.append(" ; ");
+        }
+        message.append(failure);
+    }
+
+    /**
+     * Returns a hash of the element which is equal for the elements {@link #isEqual(JsonElement, JsonElement)} tells
+     * equal: the fields of objects are hashed regardless of their order, and numbers by their double value.
+     */
+    private int hashOf(JsonElement element) {
+        if (element.isJsonNull()) {
+            return 0;
+        }
+        if (element.isJsonPrimitive()) {
+            Object value = valueOf(element.getAsJsonPrimitive());
+            if (value instanceof Number) {
+                // -0.0 == 0.0
+                return Double.hashCode(((Number) value).doubleValue() + 0.0);
+            }
+            return value.hashCode();
+        }
+        Integer hash = hashes.get(element);
+        if (hash == null) {
+            hash = element.isJsonObject() ? hashOf(element.getAsJsonObject()) : hashOf(element.getAsJsonArray());
+            hashes.put(element, hash);
+        }
+        return hash;
+    }
+
+    private int hashOf(JsonObject jsonObject) {
+        int hash = 1;
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            if (isWritten(entry.getValue())) {
+                // Summed, so the order of the fields does not matter
+                hash += entry.getKey().hashCode() * 31 ^ hashOf(entry.getValue());
+            }
+        }
+        return hash;
+    }
+
+    private int hashOf(JsonArray array) {
+        int hash = 2;
+        for (JsonElement element : array) {
+            hash = 31 * hash + hashOf(element);
+        }
+        return hash;
+    }
+
+    private static String describe(JsonElement element) {
+        if (element.isJsonArray()) {
+            return "a JSON array";
+        } else if (element.isJsonObject()) {
+            return "a JSON object";
+        } else if (element.isJsonNull()) {
+            return "null";
+        }
+        return String.valueOf(valueOf(element.getAsJsonPrimitive()));
+    }
+
+    /**
+     * Returns the value JSONAssert reads the written primitive as: numbers are read as the narrowest of Integer, Long
+     * and BigInteger, or as BigDecimal, and the special floating point values as strings.
+     */
+    private static Object valueOf(JsonPrimitive primitive) {
+        if (primitive.isString()) {
+            return primitive.getAsString();
+        } else if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        return JSONObject.stringToValue(numberText(primitive));
+    }
+
+    private static String numberText(JsonPrimitive primitive) {
+        // As JsonWriter writes it
+        return primitive.getAsNumber().toString();
+    }
+
+    private boolean isWritten(JsonElement value) {
+        return serializeNulls || !value.isJsonNull();
+    }
+
+    private JsonElement getWritten(JsonObject jsonObject, String key) {
+        JsonElement value = jsonObject.get(key);
+        return value != null && isWritten(value) ? value : null;
+    }
+
+    private int countWritten(JsonObject jsonObject) {
+        if (serializeNulls) {
+            return jsonObject.size();
+        }
+        int fields = 0;
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            if (isWritten(entry.getValue())) {
+                fields++;
+            }
+        }
+        return fields;
+    }
+
+    private List<String> sortedWrittenKeys(JsonObject jsonObject) {
+        List<String> keys = new ArrayList<>(jsonObject.size());
+        for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+            if (isWritten(entry.getValue())) {
+                keys.add(entry.getKey());
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+}
@@ -0,0 +1,420 @@
+package com.github.karsaig.approvalcrest;
+
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.anyFieldMatcherMatches;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.anyPathMatch;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.getPathsMap;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.isGraphAdapterKey;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.recordSortMatches;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.sortJsonArray;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.hamcrest.Matcher;
+
+import com.github.karsaig.approvalcrest.FieldsIgnorer.PathLevel;
+import com.github.karsaig.approvalcrest.matcher.alias.AliasMap;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.AliasTracker;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker.IgnoredField;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker.Reason;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.SortedFieldsTracker;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.SortedFieldsTracker.SortedField;
+import com.github.karsaig.approvalcrest.matcher.sorting.SortField;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Removes the ignored field names, the ignored array elements and the fields of custom matcher patterns, replaces
+ * aliased values and sorts a Json tree, walking it once for all of them, instead of once for each.
+ * <p>
+ * The result, and what the trackers record, in what order, is the same as applying them one after the other, in that
+ * order, each with a filter of its own, as {@link JsonElementUtil#filterByFieldMatchers},
+ * {@link FieldsIgnorer#removeMatchingElements}, {@link JsonElementUtil#filterByCustomMatcherPatterns},
+ * {@link JsonElementUtil#applyAliases} and {@link FieldsIgnorer#applySorting} do. Each node is transformed once the nodes below it are, so the field name ignores,
+ * which are decided before going down, are the only ones applied top down. Element ignore rules look at the elements
+ * once the field name ignores below them are applied, and change the indexes the later transformations record, so when
+ * there are any, the tree is walked for the field name ignores before applying them, and for the rest after.
+ */
+public final class JsonTreeFilter {
+    private static final int IGNORE = 1;
+    private static final int CUSTOM_MATCHER = 2;
+    private static final int ALIAS = 4;
+    private static final int SORT = 8;
+
+    // What a walk did to a node, for the node above it to decide whether to remove it
+    private static final int IGNORE_CHANGED = 1;
+    private static final int IGNORE_EMPTIED = 2;
+    private static final int CUSTOM_MATCHER_CHANGED = 4;
+
+    private final IgnoredFieldsTracker ignoredTracker;
+    private final AliasTracker aliasTracker;
+    private final SortedFieldsTracker sortedTracker;
+
+    private FieldNamePatterns<?> patternsToIgnore = FieldNamePatterns.none();
+    private ElementIgnoreRules elementIgnoreRules = ElementIgnoreRules.none();
+    private FieldNamePatterns<?> customMatcherPatterns = FieldNamePatterns.none();
+    private AliasMap aliasMap;
+    private Map<String, List<SortField<String>>> pathsToSort = emptyMap();
+    private FieldNamePatterns<SortField<Matcher<String>>> patternsToSort = FieldNamePatterns.none();
+    private boolean sorting;
+    private boolean sortFile;
+
+    // The custom matcher pattern records of a walk, recorded after the ones of the field name ignores
+    private IgnoredFieldsTracker customMatcherRecords;
+
+    /**
+     * @param ignoredTracker records the removed fields and array elements, can be null
+     * @param aliasTracker   records the aliased values, can be null
+     * @param sortedTracker  records the sorted arrays, can be null
+     */
+    public JsonTreeFilter(IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
+        this.ignoredTracker = ignoredTracker;
+        this.aliasTracker = aliasTracker;
+        this.sortedTracker = sortedTracker;
+    }
+
+    public JsonTreeFilter ignoringFieldNames(FieldNamePatterns<?> patternsToIgnore) {
+        this.patternsToIgnore = patternsToIgnore;
+        return this;
+    }
+
+    public JsonTreeFilter ignoringElements(ElementIgnoreRules elementIgnoreRules) {
+        this.elementIgnoreRules = elementIgnoreRules;
+        return this;
+    }
+
+    public JsonTreeFilter ignoringCustomMatcherFieldNames(FieldNamePatterns<?> customMatcherPatterns) {
+        this.customMatcherPatterns = customMatcherPatterns;
+        return this;
+    }
+
+    public JsonTreeFilter aliasing(AliasMap aliasMap) {
+        this.aliasMap = aliasMap.isEmpty() ? null : aliasMap;
+        return this;
+    }
+
+    public JsonTreeFilter sorting(Map<String, List<SortField<String>>> pathsToSort, FieldNamePatterns<SortField<Matcher<String>>> patternsToSort, boolean sortFile) {
+        this.pathsToSort = pathsToSort;
+        this.patternsToSort = patternsToSort;
+        this.sortFile = sortFile;
+        this.sorting = true;
+        return this;
+    }
+
+    /**
+     * Applies the configured transformations to the Json tree, in place.
+     */
+    public void filter(JsonElement json) {
+        if (json == null || json.isJsonNull()) {
+            return;
+        }
+        int transformations = (patternsToIgnore.isEmpty() ? 0 : IGNORE)
+                | (customMatcherPatterns.isEmpty() ? 0 : CUSTOM_MATCHER)
+                | (aliasMap == null ? 0 : ALIAS)
+                | (sorting ? SORT : 0);
+        if (!elementIgnoreRules.isEmpty()) {
+            if ((transformations & IGNORE) != 0) {
+                walk(json, IGNORE);
+                transformations &= ~IGNORE;
+            }
+            elementIgnoreRules.removeMatchingElements(json, ignoredTracker);
+        }
+        if (transformations != 0) {
+            walk(json, transformations);
+        }
+    }
+
+    private void walk(JsonElement root, int transformations) {
+        customMatcherRecords = ignoredTracker == null ? null : new IgnoredFieldsTracker();
+        Map<String, PathLevel> pathMap = pathsToSort.isEmpty() ? emptyMap() : getPathsMap(pathsToSort);
+        visit(root, transformations, "", "", "", null, pathMap, pathsToSort, "", sortedTracker);
+        if ((transformations & SORT) != 0 && root.isJsonArray()) {
+            sortArray(root.getAsJsonArray(), pathsToSort, "", sortedTracker);
+        }
+        if (customMatcherRecords != null) {
+            for (IgnoredField field : customMatcherRecords.getFields()) {
+                if (field.getReason() == Reason.REMOVED_EMPTY) {
+                    ignoredTracker.recordRemovedEmpty(field.getPath(), field.getCauses());
+                } else {
+                    ignoredTracker.recordIgnoredPattern(field.getPath(), field.getReason(), field.getPattern());
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the node and the nodes below it, apart from the sorting of an array node itself, which is left to
+     * the caller, for the arrays it keeps.
+     *
+     * @param ignorePath        the path the field name ignores record, with the array indexes they leave
+     * @param customMatcherPath the path the custom matcher patterns record, with the array indexes they leave
+     * @param aliasPath         the path aliases are resolved with, without array indexes
+     * @param aliasField        the name of the field holding the node, for the aliases of array elements
+     * @param sortPath          the path sorting records, without array indexes and graph adapter envelopes
+     * @return what was done to the node itself
+     */
+    private int visit(JsonElement element, int transformations, String ignorePath, String customMatcherPath,
+                      String aliasPath, String aliasField, Map<String, PathLevel> pathMap,
+                      Map<String, List<SortField<String>>> pathsToSort, String sortPath, SortedFieldsTracker sorted) {
+        if (element.isJsonObject()) {
+            return visitObject(element.getAsJsonObject(), transformations, ignorePath, customMatcherPath, aliasPath,
+                    pathMap, pathsToSort, sortPath, sorted);
+        } else if (element.isJsonArray()) {
+            return visitArray(element.getAsJsonArray(), transformations, ignorePath, customMatcherPath, aliasPath,
+                    aliasField, pathsToSort, sortPath, sorted);
+        }
+        return 0;
+    }
+
+    private int visitObject(JsonObject jsonObject, int transformations, String ignorePath, String customMatcherPath,
+                            String aliasPath, Map<String, PathLevel> pathMap, Map<String, List<SortField<String>>> pathsToSort,
+                            String sortPath, SortedFieldsTracker sorted) {
+        int result = 0;
+        int keptByIgnores = 0;
+        boolean sortingFields = (transformations & SORT) != 0 && sortFile;
+        // Sorting records the fields in their sorted order, but they are walked in their original order
+        Map<String, SortedFieldsTracker> sortedFields = sortingFields && sorted != null ? new HashMap<>() : null;
+
+        Iterator<Map.Entry<String, JsonElement>> entries = jsonObject.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonElement> entry = entries.next();
+            String key = entry.getKey();
+            JsonElement value = entry.getValue();
+            String childIgnorePath = ignoredTracker == null ? null : childPath(ignorePath, key);
+            if ((transformations & IGNORE) != 0 && patternsToIgnore.anyMatches(key)) {
+                entries.remove();
+                result |= IGNORE_CHANGED;
+                if (ignoredTracker != null) {
+                    ignoredTracker.recordIgnoredPattern(childIgnorePath, Reason.IGNORE_PATTERN, describeFirstMatch(patternsToIgnore, key));
+                }
+                continue;
+            }
+            boolean matchesCustomMatcher = (transformations & CUSTOM_MATCHER) != 0 && customMatcherPatterns.anyMatches(key);
+            String childCustomMatcherPath = ignoredTracker == null ? null : childPath(customMatcherPath, key);
+            String childAliasPath = (transformations & ALIAS) == 0 ? null : childPath(aliasPath, key);
+            boolean complex = !value.isJsonNull() && !value.isJsonPrimitive();
+            // A field removed for a custom matcher pattern is still walked for the field name ignores
+            int childTransformations = matchesCustomMatcher ? transformations & IGNORE : transformations;
+            boolean sortingChild = complex && (childTransformations & SORT) != 0;
+
+            boolean graphAdapterKey = false;
+            Map<String, PathLevel> childPathMap = pathMap;
+            Map<String, List<SortField<String>>> childPathsToSort = pathsToSort;
+            String childSortPath = sortPath;
+            SortedFieldsTracker childSorted = sorted;
+            if (sortingChild) {
+                graphAdapterKey = isGraphAdapterKey(key);
+                // A graph adapter envelope is walked through without consuming a level of the paths to sort
+                if (!graphAdapterKey) {
+                    childPathsToSort = pathMap.getOrDefault(key, PathLevel.EMPTY).getNextLevel();
+                    childPathMap = childPathsToSort.isEmpty() ? emptyMap() : getPathsMap(childPathsToSort);
+                    childSortPath = sorted == null ? null : childPath(sortPath, key);
+                }
+                if (sortedFields != null) {
+                    childSorted = new SortedFieldsTracker();
+                    sortedFields.put(key, childSorted);
+                }
+            }
+
+            int changes = complex ? visit(value, childTransformations, childIgnorePath, childCustomMatcherPath,
+                    childAliasPath, key, childPathMap, childPathsToSort, childSortPath, childSorted) : 0;
+
+            if ((changes & IGNORE_EMPTIED) != 0) {
+                entries.remove();
+                result |= IGNORE_CHANGED;
+                if (ignoredTracker != null) {
+                    ignoredTracker.recordRemovedEmpty(childIgnorePath, collectChildPaths(childIgnorePath, ignoredTracker));
+                }
+                continue;
+            }
+            keptByIgnores++;
+            if (matchesCustomMatcher) {
+                entries.remove();
+                result |= CUSTOM_MATCHER_CHANGED;
+                if (ignoredTracker != null) {
+                    customMatcherRecords.recordIgnoredPattern(childCustomMatcherPath, Reason.CUSTOM_MATCHER_PATTERN, describeFirstMatch(customMatcherPatterns, key));
+                }
+                continue;
+            }
+            if ((changes & CUSTOM_MATCHER_CHANGED) != 0 && JsonElementUtil.isEmpty(value)) {
+                entries.remove();
+                result |= CUSTOM_MATCHER_CHANGED;
+                if (ignoredTracker != null) {
+                    customMatcherRecords.recordRemovedEmpty(childCustomMatcherPath,
+                            collectChildPaths(childCustomMatcherPath, ignoredTracker, customMatcherRecords));
+                }
+                continue;
+            }
+
+            if (sortingChild && value.isJsonArray()) {
+                sortArray(value.getAsJsonArray(), childPathsToSort, childSortPath, childSorted);
+                if (!graphAdapterKey) {
+                    sortFieldArray(value.getAsJsonArray(), key, pathMap, childSortPath, childSorted);
+                }
+            } else if ((transformations & ALIAS) != 0 && value.isJsonPrimitive()) {
+                String alias = resolveAlias(value.getAsJsonPrimitive(), childAliasPath, key, childAliasPath);
+                if (alias != null) {
+                    entry.setValue(new JsonPrimitive(alias));
+                }
+            }
+        }
+        if ((result & IGNORE_CHANGED) != 0 && keptByIgnores == 0) {
+            result |= IGNORE_EMPTIED;
+        }
+
+        if (sortingFields) {
+            FieldsIgnorer.sortFieldNames(jsonObject);
+            if (sortedFields != null) {
+                for (String key : jsonObject.keySet()) {
+                    SortedFieldsTracker fieldSorted = sortedFields.get(key);
+                    if (fieldSorted != null) {
+                        for (SortedField field : fieldSorted.getFields()) {
+                            if (field.getReason() == SortedFieldsTracker.Reason.SORT_PATH) {
+                                sorted.recordSortedByPath(field.getPath());
+                            } else {
+                                sorted.recordSortedByPattern(field.getPath(), field.getPattern());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private int visitArray(JsonArray jsonArray, int transformations, String ignorePath, String customMatcherPath,
+                           String aliasPath, String aliasField, Map<String, List<SortField<String>>> pathsToSort,
+                           String sortPath, SortedFieldsTracker sorted) {
+        // The elements are sorted by the paths below the array, the ones for the array itself sort the array
+        Map<String, List<SortField<String>>> innerPathsToSort = pathsToSort;
+        if (pathsToSort.containsKey("")) {
+            innerPathsToSort = new HashMap<>(pathsToSort);
+            innerPathsToSort.remove("");
+        }
+        Map<String, PathLevel> innerPathMap = (transformations & SORT) == 0 || innerPathsToSort.isEmpty()
+                ? emptyMap() : getPathsMap(innerPathsToSort);
+
+        int result = 0;
+        int keptByIgnores = 0;
+        int kept = 0;
+        Iterator<JsonElement> elements = jsonArray.iterator();
+        while (elements.hasNext()) {
+            JsonElement element = elements.next();
+            if (element.isJsonNull()) {
+                keptByIgnores++;
+                kept++;
+                continue;
+            }
+            if (element.isJsonPrimitive()) {
+                if ((transformations & ALIAS) != 0) {
+                    String alias = resolveAlias(element.getAsJsonPrimitive(), aliasPath, aliasField != null ? aliasField : "",
+                            aliasPath + "[" + kept + "]");
+                    if (alias != null) {
+                        jsonArray.set(kept, new JsonPrimitive(alias));
+                    }
+                }
+                keptByIgnores++;
+                kept++;
+                continue;
+            }
+            int changes = visit(element, transformations,
+                    ignoredTracker == null ? null : ignorePath + "[" + keptByIgnores + "]",
+                    ignoredTracker == null ? null : customMatcherPath + "[" + kept + "]",
+                    aliasPath, aliasField, innerPathMap, innerPathsToSort, sortPath, sorted);
+            if ((changes & IGNORE_EMPTIED) != 0) {
+                elements.remove();
+                result |= IGNORE_CHANGED;
+                continue;
+            }
+            keptByIgnores++;
+            if ((changes & CUSTOM_MATCHER_CHANGED) != 0 && JsonElementUtil.isEmpty(element)) {
+                elements.remove();
+                result |= CUSTOM_MATCHER_CHANGED;
+                continue;
+            }
+            kept++;
+            if ((transformations & SORT) != 0 && element.isJsonArray()) {
+                sortArray(element.getAsJsonArray(), innerPathsToSort, sortPath, sorted);
+            }
+        }
+        if ((result & IGNORE_CHANGED) != 0 && keptByIgnores == 0) {
+            result |= IGNORE_EMPTIED;
+        }
+        return result;
+    }
+
+    /**
+     * Sorts the array itself, by the sort fields configured for its own path and the patterns matching the empty
+     * field name.
+     */
+    private void sortArray(JsonArray jsonArray, Map<String, List<SortField<String>>> pathsToSort, String sortPath, SortedFieldsTracker sorted) {
+        List<SortField<String>> rootSortFields = pathsToSort.getOrDefault("", emptyList());
+        List<SortField<Matcher<String>>> rootFieldMatchers = anyFieldMatcherMatches("", patternsToSort, sortFile);
+        if (!rootSortFields.isEmpty() || !rootFieldMatchers.isEmpty()) {
+            sortJsonArray(jsonArray, rootSortFields, rootFieldMatchers);
+            if (sorted != null) {
+                recordSortMatches(sorted, sortPath, rootSortFields, rootFieldMatchers);
+            }
+        }
+    }
+
+    /**
+     * Sorts the array held by a field, when the field holds a set or its name is configured to be sorted.
+     */
+    private void sortFieldArray(JsonArray jsonArray, String fieldName, Map<String, PathLevel> pathMap,
+                                String sortPath, SortedFieldsTracker sorted) {
+        List<SortField<String>> matchingPathMatchers = anyPathMatch(fieldName, pathMap, sortFile);
+        List<SortField<Matcher<String>>> matchingFieldMatchers = anyFieldMatcherMatches(fieldName, patternsToSort, sortFile);
+        if (SortAwareJsonTreeWriter.isSortedByType(jsonArray) || !matchingPathMatchers.isEmpty() || !matchingFieldMatchers.isEmpty()) {
+            sortJsonArray(jsonArray, matchingPathMatchers, matchingFieldMatchers);
+            if (sorted != null) {
+                recordSortMatches(sorted, sortPath, matchingPathMatchers, matchingFieldMatchers);
+            }
+        }
+    }
+
+    private String resolveAlias(JsonPrimitive value, String path, String fieldName, String recordedPath) {
+        if (value.isBoolean()) {
+            return null;
+        }
+        String coerced = value.getAsString();
+        Optional<String> alias = aliasMap.resolve(path, fieldName, coerced);
+        if (!alias.isPresent()) {
+            return null;
+        }
+        if (aliasTracker != null) {
+            aliasTracker.recordAlias(recordedPath, coerced, alias.get());
+        }
+        return alias.get();
+    }
+
+    private static String childPath(String path, String field) {
+        return path.isEmpty() ? field : path + "." + field;
+    }
+
+    private static <P> String describeFirstMatch(FieldNamePatterns<P> patterns, String fieldName) {
+        return patterns.getMatcher(patterns.findFirstMatch(fieldName)).toString();
+    }
+
+    private static List<String> collectChildPaths(String parentPath, IgnoredFieldsTracker... trackers) {
+        List<String> causes = new ArrayList<>();
+        String prefix = parentPath + ".";
+        for (IgnoredFieldsTracker tracker : trackers) {
+            for (IgnoredField field : tracker.getFields()) {
+                if (field.getPath().startsWith(prefix)) {
+                    causes.add(field.getPath() + " (" + field.getReason() + ")");
+                }
+            }
+        }
+        return causes;
+    }
+}
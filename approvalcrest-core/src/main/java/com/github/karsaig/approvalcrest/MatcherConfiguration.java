@@ -39,6 +39,11 @@ public class MatcherConfiguration {
     private AliasMap aliasMap = AliasMap.builder().build();
     private boolean serializeNulls = getBooleanProperties("true", SERIALIZE_NULLS_PROPERTY, SERIALIZE_NULLS_ALIAS);
     private boolean legacySetCollapse = getBooleanProperties("false", LEGACY_SET_COLLAPSE_PROPERTY, LEGACY_SET_COLLAPSE_ALIAS);
+    // Built on first use and again whenever the patterns they were built from change
+    private FieldNamePatterns<Matcher<String>> fieldNamePatternsToIgnore;
+    private FieldNamePatterns<SortField<Matcher<String>>> fieldNamePatternsToSort;
+    private FieldNamePatterns<AbstractMap.SimpleEntry<Matcher<String>, Matcher<?>>> customMatcherFieldNamePatterns;
+    private ElementIgnoreRules compiledElementIgnoreRules;
 
     public MatcherConfiguration() {
         skipCircularReferenceCheck.add(o -> Path.class.isInstance(o));
@@ -56,6 +61,16 @@ public class MatcherConfiguration {
         return patternsToIgnore;
     }
 
+    /**
+     * The {@link #getPatternsToIgnore()}, remembering the field names they matched for as long as they are not changed.
+     */
+    public FieldNamePatterns<Matcher<String>> getFieldNamePatternsToIgnore() {
+        if (fieldNamePatternsToIgnore == null || !fieldNamePatternsToIgnore.isOf(patternsToIgnore)) {
+            fieldNamePatternsToIgnore = FieldNamePatterns.of(patternsToIgnore);
+        }
+        return fieldNamePatternsToIgnore;
+    }
+
     public List<Function<Object, Boolean>> getSkipCircularReferenceCheck() {
         return skipCircularReferenceCheck;
     }
@@ -72,6 +87,16 @@ public class MatcherConfiguration {
         return patternsToSort;
     }
 
+    /**
+     * The {@link #getPatternsToSort()}, remembering the field names they matched for as long as they are not changed.
+     */
+    public FieldNamePatterns<SortField<Matcher<String>>> getFieldNamePatternsToSort() {
+        if (fieldNamePatternsToSort == null || !fieldNamePatternsToSort.isOf(patternsToSort)) {
+            fieldNamePatternsToSort = FieldNamePatterns.of(patternsToSort, SortField::getSortFieldSelector);
+        }
+        return fieldNamePatternsToSort;
+    }
+
     public List<Class<?>> getTypesToSort() {
         return typesToSort;
     }
@@ -80,10 +105,31 @@ public class MatcherConfiguration {
         return customMatcherPatterns;
     }
 
+    /**
+     * The {@link #getCustomMatcherPatterns()}, remembering the field names they matched for as long as they are not
+     * changed.
+     */
+    public FieldNamePatterns<AbstractMap.SimpleEntry<Matcher<String>, Matcher<?>>> getCustomMatcherFieldNamePatterns() {
+        if (customMatcherFieldNamePatterns == null || !customMatcherFieldNamePatterns.isOf(customMatcherPatterns)) {
+            customMatcherFieldNamePatterns = FieldNamePatterns.of(customMatcherPatterns, AbstractMap.SimpleEntry::getKey);
+        }
+        return customMatcherFieldNamePatterns;
+    }
+
     public List<ElementIgnoreRule> getElementIgnoreRules() {
         return elementIgnoreRules;
     }
 
+    /**
+     * The {@link #getElementIgnoreRules()}, compiled for as long as they are not changed.
+     */
+    public ElementIgnoreRules getCompiledElementIgnoreRules() {
+        if (compiledElementIgnoreRules == null || !compiledElementIgnoreRules.isOf(elementIgnoreRules)) {
+            compiledElementIgnoreRules = ElementIgnoreRules.of(elementIgnoreRules);
+        }
+        return compiledElementIgnoreRules;
+    }
+
     public MatcherConfiguration addElementIgnoreRule(String path, Matcher<?> valueMatcher) {
         elementIgnoreRules.add(ElementIgnoreRule.of(path, valueMatcher));
         return this;
@@ -0,0 +1,132 @@
+package com.github.karsaig.approvalcrest;
+
+import java.util.Arrays;
+
+/**
+ * Finds the longest common subsequence of two sequences with the linear space variant of Myers' O(ND) difference
+ * algorithm: the middle snake of the shortest edit script is searched from both ends, and the halves on either side
+ * of it are diffed the same way. Only the lengths of the sequences and whether two of their elements are equal are
+ * needed.
+ * <p>
+ * The time the search takes grows with the number of differences, so it gives up after a number of steps, leaving the
+ * sequences to a cheaper comparison.
+ */
+final class MyersDiff {
+
+    /**
+     * Tells whether the element at the index of the first sequence equals the one at the index of the second.
+     */
+    interface Equality {
+        boolean test(int first, int second);
+    }
+
+    private final Equality equality;
+    private int stepsLeft;
+    // The index in the second sequence the element at the index of the first is matched to, -1 if none
+    private final int[] matches;
+
+    private MyersDiff(int firstLength, Equality equality, int maxSteps) {
+        this.equality = equality;
+        this.stepsLeft = maxSteps;
+        matches = new int[firstLength];
+        Arrays.fill(matches, -1);
+    }
+
+    /**
+     * Matches the elements of the first sequence to the ones of the second, in order, so the fewest elements are left
+     * unmatched.
+     *
+     * @param maxSteps the number of diagonals to follow at most before giving up
+     * @return the index in the second sequence each element of the first is matched to, or -1, or {@code null} when
+     * the sequences differ too much to be diffed in the given number of steps
+     */
+    static int[] match(int firstLength, int secondLength, Equality equality, int maxSteps) {
+        MyersDiff diff = new MyersDiff(firstLength, equality, maxSteps);
+        if (!diff.diff(0, firstLength, 0, secondLength)) {
+            return null;
+        }
+        return diff.matches;
+    }
+
+    /**
+     * Diffs the ranges, both ends excluded.
+     */
+    private boolean diff(int firstStart, int firstEnd, int secondStart, int secondEnd) {
+        while (firstStart < firstEnd && secondStart < secondEnd && equality.test(firstStart, secondStart)) {
+            matches[firstStart++] = secondStart++;
+        }
+        while (firstStart < firstEnd && secondStart < secondEnd && equality.test(firstEnd - 1, secondEnd - 1)) {
+            matches[--firstEnd] = --secondEnd;
+        }
+        if (firstStart == firstEnd || secondStart == secondEnd) {
+            // Only insertions or only deletions left
+            return true;
+        }
+        int[] snake = middleSnake(firstStart, firstEnd, secondStart, secondEnd);
+        if (snake == null) {
+            return false;
+        }
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x++, y++) {
+            matches[x] = y;
+        }
+        return diff(firstStart, snake[0], secondStart, snake[1]) && diff(snake[2], firstEnd, snake[3], secondEnd);
+    }
+
+    /**
+     * Returns the start and the end of the middle snake of the ranges, as {x, y, u, v}, or {@code null} when the steps
+     * ran out.
+     */
+    private int[] middleSnake(int firstStart, int firstEnd, int secondStart, int secondEnd) {
+        int n = firstEnd - firstStart;
+        int m = secondEnd - secondStart;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // The furthest x reached on each diagonal k = x - y, from the start and, on the reversed ranges, from the end
+        int[] forward = new int[2 * offset + 1];
+        int[] backward = new int[2 * offset + 1];
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                if (--stepsLeft < 0) {
+                    return null;
+                }
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && equality.test(firstStart + x, secondStart + y)) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[offset + reverseK] >= n) {
+                    return new int[]{firstStart + startX, secondStart + startY, firstStart + x, secondStart + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                if (--stepsLeft < 0) {
+                    return null;
+                }
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && equality.test(firstEnd - 1 - x, secondEnd - 1 - y)) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    return new int[]{firstEnd - x, secondEnd - y, firstEnd - startX, secondEnd - startY};
+                }
+            }
+        }
+        // Unreachable: the searches meet by the time they have both followed half of the shortest edit script
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Shazam Entertainment Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.karsaig.approvalcrest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Dot separated field paths compiled into a trie, so the paths sharing a prefix are followed down the Json tree
+ * together by {@link FieldsIgnorer}.
+ * <p>
+ * The paths are numbered in the order the trie is walked, each node before its children, so the paths below a node
+ * have consecutive indexes. Applying them in that order is the same as applying them one by one in that order.
+ */
+public final class PathTrie {
+    private static final String PATH_SEPARATOR_PATTERN = Pattern.quote(".");
+
+    private final Set<String> paths;
+    private final List<String> pathsByIndex;
+    private final Map<String, Integer> indexes;
+    private final Node root;
+
+    private PathTrie(Set<String> paths) {
+        this.paths = Collections.unmodifiableSet(paths);
+        root = new Node(null);
+        for (String path : paths) {
+            Node node = root;
+            for (String segment : path.split(PATH_SEPARATOR_PATTERN)) {
+                node = node.children.computeIfAbsent(segment, Node::new);
+            }
+            if (node != root) {
+                node.paths.add(path);
+            }
+        }
+        pathsByIndex = new ArrayList<>(paths.size());
+        indexes = new HashMap<>();
+        number(root);
+    }
+
+    /**
+     * Compiles the given paths, in the order they are iterated.
+     */
+    public static PathTrie compile(Collection<String> paths) {
+        return new PathTrie(new LinkedHashSet<>(paths));
+    }
+
+    /**
+     * Returns the given trie when it was compiled from the same paths, or compiles them again. Lets a matcher compile
+     * its paths once, while still picking up paths configured after its first match.
+     */
+    public static PathTrie compileIfChanged(PathTrie compiled, Set<String> paths) {
+        if (compiled != null && compiled.paths.equals(paths)) {
+            return compiled;
+        }
+        return compile(paths);
+    }
+
+    /**
+     * The compiled paths, to tell whether the trie is still up to date with a configuration.
+     */
+    public Set<String> getPaths() {
+        return paths;
+    }
+
+    public boolean isEmpty() {
+        return pathsByIndex.isEmpty();
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    int size() {
+        return pathsByIndex.size();
+    }
+
+    String getPath(int index) {
+        return pathsByIndex.get(index);
+    }
+
+    /**
+     * Returns the index of a compiled path, or -1 for the paths with no segments, which are never applied.
+     */
+    int indexOf(String path) {
+        return indexes.getOrDefault(path, -1);
+    }
+
+    private void number(Node node) {
+        node.first = pathsByIndex.size();
+        for (String path : node.paths) {
+            node.pathIndexes.add(pathsByIndex.size());
+            indexes.put(path, pathsByIndex.size());
+            pathsByIndex.add(path);
+        }
+        for (Node child : node.children.values()) {
+            number(child);
+        }
+        node.end = pathsByIndex.size();
+    }
+
+    /**
+     * A path segment, with the paths ending at it and the segments following it.
+     */
+    static final class Node {
+        final String segment;
+        final Map<String, Node> children = new LinkedHashMap<>();
+        private final List<String> paths = new ArrayList<>(1);
+        // Several paths end at the same node when they only differ in trailing dots
+        final List<Integer> pathIndexes = new ArrayList<>(1);
+        // Indexes of the paths ending at this node or below it: first inclusive, end exclusive
+        int first;
+        int end;
+
+        private Node(String segment) {
+            this.segment = segment;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.github.karsaig.approvalcrest;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Provides reflective field access with module-opening capability.
@@ -22,8 +27,9 @@ import java.util.concurrent.ConcurrentHashMap;
  *   <li>{@code fallback} — skips Unsafe entirely, uses getter-based (for testing/future-proofing)</li>
  * </ul>
  * <p>
- * IMPORTANT: All access to sun.misc.Unsafe, java.lang.Module, and MethodHandles.Lookup is
- * done via reflection. There is NO import of any of these. When Unsafe is removed from a
+ * IMPORTANT: All access to sun.misc.Unsafe, java.lang.Module, and the trusted MethodHandles.Lookup is
+ * done via reflection. There is NO import of any of these: Unsafe is held as an Object, and its getters are
+ * bound to it as public method handles. When Unsafe is removed from a
  * future JDK, Class.forName will throw ClassNotFoundException, module opening won't work,
  * and the code will gracefully fall back to getter-based serialization —
  * zero compile errors, zero runtime errors.
@@ -45,15 +51,16 @@ public class ReflectUtil {
     // Unsafe access via reflection — no import, no compile-time dependency
     private static final Object UNSAFE;
     private static final Method OBJECT_FIELD_OFFSET;
-    private static final Method GET_OBJECT;
-    private static final Method GET_BOOLEAN;
-    private static final Method GET_BYTE;
-    private static final Method GET_CHAR;
-    private static final Method GET_SHORT;
-    private static final Method GET_INT;
-    private static final Method GET_LONG;
-    private static final Method GET_FLOAT;
-    private static final Method GET_DOUBLE;
+    // The Unsafe getters bound to UNSAFE, each taking (Object, long) and returning the value boxed
+    private static final MethodHandle GET_OBJECT;
+    private static final MethodHandle GET_BOOLEAN;
+    private static final MethodHandle GET_BYTE;
+    private static final MethodHandle GET_CHAR;
+    private static final MethodHandle GET_SHORT;
+    private static final MethodHandle GET_INT;
+    private static final MethodHandle GET_LONG;
+    private static final MethodHandle GET_FLOAT;
+    private static final MethodHandle GET_DOUBLE;
 
     // Module opening — cached MethodHandle (typed as Object) + invocation method
     private static final Object IMPL_ADD_OPENS_MH;    // MethodHandle for Module.implAddOpens
@@ -63,6 +70,26 @@ public class ReflectUtil {
     // Packages we've already successfully opened (to avoid retrying)
     private static final Set<String> OPENED_PACKAGES = ConcurrentHashMap.newKeySet();
 
+    // isInLockedModule answers, worked out once per class: opening a module is permanent, and a module that could
+    // not be opened the first time will not open on a later attempt either
+    private static final ClassValue<Boolean> LOCKED_MODULE_DECISIONS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            LOCKED_MODULE_CACHE_MISSES.increment();
+            return decideIsInLockedModule(type);
+        }
+    };
+    private static final LongAdder LOCKED_MODULE_LOOKUPS = new LongAdder();
+    private static final LongAdder LOCKED_MODULE_CACHE_MISSES = new LongAdder();
+
+    // Field access plans, keyed by field name, for the fields of each class read so far
+    private static final ClassValue<Map<String, FieldAccessor>> ACCESSOR_PLANS = new ClassValue<Map<String, FieldAccessor>>() {
+        @Override
+        protected Map<String, FieldAccessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     static {
         String mode = System.getProperty("approvalcrestReflection");
         if (mode == null) {
@@ -105,14 +132,15 @@ public class ReflectUtil {
         Object unsafe = null;
         Method objectFieldOffset = null;
         Method getObject = null;
-        Method getBoolean = null;
-        Method getByte = null;
-        Method getChar = null;
-        Method getShort = null;
-        Method getInt = null;
-        Method getLong = null;
-        Method getFloat = null;
-        Method getDouble = null;
+        MethodHandle getObjectHandle = null;
+        MethodHandle getBoolean = null;
+        MethodHandle getByte = null;
+        MethodHandle getChar = null;
+        MethodHandle getShort = null;
+        MethodHandle getInt = null;
+        MethodHandle getLong = null;
+        MethodHandle getFloat = null;
+        MethodHandle getDouble = null;
 
         if (!FALLBACK_MODE) {
             try {
@@ -123,14 +151,15 @@ public class ReflectUtil {
 
                 objectFieldOffset = unsafeClass.getMethod("objectFieldOffset", Field.class);
                 getObject = unsafeClass.getMethod("getObject", Object.class, long.class);
-                getBoolean = unsafeClass.getMethod("getBoolean", Object.class, long.class);
-                getByte = unsafeClass.getMethod("getByte", Object.class, long.class);
-                getChar = unsafeClass.getMethod("getChar", Object.class, long.class);
-                getShort = unsafeClass.getMethod("getShort", Object.class, long.class);
-                getInt = unsafeClass.getMethod("getInt", Object.class, long.class);
-                getLong = unsafeClass.getMethod("getLong", Object.class, long.class);
-                getFloat = unsafeClass.getMethod("getFloat", Object.class, long.class);
-                getDouble = unsafeClass.getMethod("getDouble", Object.class, long.class);
+                getObjectHandle = unsafeGetter(unsafe, getObject);
+                getBoolean = unsafeGetter(unsafe, unsafeClass.getMethod("getBoolean", Object.class, long.class));
+                getByte = unsafeGetter(unsafe, unsafeClass.getMethod("getByte", Object.class, long.class));
+                getChar = unsafeGetter(unsafe, unsafeClass.getMethod("getChar", Object.class, long.class));
+                getShort = unsafeGetter(unsafe, unsafeClass.getMethod("getShort", Object.class, long.class));
+                getInt = unsafeGetter(unsafe, unsafeClass.getMethod("getInt", Object.class, long.class));
+                getLong = unsafeGetter(unsafe, unsafeClass.getMethod("getLong", Object.class, long.class));
+                getFloat = unsafeGetter(unsafe, unsafeClass.getMethod("getFloat", Object.class, long.class));
+                getDouble = unsafeGetter(unsafe, unsafeClass.getMethod("getDouble", Object.class, long.class));
             } catch (ClassNotFoundException e) {
                 // Unsafe completely removed from this JDK
                 unsafe = null;
@@ -142,7 +171,7 @@ public class ReflectUtil {
 
         UNSAFE = unsafe;
         OBJECT_FIELD_OFFSET = objectFieldOffset;
-        GET_OBJECT = getObject;
+        GET_OBJECT = getObjectHandle;
         GET_BOOLEAN = getBoolean;
         GET_BYTE = getByte;
         GET_CHAR = getChar;
@@ -245,6 +274,7 @@ public class ReflectUtil {
      * In force mode, always returns false.
      * In safe mode with Unsafe available: attempts to open the module on-demand.
      * Arrays, primitives, and types without meaningful packages return false.
+     * The answer is worked out once per class and cached, see {@link #getLockedModuleCacheHits()}.
      */
     public static boolean isInLockedModule(Class<?> clazz) {
         if (FORCE_MODE) {
@@ -254,6 +284,25 @@ public class ReflectUtil {
             // Java 8 — no modules
             return false;
         }
+        LOCKED_MODULE_LOOKUPS.increment();
+        return LOCKED_MODULE_DECISIONS.get(clazz);
+    }
+
+    /**
+     * @return how many {@link #isInLockedModule(Class)} calls were answered from the per-class cache
+     */
+    public static long getLockedModuleCacheHits() {
+        return LOCKED_MODULE_LOOKUPS.sum() - LOCKED_MODULE_CACHE_MISSES.sum();
+    }
+
+    /**
+     * @return how many {@link #isInLockedModule(Class)} calls had to inspect the module of the class
+     */
+    public static long getLockedModuleCacheMisses() {
+        return LOCKED_MODULE_CACHE_MISSES.sum();
+    }
+
+    private static boolean decideIsInLockedModule(Class<?> clazz) {
         // Arrays and primitives are not module-locked
         if (clazz.isArray() || clazz.isPrimitive()) {
             return false;
@@ -327,44 +376,10 @@ public class ReflectUtil {
      *   <li>Unsafe via reflection (bypasses module system)</li>
      *   <li>Throws InaccessibleFieldException (signals caller to use getter-based approach)</li>
      * </ol>
+     * The tier is decided once per field, see {@link FieldAccessor}.
      */
     public static Object getFieldValue(Field field, Object obj) throws InaccessibleFieldException {
-        if (FORCE_MODE) {
-            try {
-                field.setAccessible(true);
-                return field.get(obj);
-            } catch (Exception e) {
-                throw new InaccessibleFieldException(field, e);
-            }
-        }
-
-        // Tier 1: try standard reflection
-        if (TRY_SET_ACCESSIBLE != null) {
-            try {
-                boolean accessible = (boolean) TRY_SET_ACCESSIBLE.invoke(field);
-                if (accessible) {
-                    return field.get(obj);
-                }
-            } catch (Exception e) {
-                // Fall through to Tier 2
-            }
-        } else {
-            // Java 8: setAccessible always works
-            try {
-                field.setAccessible(true);
-                return field.get(obj);
-            } catch (Exception e) {
-                // Fall through to Tier 2
-            }
-        }
-
-        // Tier 2: Unsafe bypass (if not in fallback mode and Unsafe available)
-        if (!FALLBACK_MODE && UNSAFE != null) {
-            return getFieldValueViaUnsafe(field, obj);
-        }
-
-        // All tiers exhausted
-        throw new InaccessibleFieldException(field);
+        return accessor(field).read(obj);
     }
 
     /**
@@ -377,20 +392,134 @@ public class ReflectUtil {
         if (UNSAFE == null) {
             throw new InaccessibleFieldException(field);
         }
+        return accessor(field).readViaUnsafe(obj);
+    }
+
+    private static FieldAccessor accessor(Field field) {
+        Map<String, FieldAccessor> plans = ACCESSOR_PLANS.get(field.getDeclaringClass());
+        FieldAccessor accessor = plans.get(field.getName());
+        if (accessor == null) {
+            accessor = plans.computeIfAbsent(field.getName(), name -> new FieldAccessor(copyOf(field)));
+        }
+        return accessor;
+    }
+
+    /**
+     * Returns a copy of the field, so making it accessible leaves the caller's instance as it was.
+     */
+    private static Field copyOf(Field field) {
         try {
-            long offset = (long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, field);
-            Class<?> type = field.getType();
-            if (type == boolean.class) return GET_BOOLEAN.invoke(UNSAFE, obj, offset);
-            if (type == byte.class) return GET_BYTE.invoke(UNSAFE, obj, offset);
-            if (type == char.class) return GET_CHAR.invoke(UNSAFE, obj, offset);
-            if (type == short.class) return GET_SHORT.invoke(UNSAFE, obj, offset);
-            if (type == int.class) return GET_INT.invoke(UNSAFE, obj, offset);
-            if (type == long.class) return GET_LONG.invoke(UNSAFE, obj, offset);
-            if (type == float.class) return GET_FLOAT.invoke(UNSAFE, obj, offset);
-            if (type == double.class) return GET_DOUBLE.invoke(UNSAFE, obj, offset);
-            return GET_OBJECT.invoke(UNSAFE, obj, offset);
-        } catch (Exception e) {
-            throw new InaccessibleFieldException(field, e);
+            return field.getDeclaringClass().getDeclaredField(field.getName());
+        } catch (NoSuchFieldException | SecurityException e) {
+            // Only a field the declaring class does not report itself, which is read through the caller's instance
+            return field;
+        }
+    }
+
+    /**
+     * Binds the Unsafe getter to the Unsafe instance, boxing what it returns: {@code (Object, long)Object}.
+     */
+    private static MethodHandle unsafeGetter(Object unsafe, Method getter) throws IllegalAccessException {
+        return MethodHandles.publicLookup().unreflect(getter).bindTo(unsafe)
+                .asType(MethodType.methodType(Object.class, Object.class, long.class));
+    }
+
+    /**
+     * The access plan of one field, worked out the first time the field is read: whether standard reflection can read
+     * it, and if Unsafe is available, the Unsafe getter matching its type bound to its offset. Reads then go straight
+     * to the chosen tier instead of calling trySetAccessible and objectFieldOffset reflectively every time, and the
+     * Unsafe tier calls the bound method handle instead of invoking the getter reflectively.
+     * <p>
+     * The plan holds its own copy of the {@link Field}, so the caller's instance is left as it was. A field that is
+     * not accessible when its plan is made stays on the Unsafe tier even if its module is opened later, which reads
+     * the same value.
+     */
+    private static final class FieldAccessor {
+        private final Field field;
+        private final boolean accessible;
+        private final Exception accessFailure;
+        // Takes the object and returns the value of the field, boxed
+        private final MethodHandle unsafeGetter;
+        private final Exception offsetFailure;
+
+        FieldAccessor(Field field) {
+            this.field = field;
+            boolean canAccess = false;
+            Exception failure = null;
+            if (FORCE_MODE) {
+                try {
+                    field.setAccessible(true);
+                    canAccess = true;
+                } catch (Exception e) {
+                    failure = e;
+                }
+            } else {
+                canAccess = makeAccessible(field);
+            }
+            this.accessible = canAccess;
+            this.accessFailure = failure;
+
+            MethodHandle getter = null;
+            failure = null;
+            if (UNSAFE != null) {
+                try {
+                    long offset = (long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, field);
+                    getter = MethodHandles.insertArguments(unsafeGetterFor(field.getType()), 1, offset);
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+            this.unsafeGetter = getter;
+            this.offsetFailure = failure;
+        }
+
+        Object read(Object obj) throws InaccessibleFieldException {
+            if (FORCE_MODE) {
+                if (!accessible) {
+                    throw new InaccessibleFieldException(field, accessFailure);
+                }
+                try {
+                    return field.get(obj);
+                } catch (Exception e) {
+                    throw new InaccessibleFieldException(field, e);
+                }
+            }
+            if (accessible) {
+                try {
+                    return field.get(obj);
+                } catch (Exception e) {
+                    // Fall through to Unsafe
+                }
+            }
+            if (!FALLBACK_MODE && UNSAFE != null) {
+                return readViaUnsafe(obj);
+            }
+            throw new InaccessibleFieldException(field);
+        }
+
+        Object readViaUnsafe(Object obj) throws InaccessibleFieldException {
+            if (unsafeGetter == null) {
+                throw new InaccessibleFieldException(field, offsetFailure);
+            }
+            try {
+                return (Object) unsafeGetter.invokeExact(obj);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new InaccessibleFieldException(field, e);
+            }
+        }
+
+        private static MethodHandle unsafeGetterFor(Class<?> type) {
+            if (type == boolean.class) return GET_BOOLEAN;
+            if (type == byte.class) return GET_BYTE;
+            if (type == char.class) return GET_CHAR;
+            if (type == short.class) return GET_SHORT;
+            if (type == int.class) return GET_INT;
+            if (type == long.class) return GET_LONG;
+            if (type == float.class) return GET_FLOAT;
+            if (type == double.class) return GET_DOUBLE;
+            return GET_OBJECT;
         }
     }
 
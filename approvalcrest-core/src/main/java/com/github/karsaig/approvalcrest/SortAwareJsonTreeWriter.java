@@ -0,0 +1,412 @@
+package com.github.karsaig.approvalcrest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.MapMaker;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Builds a Json tree like {@link Gson#toJsonTree(Object)} does, and remembers the values of the fields declared as a
+ * set, a map or a collection of a type to sort, by identity, for {@link #isSortedByType(JsonElement)}. The adapters of
+ * the classes declaring those fields tell it which fields they are through {@link #sortFieldsByType(Set)}, so the field
+ * names are left as they are.
+ * <p>
+ * A {@link com.google.gson.JsonSerializer} hands the tree it returns to Gson, which copies it token by token into the
+ * writer and leaves the remembered values behind. The serialisers building trees of the values they write hand them
+ * over through {@link #handOver(JsonElement)} as well, and {@link #write(TypeAdapter, JsonWriter, Object)} writes the
+ * tree handed over instead of the copy.
+ */
+public final class SortAwareJsonTreeWriter extends JsonWriter implements SortAwareJsonWriter {
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    // Weak keys are compared by identity, equal values of different fields are told apart
+    private static final Set<JsonElement> SORTED_BY_TYPE = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+    // The tree the serialiser of the value being written by write(TypeAdapter, ...) handed over, if any
+    private static final ThreadLocal<JsonElement[]> HANDED_OVER = new ThreadLocal<>();
+
+    // The objects and arrays under construction, outermost to innermost
+    private final List<JsonElement> stack = new ArrayList<>();
+    // The names of the fields sorted by type of each object under construction, null for arrays and other objects
+    private final List<Set<String>> fieldsSortedByType = new ArrayList<>();
+    private Set<String> nextFieldsSortedByType;
+    private String pendingName;
+    private boolean pendingSortedByType;
+    private JsonElement product = JsonNull.INSTANCE;
+    // Set when the copy of a tree handed over may arrive, the depth of the copy being skipped once it did
+    private final JsonElement[] handedOver;
+    private int skippedDepth;
+
+    public SortAwareJsonTreeWriter() {
+        this(null);
+    }
+
+    private SortAwareJsonTreeWriter(JsonElement[] handedOver) {
+        super(UNWRITABLE_WRITER);
+        this.handedOver = handedOver;
+    }
+
+    /**
+     * Serialises the object to a tree, the same way {@link Gson#toJsonTree(Object)} does.
+     */
+    public static JsonElement toJsonTree(Gson gson, Object object) {
+        if (object == null) {
+            return JsonNull.INSTANCE;
+        }
+        return toJsonTree(gson, object, object.getClass());
+    }
+
+    /**
+     * Serialises the object to a tree, the same way {@link Gson#toJsonTree(Object, Type)} does.
+     */
+    public static JsonElement toJsonTree(Gson gson, Object object, Type type) {
+        if (object == null) {
+            return JsonNull.INSTANCE;
+        }
+        SortAwareJsonTreeWriter tree = new SortAwareJsonTreeWriter();
+        gson.toJson(object, type, tree);
+        return tree.get();
+    }
+
+    /**
+     * Writes the value with the adapter. When the adapter turns out to be a {@link com.google.gson.JsonSerializer} that
+     * handed its tree over, the tree itself is written rather than the copy Gson makes of it, so the values remembered
+     * in it are remembered in the output as well.
+     */
+    public static <T> void write(TypeAdapter<T> adapter, JsonWriter out, T value) throws IOException {
+        JsonElement[] enclosing = HANDED_OVER.get();
+        try {
+            if (!(out instanceof SortAwareJsonWriter)) {
+                // Whatever the value's serialiser hands over is of no use to this writer, nor to the enclosing one
+                HANDED_OVER.remove();
+                adapter.write(out, value);
+                return;
+            }
+            JsonElement[] handedOver = new JsonElement[1];
+            HANDED_OVER.set(handedOver);
+            SortAwareJsonTreeWriter tree = new SortAwareJsonTreeWriter(handedOver);
+            tree.setSerializeNulls(out.getSerializeNulls());
+            tree.setStrictness(out.getStrictness());
+            adapter.write(tree, value);
+            write(tree.get(), out);
+        } finally {
+            if (enclosing == null) {
+                HANDED_OVER.remove();
+            } else {
+                HANDED_OVER.set(enclosing);
+            }
+        }
+    }
+
+    /**
+     * Called by the serialisers building trees of the values they write, with the tree they return, see
+     * {@link #write(TypeAdapter, JsonWriter, Object)}.
+     *
+     * @return the tree
+     */
+    public static <E extends JsonElement> E handOver(E tree) {
+        JsonElement[] handedOver = HANDED_OVER.get();
+        if (handedOver != null) {
+            handedOver[0] = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Writes the tree to the writer the way {@link Streams#write(JsonElement, JsonWriter)} does, telling a
+     * {@link SortAwareJsonWriter} about the values remembered in it.
+     */
+    public static void write(JsonElement tree, JsonWriter out) throws IOException {
+        if (tree.isJsonArray()) {
+            out.beginArray();
+            for (JsonElement element : tree.getAsJsonArray()) {
+                write(element, out);
+            }
+            out.endArray();
+        } else if (tree.isJsonObject()) {
+            out.beginObject();
+            for (Map.Entry<String, JsonElement> member : tree.getAsJsonObject().entrySet()) {
+                out.name(member.getKey());
+                JsonElement value = member.getValue();
+                if (out instanceof SortAwareJsonWriter && isSortedByType(value)) {
+                    ((SortAwareJsonWriter) out).sortNextByType();
+                }
+                write(value, out);
+            }
+            out.endObject();
+        } else {
+            Streams.write(tree, out);
+        }
+    }
+
+    /**
+     * Tells whether the value is held by a field whose declared type makes it sorted: a set, a map or a collection of
+     * a type to sort.
+     */
+    public static boolean isSortedByType(JsonElement value) {
+        return SORTED_BY_TYPE.contains(value);
+    }
+
+    /**
+     * Returns the tree written.
+     */
+    public JsonElement get() {
+        if (!stack.isEmpty()) {
+            throw new IllegalStateException("Expected one JSON element but was " + stack);
+        }
+        return product;
+    }
+
+    @Override
+    public void sortNextByType() {
+        pendingSortedByType = pendingName != null;
+    }
+
+    @Override
+    public void sortFieldsByType(Set<String> names) {
+        nextFieldsSortedByType = names;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        nextFieldsSortedByType = null;
+        if (skip(1) || adopt(JsonArray.class)) {
+            return this;
+        }
+        JsonArray array = new JsonArray();
+        put(array);
+        push(array, null);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        if (skip(-1)) {
+            return this;
+        }
+        return end(JsonArray.class);
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        Set<String> names = nextFieldsSortedByType;
+        nextFieldsSortedByType = null;
+        if (skip(1) || adopt(JsonObject.class)) {
+            return this;
+        }
+        JsonObject object = new JsonObject();
+        put(object);
+        push(object, names);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (skip(-1)) {
+            return this;
+        }
+        return end(JsonObject.class);
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        Objects.requireNonNull(name, "name == null");
+        if (skip(0)) {
+            return this;
+        }
+        if (stack.isEmpty() || pendingName != null) {
+            throw new IllegalStateException("Did not expect a name");
+        }
+        if (!(peek() instanceof JsonObject)) {
+            throw new IllegalStateException("Please begin an object before writing a name.");
+        }
+        pendingName = name;
+        Set<String> names = fieldsSortedByType.get(fieldsSortedByType.size() - 1);
+        pendingSortedByType = names != null && names.contains(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        checkFinite(value);
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        checkFinite(value);
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        checkFinite(value.doubleValue());
+        put(new JsonPrimitive(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        put(JsonNull.INSTANCE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!stack.isEmpty()) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+    private void push(JsonElement container, Set<String> names) {
+        stack.add(container);
+        fieldsSortedByType.add(names);
+    }
+
+    private JsonElement peek() {
+        return stack.get(stack.size() - 1);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void put(JsonElement value) {
+        if (skip(0)) {
+            return;
+        }
+        if (pendingName != null) {
+            if (!value.isJsonNull() || getSerializeNulls()) {
+                JsonElement member = value;
+                if (pendingSortedByType) {
+                    // The shared null instance would be remembered for every null, a null of its own is not
+                    member = value.isJsonNull() ? new JsonNull() : value;
+                    SORTED_BY_TYPE.add(member);
+                }
+                ((JsonObject) peek()).add(pendingName, member);
+            }
+            pendingName = null;
+            pendingSortedByType = false;
+        } else if (stack.isEmpty()) {
+            product = value;
+            pendingSortedByType = false;
+        } else if (peek() instanceof JsonArray) {
+            ((JsonArray) peek()).add(value);
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Takes the tree handed over as the product, when the value about to be copied is its copy: the first one written,
+     * of the same kind, and written once the serialiser has handed its tree over.
+     */
+    private boolean adopt(Class<? extends JsonElement> type) {
+        if (handedOver == null || !stack.isEmpty() || !type.isInstance(handedOver[0])) {
+            return false;
+        }
+        product = handedOver[0];
+        skippedDepth = 1;
+        return true;
+    }
+
+    /**
+     * Skips a token of the copy being skipped, if any.
+     *
+     * @param depthChange how the token changes the depth, 1 when it opens an array or object, -1 when it closes one
+     */
+    private boolean skip(int depthChange) {
+        if (skippedDepth == 0) {
+            return false;
+        }
+        skippedDepth += depthChange;
+        return true;
+    }
+
+    private JsonWriter end(Class<? extends JsonElement> type) {
+        if (stack.isEmpty() || pendingName != null || !type.isInstance(peek())) {
+            throw new IllegalStateException();
+        }
+        stack.remove(stack.size() - 1);
+        fieldsSortedByType.remove(fieldsSortedByType.size() - 1);
+        return this;
+    }
+
+    private void checkFinite(double value) {
+        if (getStrictness() != Strictness.LENIENT && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("JSON forbids NaN and infinities: " + value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.karsaig.approvalcrest;
+
+import java.util.Set;
+
+/**
+ * A {@link com.google.gson.stream.JsonWriter} that keeps track of the values of the fields sorted because of their
+ * declared type: a set, a map or a collection of a type to sort. The adapters writing those fields tell it so, see
+ * {@link #sortFieldsByType(Set)} and {@link #sortNextByType()}.
+ */
+public interface SortAwareJsonWriter {
+
+    /**
+     * Tells that the value written next, when it is the value of the field whose name was just written, is sorted
+     * because of the field's type. Ignored for any other value.
+     */
+    void sortNextByType();
+
+    /**
+     * Tells that the fields of the object begun next are sorted because of their type when their name is one of the
+     * given ones, as if {@link #sortNextByType()} was called right after each of those names. Called by the adapter of
+     * the object's class right before it begins the object.
+     */
+    void sortFieldsByType(Set<String> names);
+}
@@ -0,0 +1,198 @@
+package com.github.karsaig.approvalcrest;
+
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.anyPathMatch;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.getPathsMap;
+import static com.github.karsaig.approvalcrest.FieldsIgnorer.isGraphAdapterKey;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Matcher;
+
+import com.github.karsaig.approvalcrest.FieldsIgnorer.PathLevel;
+import com.github.karsaig.approvalcrest.matcher.sorting.SortField;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes the keys the elements of a sorted array are ordered by: the Json of an element, without the fields ignored for
+ * sorting. The key is written straight from the element, instead of from a stripped copy of it, and the ignored fields
+ * of each level below the array are looked up once for the whole array.
+ * <p>
+ * The key of an element that is itself an array is made of the keys of its elements, which are sorted first with the
+ * same sort fields, so {@link #keyOfArray} reuses those keys instead of writing the elements again.
+ */
+final class SortKeyWriter {
+    private final FieldNamePatterns<SortField<Matcher<String>>> fieldMatchers;
+    private final FieldNamePatterns<Matcher<String>> innerIgnoredFieldMatchers;
+    private final List<SortField<String>> ignoredPathsOfFieldMatchers = new ArrayList<>();
+    private final Level root;
+
+    SortKeyWriter(List<SortField<String>> pathMatchers, FieldNamePatterns<SortField<Matcher<String>>> fieldMatchers,
+            FieldNamePatterns<Matcher<String>> innerIgnoredFieldMatchers) {
+        this.fieldMatchers = fieldMatchers;
+        this.innerIgnoredFieldMatchers = innerIgnoredFieldMatchers;
+        // SortField<Matcher<String>>.ignoring(...) applies to the fields at every level of the elements
+        for (SortField<Matcher<String>> fm : fieldMatchers.getPatterns()) {
+            for (String ignoredPath : fm.getIgnoredPathsForSorting()) {
+                ignoredPathsOfFieldMatchers.add(SortField.of(ignoredPath, Collections.singletonList(ignoredPath), Collections.emptyList()));
+            }
+        }
+        root = new Level(pathMatchers);
+    }
+
+    /**
+     * Returns the key of an element of the array.
+     */
+    String keyOf(JsonElement element) {
+        StringWriter key = new StringWriter();
+        JsonWriter out = new JsonWriter(key);
+        // Same as JsonElement.toString(), which must not fail, even for NaN
+        out.setStrictness(Strictness.LENIENT);
+        try {
+            write(out, element, root);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the key of an element that is an array, from the keys of its elements, in their order.
+     */
+    static String keyOfArray(List<String> elementKeys) {
+        StringBuilder key = new StringBuilder(2 + elementKeys.size() * 16);
+        key.append('[');
+        for (int i = 0; i < elementKeys.size(); i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(elementKeys.get(i));
+        }
+        return key.append(']').toString();
+    }
+
+    private void write(JsonWriter out, JsonElement element, Level level) throws IOException {
+        if (level.unfiltered) {
+            writeUnfiltered(out, element);
+        } else if (element.isJsonObject()) {
+            out.beginObject();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                String key = entry.getKey();
+                JsonElement value = entry.getValue();
+                if (isGraphAdapterKey(key)) {
+                    // Transparent: the object under the reference id is on the same level
+                    out.name(key);
+                    write(out, value, level);
+                } else if (level.isIgnored(key)) {
+                    // Stripped from the key entirely, primitive or complex
+                } else if (value.isJsonNull() || value.isJsonPrimitive()) {
+                    out.name(key);
+                    writeUnfiltered(out, value);
+                } else {
+                    out.name(key);
+                    write(out, value, level.next(key));
+                }
+            }
+            out.endObject();
+        } else if (element.isJsonArray()) {
+            out.beginArray();
+            for (JsonElement current : element.getAsJsonArray()) {
+                write(out, current, level);
+            }
+            out.endArray();
+        } else {
+            writeUnfiltered(out, element);
+        }
+    }
+
+    private static void writeUnfiltered(JsonWriter out, JsonElement element) throws IOException {
+        if (element.isJsonNull()) {
+            out.nullValue();
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                out.value(primitive.getAsNumber());
+            } else if (primitive.isBoolean()) {
+                out.value(primitive.getAsBoolean());
+            } else {
+                out.value(primitive.getAsString());
+            }
+        } else if (element.isJsonArray()) {
+            out.beginArray();
+            for (JsonElement current : element.getAsJsonArray()) {
+                writeUnfiltered(out, current);
+            }
+            out.endArray();
+        } else {
+            JsonObject jsonObject = element.getAsJsonObject();
+            out.beginObject();
+            for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+                out.name(entry.getKey());
+                writeUnfiltered(out, entry.getValue());
+            }
+            out.endObject();
+        }
+    }
+
+    private static boolean areAllMatchersEmpty(List<SortField<String>> matchingPathMatchers, List<SortField<Matcher<String>>> matchingFieldMatchers) {
+        if (matchingPathMatchers.isEmpty() && matchingFieldMatchers.isEmpty()) {
+            return true;
+        }
+        for (SortField<String> matchingPathMatcher : matchingPathMatchers) {
+            if (!matchingPathMatcher.isEmpty()) {
+                return false;
+            }
+        }
+        for (SortField<Matcher<String>> matchingFieldMatcher : matchingFieldMatchers) {
+            if (!matchingFieldMatcher.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The path sort fields ignoring fields on one level of the elements, with the levels below it by field name.
+     */
+    private final class Level {
+        private final boolean unfiltered;
+        private final Map<String, PathLevel> pathMap;
+        private final Map<String, Level> next = new HashMap<>();
+
+        private Level(List<SortField<String>> pathMatchers) {
+            unfiltered = areAllMatchersEmpty(pathMatchers, fieldMatchers.getPatterns());
+            if (unfiltered) {
+                pathMap = Collections.emptyMap();
+            } else {
+                List<SortField<String>> combinedPaths = new ArrayList<>(pathMatchers);
+                combinedPaths.addAll(ignoredPathsOfFieldMatchers);
+                pathMap = getPathsMap(combinedPaths);
+            }
+        }
+
+        private boolean isIgnored(String fieldName) {
+            return !anyPathMatch(fieldName, pathMap, true).isEmpty()
+                    || fieldMatchers.anyMatches(fieldName)
+                    || innerIgnoredFieldMatchers.anyMatches(fieldName);
+        }
+
+        private Level next(String fieldName) {
+            return next.computeIfAbsent(fieldName, key -> {
+                List<SortField<String>> nextLevelSortFields = new ArrayList<>();
+                for (List<SortField<String>> sortFields : pathMap.getOrDefault(key, PathLevel.EMPTY).getNextLevel().values()) {
+                    nextLevelSortFields.addAll(sortFields);
+                }
+                return new Level(nextLevelSortFields);
+            });
+        }
+    }
+}
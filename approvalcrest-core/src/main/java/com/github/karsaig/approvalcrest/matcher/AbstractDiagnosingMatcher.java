@@ -3,6 +3,7 @@ package com.github.karsaig.approvalcrest.matcher;
 import com.github.karsaig.approvalcrest.BeanFinder;
 import com.github.karsaig.approvalcrest.ComparisonDescription;
 import com.github.karsaig.approvalcrest.Either;
+import com.github.karsaig.approvalcrest.JsonTreeComparator;
 import com.github.karsaig.approvalcrest.MatcherConfiguration;
 import com.github.karsaig.approvalcrest.PathNullPointerException;
 import com.github.karsaig.approvalcrest.matcher.machinereadable.AliasTracker;
@@ -40,9 +41,16 @@ public abstract class AbstractDiagnosingMatcher<T> extends DiagnosingMatcher<T>
 
     private static final String MACHINE_READABLE_ALIAS = "fMMReadable";
     private static final String MACHINE_READABLE_AI_ALIAS = "fmAI";
+    private static final String ARRAY_DIFF_PROPERTY = "approvalcrestArrayDiff";
+    private static final String ARRAY_DIFF_ALIAS = "aADiff";
 
     private boolean comparisonDescriptionNeeded = false;
+    // The actual object being matched, and the mismatch of the trees the last match found
+    private Object matchedActual;
+    private TreeMismatch lastMismatch;
     protected boolean machineReadableOutput = getBooleanProperties(null, "fileMatcherMachineReadable", MACHINE_READABLE_ALIAS, MACHINE_READABLE_AI_ALIAS);
+    // Whether the arrays that differ are diffed instead of compared index by index, see JsonTreeComparator
+    private final boolean arrayDiff = getBooleanProperties("false", ARRAY_DIFF_PROPERTY, ARRAY_DIFF_ALIAS);
 
     /**
      * Template-method entry point. Subclasses implement their matching logic here.
@@ -59,14 +67,27 @@ public abstract class AbstractDiagnosingMatcher<T> extends DiagnosingMatcher<T>
      */
     @Override
     protected final boolean matches(Object actual, Description mismatchDescription) {
+        TreeMismatch mismatch = lastMismatch;
+        lastMismatch = null;
+        if (mismatch != null && mismatch.actual == actual && !(mismatchDescription instanceof Description.NullDescription)) {
+            // Hamcrest matches the actual object again to describe the mismatch, which was found already
+            return mismatch.describeTo(mismatchDescription);
+        }
+        matchedActual = actual;
         try {
-            return doMatches(actual, mismatchDescription);
+            boolean matches = doMatches(actual, mismatchDescription);
+            if (matches) {
+                lastMismatch = null;
+            }
+            return matches;
         } catch (RuntimeException e) {
             Throwable inaccessible = findCause(e, INACCESSIBLE_OBJECT_EXCEPTION);
             if (inaccessible != null) {
                 throw new IllegalStateException(buildAddOpensMessage(inaccessible), e);
             }
             throw e;
+        } finally {
+            matchedActual = null;
         }
     }
 
@@ -126,6 +147,42 @@ public abstract class AbstractDiagnosingMatcher<T> extends DiagnosingMatcher<T>
         return true;
     }
 
+    /**
+     * Compares the trees like {@link #assertJsonEquals(String, String, Description, Function, IgnoredFieldsTracker,
+     * AliasTracker, SortedFieldsTracker, String)} compares the Json written from them, writing them only to describe
+     * the mismatch.
+     */
+    protected boolean assertJsonEquals(Gson gson, JsonElement expected, JsonElement actual, Description mismatchDescription,
+                                       Function<String, String> messageExtractor,
+                                       IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker,
+                                       SortedFieldsTracker sortedTracker, String note) {
+        if (!JsonTreeComparator.canCompare(expected, actual)) {
+            return assertJsonEquals(gson.toJson(expected), gson.toJson(actual), mismatchDescription, e -> messageExtractor.apply(e.getMessage()),
+                    ignoredTracker, aliasTracker, sortedTracker, note);
+        }
+        String differences = JsonTreeComparator.compare(expected, actual, gson.serializeNulls(), arrayDiff);
+        if (differences == null) {
+            return true;
+        }
+        lastMismatch = new TreeMismatch(matchedActual, gson, expected, actual, messageExtractor.apply(differences),
+                ignoredTracker, aliasTracker, sortedTracker, note);
+        if (mismatchDescription instanceof Description.NullDescription) {
+            // Nothing to describe it to, the trees are rendered when Hamcrest asks for the description
+            return false;
+        }
+        return lastMismatch.describeTo(mismatchDescription);
+    }
+
+    /**
+     * Returns the expected Json of the mismatch of the trees the last match found, so the description of the matcher
+     * does not serialise and filter the expected again.
+     *
+     * @return {@code null} when the last match found no mismatch of the trees
+     */
+    protected String getExpectedJsonOfLastMismatch() {
+        return lastMismatch == null ? null : lastMismatch.getExpectedJson();
+    }
+
     protected boolean appendMismatchDescription(Description mismatchDescription, String expected, String actual, String message) {
         return appendMismatchDescription(mismatchDescription, expected, actual, message, null, null, false);
     }
@@ -378,4 +435,54 @@ public abstract class AbstractDiagnosingMatcher<T> extends DiagnosingMatcher<T>
             this.exception = exception;
         }
     }
+
+    /**
+     * A mismatch of the filtered trees, with the Json of the trees rendered once, when first described.
+     */
+    private final class TreeMismatch {
+        private final Object actual;
+        private final Gson gson;
+        private final JsonElement expectedTree;
+        private final JsonElement actualTree;
+        private final String message;
+        private final IgnoredFieldsTracker ignoredTracker;
+        private final AliasTracker aliasTracker;
+        private final SortedFieldsTracker sortedTracker;
+        private final String note;
+        private String expectedJson;
+        private String actualJson;
+
+        private TreeMismatch(Object actual, Gson gson, JsonElement expectedTree, JsonElement actualTree, String message,
+                             IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker,
+                             String note) {
+            this.actual = actual;
+            this.gson = gson;
+            this.expectedTree = expectedTree;
+            this.actualTree = actualTree;
+            this.message = message;
+            this.ignoredTracker = ignoredTracker;
+            this.aliasTracker = aliasTracker;
+            this.sortedTracker = sortedTracker;
+            this.note = note;
+        }
+
+        private String getExpectedJson() {
+            if (expectedJson == null) {
+                expectedJson = gson.toJson(expectedTree);
+            }
+            return expectedJson;
+        }
+
+        private String getActualJson() {
+            if (actualJson == null) {
+                actualJson = gson.toJson(actualTree);
+            }
+            return actualJson;
+        }
+
+        private boolean describeTo(Description mismatchDescription) {
+            return appendMismatchDescriptionWithNote(mismatchDescription, getExpectedJson(), getActualJson(), message,
+                    ignoredTracker, aliasTracker, sortedTracker, note);
+        }
+    }
 }
@@ -10,8 +10,10 @@
 package com.github.karsaig.approvalcrest.matcher;
 
 import com.github.karsaig.approvalcrest.ComparisonDescription;
-import com.github.karsaig.approvalcrest.JsonElementUtil;
+import com.github.karsaig.approvalcrest.JsonTreeFilter;
 import com.github.karsaig.approvalcrest.MatcherConfiguration;
+import com.github.karsaig.approvalcrest.PathTrie;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
 import com.github.karsaig.approvalcrest.matcher.alias.AliasMap;
 import com.github.karsaig.approvalcrest.matcher.machinereadable.AliasTracker;
 import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
@@ -33,11 +35,8 @@ import java.util.function.Function;
 
 import static com.github.karsaig.approvalcrest.CyclicReferenceDetector.getClassesWithCircularReferences;
 import static com.github.karsaig.approvalcrest.EnvVarReader.getBooleanProperties;
-import static com.github.karsaig.approvalcrest.FieldsIgnorer.applySorting;
 import static com.github.karsaig.approvalcrest.FieldsIgnorer.applyRootCollectionSorting;
 import static com.github.karsaig.approvalcrest.FieldsIgnorer.findPaths;
-import static com.github.karsaig.approvalcrest.FieldsIgnorer.removeMatchingElements;
-import static com.github.karsaig.approvalcrest.FieldsIgnorer.removeSetMarker;
 import static com.github.karsaig.approvalcrest.matcher.GsonProvider.gson;
 
 /**
@@ -54,6 +53,7 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
     private static final String SKIP_CLASS_COMPARISON_ALIAS = "bMSCComparison";
     private boolean skipClassComparison = getBooleanProperties("false", "beanMatcherSkipClassComparison", SKIP_CLASS_COMPARISON_ALIAS);
     private boolean jsonDescription = true;
+    private PathTrie pathsToIgnore;
 
     public DiagnosingCustomisableMatcher(T expected) {
         this.expected = expected;
@@ -62,8 +62,12 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
     @Override
     public void describeTo(Description description) {
         if(jsonDescription){
-        Gson gson = gson(matcherConfiguration, circularReferenceTypes, configuration);
-        description.appendText(filterJson(gson, expected, null, null, null));
+        String expectedJson = getExpectedJsonOfLastMismatch();
+        if (expectedJson == null) {
+            Gson gson = gson(matcherConfiguration, circularReferenceTypes, configuration);
+            expectedJson = gson.toJson(filterJson(gson, expected, null, null, null));
+        }
+        description.appendText(expectedJson);
         for (String fieldPath : matcherConfiguration.getCustomMatchers().keySet()) {
             description.appendText("\nand ")
                     .appendText(fieldPath).appendText(" ")
@@ -91,11 +95,24 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
                 return false;
             }
         }
-        circularReferenceTypes.addAll(getClassesWithCircularReferences(actual, matcherConfiguration));
-        circularReferenceTypes.addAll(getClassesWithCircularReferences(expected, matcherConfiguration));
+        JsonElement actualAsJsonElement = null;
+        JsonElement expectedAsJsonElement = null;
+        if (OptimisticCycleDetection.isEnabled()) {
+            Gson optimisticGson = GsonProvider.pathTrackingGson(matcherConfiguration, circularReferenceTypes, configuration);
+            actualAsJsonElement = actual != null ? OptimisticCycleDetection.toJsonTreeIfAcyclic(optimisticGson, actual) : null;
+            if (actualAsJsonElement != null || actual == null) {
+                expectedAsJsonElement = OptimisticCycleDetection.toJsonTreeIfAcyclic(optimisticGson, expected);
+            }
+        }
+        if (expectedAsJsonElement == null) {
+            circularReferenceTypes.addAll(getClassesWithCircularReferences(actual, matcherConfiguration));
+            circularReferenceTypes.addAll(getClassesWithCircularReferences(expected, matcherConfiguration));
+        }
         Gson gson = gson(matcherConfiguration, circularReferenceTypes, configuration);
 
-        JsonElement actualAsJsonElement = actual != null ? gson.toJsonTree(actual) : null;
+        if (expectedAsJsonElement == null) {
+            actualAsJsonElement = actual != null ? SortAwareJsonTreeWriter.toJsonTree(gson, actual) : null;
+        }
 
         if (!areCustomMatchersMatchingBeanOrJson(actual, actualAsJsonElement, mismatchDescription, gson, matcherConfiguration)) {
             return false;
@@ -106,16 +123,19 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
         SortedFieldsTracker sortedTracker = machineReadableOutput ? new SortedFieldsTracker() : null;
         String untrackedNote = buildUntrackedNote();
 
-        String expectedJson = filterJson(gson, expected, ignoredTracker, aliasTracker, sortedTracker);
+        JsonElement filteredExpected = expectedAsJsonElement != null
+                ? filterJson(gson, expectedAsJsonElement, expected, ignoredTracker, aliasTracker, sortedTracker)
+                : filterJson(gson, expected, ignoredTracker, aliasTracker, sortedTracker);
 
         if (actual == null) {
-            return appendMismatchDescriptionWithNote(mismatchDescription, expectedJson, "null", "actual was null",
+            return appendMismatchDescriptionWithNote(mismatchDescription, gson.toJson(filteredExpected), "null", "actual was null",
                     ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
         }
 
-        String actualJson = filterJson(gson, actualAsJsonElement, actual, ignoredTracker, aliasTracker, sortedTracker);
+        JsonElement filteredActual = filterJson(gson, actualAsJsonElement, actual, ignoredTracker, aliasTracker, sortedTracker);
 
-        return assertJsonEquals(expectedJson, actualJson, mismatchDescription, ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
+        return assertJsonEquals(gson, filteredExpected, filteredActual, mismatchDescription, Function.identity(),
+                ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
     }
 
 
@@ -176,23 +196,11 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
     }
 
 
-    private boolean assertJsonEquals(String expectedJson, String actualJson, Description mismatchDescription,
-                                      IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker,
-                                      SortedFieldsTracker sortedTracker, String note) {
-        try {
-            org.skyscreamer.jsonassert.JSONAssert.assertEquals(expectedJson, actualJson, true);
-        } catch (AssertionError | org.json.JSONException e) {
-            return appendMismatchDescriptionWithNote(mismatchDescription, expectedJson, actualJson, e.getMessage(),
-                    ignoredTracker, aliasTracker, sortedTracker, note);
-        }
-        return true;
+    private JsonElement filterJson(Gson gson, Object object, IgnoredFieldsTracker tracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
+        return filterJson(gson, SortAwareJsonTreeWriter.toJsonTree(gson, object), object, tracker, aliasTracker, sortedTracker);
     }
 
-    private String filterJson(Gson gson, Object object, IgnoredFieldsTracker tracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
-        return filterJson(gson, gson.toJsonTree(object), object, tracker, aliasTracker, sortedTracker);
-    }
-
-    private String filterJson(Gson gson, JsonElement preComputedJson, Object objectForTypeCheck,
+    private JsonElement filterJson(Gson gson, JsonElement preComputedJson, Object objectForTypeCheck,
                                IgnoredFieldsTracker tracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
         Set<String> set = new HashSet<>();
         set.addAll(matcherConfiguration.getPathsToIgnore());
@@ -209,16 +217,16 @@ public class DiagnosingCustomisableMatcher<T> extends AbstractDiagnosingMatcher<
             }
         }
 
-        JsonElement filteredJson = findPaths(preComputedJson, set, tracker, reasonMap);
-        removeMatchingElements(filteredJson, matcherConfiguration.getElementIgnoreRules(), tracker);
-        JsonElementUtil.filterByCustomMatcherPatterns(filteredJson, matcherConfiguration, tracker);
-        AliasMap aliasMap = matcherConfiguration.getAliasMap();
-        if (!aliasMap.isEmpty()) {
-            JsonElementUtil.applyAliases(filteredJson, aliasMap, aliasTracker);
-        }
-        applySorting(filteredJson, matcherConfiguration.getPathsToSort(), matcherConfiguration.getPatternsToSort(), true, sortedTracker);
+        pathsToIgnore = PathTrie.compileIfChanged(pathsToIgnore, set);
+        JsonElement filteredJson = findPaths(preComputedJson, pathsToIgnore, tracker, reasonMap);
+        new JsonTreeFilter(tracker, aliasTracker, sortedTracker)
+                .ignoringElements(matcherConfiguration.getCompiledElementIgnoreRules())
+                .ignoringCustomMatcherFieldNames(matcherConfiguration.getCustomMatcherFieldNamePatterns())
+                .aliasing(matcherConfiguration.getAliasMap())
+                .sorting(matcherConfiguration.getPathsToSort(), matcherConfiguration.getFieldNamePatternsToSort(), true)
+                .filter(filteredJson);
         applyRootCollectionSorting(filteredJson, objectForTypeCheck, matcherConfiguration.getPatternsToSort(), matcherConfiguration.getPathsToSort(), matcherConfiguration.getTypesToSort(), sortedTracker);
-        return removeSetMarker(gson.toJson(filteredJson));
+        return filteredJson;
     }
 
     private String buildUntrackedNote() {
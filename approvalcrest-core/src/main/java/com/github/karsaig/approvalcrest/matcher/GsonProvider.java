@@ -9,28 +9,35 @@
  */
 package com.github.karsaig.approvalcrest.matcher;
 
-import static com.github.karsaig.approvalcrest.FieldsIgnorer.MARKER;
-import static com.github.karsaig.approvalcrest.JsonElementUtil.anyMatchesFieldName;
-import static com.google.common.collect.Sets.newTreeSet;
+import static com.github.karsaig.approvalcrest.EnvVarReader.getBooleanProperties;
 import static org.apache.commons.lang3.ClassUtils.isPrimitiveOrWrapper;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
 
+import com.github.karsaig.approvalcrest.FieldNamePatterns;
 import com.github.karsaig.approvalcrest.MatcherConfiguration;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
+import com.github.karsaig.approvalcrest.SortAwareJsonWriter;
 import com.github.karsaig.approvalcrest.matcher.typeadapters.ClassAdapter;
 import com.github.karsaig.approvalcrest.matcher.typeadapters.DateAdapter;
 import com.github.karsaig.approvalcrest.matcher.typeadapters.GetterBasedTypeAdapterFactory;
@@ -46,9 +53,10 @@ import com.github.karsaig.approvalcrest.matcher.typeadapters.UnsafeFieldTypeAdap
 import com.github.karsaig.approvalcrest.matcher.typeadapters.ZonedDateTimeAdapter;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Ordering;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
@@ -56,19 +64,67 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
 import com.google.gson.graph.GraphAdapterBuilder;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.internal.bind.SerializationDelegatingTypeAdapter;
+import com.google.gson.internal.bind.TypeAdapters;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Provides an instance of {@link Gson}. If any class type has been ignored on the matcher, the {@link Gson} provided
  * will include an {@link ExclusionStrategy} which will skip the serialisation of fields for that type.
+ * <p>
+ * Built instances are cached by a fingerprint of everything that shapes them (see {@link GsonKey}), so matchers with
+ * identical configuration share one instance and its already warmed adapter cache. The cache can be switched off with
+ * the {@code approvalcrestGsonCache} system property (alias {@code aGCache}).
  */
 @SuppressWarnings("rawtypes")
 class GsonProvider {
+    private static final String GSON_CACHE_PROPERTY = "approvalcrestGsonCache";
+    private static final String GSON_CACHE_ALIAS = "aGCache";
+    private static final int GSON_CACHE_MAX_SIZE = 128;
+
+    private static final Cache<GsonKey, Gson> GSON_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(GSON_CACHE_MAX_SIZE)
+            .build();
+
+    /**
+     * The Hamcrest matchers whose description tells everything they match by. Matchers wrapping other matchers,
+     * {@code not(...)} or {@code anyOf(...)}, can wrap user matchers, and the ones matching a regular expression do not
+     * describe its flags, so they are left out.
+     */
+    private static final Set<String> VALUE_BASED_MATCHERS = ImmutableSet.of(
+            "org.hamcrest.core.IsAnything",
+            "org.hamcrest.core.IsEqual",
+            "org.hamcrest.core.IsInstanceOf",
+            "org.hamcrest.core.IsNull",
+            "org.hamcrest.core.StringContains",
+            "org.hamcrest.core.StringEndsWith",
+            "org.hamcrest.core.StringStartsWith",
+            "org.hamcrest.text.IsBlankString",
+            "org.hamcrest.text.IsEmptyString",
+            "org.hamcrest.text.IsEqualCompressingWhiteSpace",
+            "org.hamcrest.text.IsEqualIgnoringCase",
+            "org.hamcrest.text.StringContainsInOrder");
+
+    private static final Map<Class<?>, TypeAdapter<?>> BUILT_IN_KEY_ADAPTERS = ImmutableMap.<Class<?>, TypeAdapter<?>>builder()
+            .put(String.class, TypeAdapters.STRING)
+            .put(Character.class, TypeAdapters.CHARACTER)
+            .put(Boolean.class, TypeAdapters.BOOLEAN)
+            .put(Byte.class, TypeAdapters.BYTE)
+            .put(Short.class, TypeAdapters.SHORT)
+            .put(Integer.class, TypeAdapters.INTEGER)
+            .put(Long.class, TypeAdapters.LONG)
+            .build();
+
     /**
      * Returns a {@link Gson} instance containing {@link ExclusionStrategy} based on the object types to ignore during
      * serialisation.
@@ -91,18 +147,53 @@ class GsonProvider {
      * @return an instance of {@link Gson}
      */
     public static Gson gson(MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, GsonConfiguration additionalConfig) {
+        return gson(matcherConfiguration, circularReferenceTypes, additionalConfig, false);
+    }
+
+    /**
+     * Returns the {@link Gson} instance {@link #gson(MatcherConfiguration, Set, GsonConfiguration)} returns, with the
+     * reflective adapters keeping the path of {@link OptimisticCycleDetection#toJsonTreeIfAcyclic(Gson, Object)}.
+     */
+    static Gson pathTrackingGson(MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, GsonConfiguration additionalConfig) {
+        return gson(matcherConfiguration, circularReferenceTypes, additionalConfig, true);
+    }
+
+    private static Gson gson(MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, GsonConfiguration additionalConfig, boolean pathTracking) {
+        if (!isGsonCacheEnabled()) {
+            return createGson(matcherConfiguration, circularReferenceTypes, additionalConfig, pathTracking);
+        }
+        GsonKey key = new GsonKey(matcherConfiguration, circularReferenceTypes, additionalConfig, pathTracking);
+        return GSON_CACHE.asMap().computeIfAbsent(key, k -> createGson(matcherConfiguration, circularReferenceTypes, additionalConfig, pathTracking));
+    }
+
+    static boolean isGsonCacheEnabled() {
+        return getBooleanProperties("true", GSON_CACHE_PROPERTY, GSON_CACHE_ALIAS);
+    }
+
+    private static Gson createGson(MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, GsonConfiguration additionalConfig, boolean pathTracking) {
         GsonBuilder gsonBuilder = initGson();
+        EnclosingGson enclosingGson = new EnclosingGson();
 
-        Set<Class<?>> skipTypes = additionalConfig != null ? additionalConfig.getTypesToSkipInFallbackFactories() : java.util.Collections.emptySet();
-        defaultGsonConfiguration(gsonBuilder, matcherConfiguration, circularReferenceTypes, skipTypes);
+        Set<Class<?>> skipTypes = additionalConfig != null ? new HashSet<>(additionalConfig.getTypesToSkipInFallbackFactories()) : java.util.Collections.emptySet();
+        // Registered first so it comes last, right before the reflective adapters it wraps, behind the graph adapter
+        // of circular reference types and the factories users register
+        markSortedFields(gsonBuilder, matcherConfiguration.getTypesToSort());
+        if (pathTracking) {
+            gsonBuilder.registerTypeAdapterFactory(OptimisticCycleDetection.pathTrackingFactory(matcherConfiguration.getFieldNamePatternsToIgnore()));
+        }
+        defaultGsonConfiguration(gsonBuilder, enclosingGson, matcherConfiguration, circularReferenceTypes, skipTypes);
         if (additionalConfig != null) {
             additionalConfiguration(additionalConfig, gsonBuilder);
         }
+        // Registered last so it comes first, wrapping the adapters users register for sets and maps as well
+        gsonBuilder.registerTypeAdapterFactory(new HandedOverTreeTypeAdapterFactory());
 
-        return gsonBuilder.create();
+        Gson gson = gsonBuilder.create();
+        enclosingGson.gson = gson;
+        return gson;
     }
 
-    private static void defaultGsonConfiguration(GsonBuilder gsonBuilder, MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, Set<Class<?>> additionalSkipTypes) {
+    private static void defaultGsonConfiguration(GsonBuilder gsonBuilder, EnclosingGson enclosingGson, MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, Set<Class<?>> additionalSkipTypes) {
 
         if (matcherConfiguration.isSerializeNulls()) {
             gsonBuilder.serializeNulls();
@@ -119,8 +210,9 @@ class GsonProvider {
         gsonBuilder.registerTypeAdapterFactory(new GetterBasedTypeAdapterFactory(additionalSkipTypes));
 
         gsonBuilder.registerTypeAdapterFactory(new ThrowableTypeAdapterFactory());
-        gsonBuilder.registerTypeAdapter(Optional.class, new OptionalSerializer());
-        gsonBuilder.registerTypeHierarchyAdapter(java.util.Optional.class, new JavaOptionalSerializer<>());
+        gsonBuilder.registerTypeAdapterFactory(ThrowableTypeAdapterFactory.STACK_TRACE_FACTORY);
+        gsonBuilder.registerTypeAdapter(Optional.class, new OptionalSerializer<>(enclosingGson));
+        gsonBuilder.registerTypeHierarchyAdapter(java.util.Optional.class, new JavaOptionalSerializer<>(enclosingGson));
         gsonBuilder.registerTypeHierarchyAdapter(java.util.OptionalInt.class, new JavaOptionalIntSerializer());
         gsonBuilder.registerTypeHierarchyAdapter(java.util.OptionalLong.class, new JavaOptionalLongSerializer());
         gsonBuilder.registerTypeHierarchyAdapter(java.util.OptionalDouble.class, new JavaOptionalDoubleSerializer());
@@ -136,11 +228,9 @@ class GsonProvider {
 
         gsonBuilder.registerTypeAdapterFactory(PathTypeAdapter.FACTORY);
 
-        registerSetSerialisation(gsonBuilder, matcherConfiguration);
+        registerSetSerialisation(gsonBuilder, enclosingGson, matcherConfiguration);
 
-        registerMapSerialisation(gsonBuilder);
-
-        markSortedFields(gsonBuilder, matcherConfiguration.getTypesToSort());
+        registerMapSerialisation(gsonBuilder, enclosingGson);
 
         registerExclusionStrategies(gsonBuilder, matcherConfiguration);
     }
@@ -174,59 +264,48 @@ class GsonProvider {
             return;
         }
 
+        // Snapshot the configuration: a cached instance may outlive the matcher that built it.
+        FieldNamePatterns<Matcher<String>> patternsToIgnore = matcherConfiguration.getFieldNamePatternsToIgnore();
+        Set<Class<?>> typesToIgnore = new HashSet<>(matcherConfiguration.getTypesToIgnore());
         gsonBuilder.setExclusionStrategies(new ExclusionStrategy() {
             @Override
             public boolean shouldSkipField(FieldAttributes f) {
-                return anyMatchesFieldName(f.getName(), matcherConfiguration.getPatternsToIgnore());
+                return patternsToIgnore.anyMatches(f.getName());
             }
 
             @Override
             public boolean shouldSkipClass(Class<?> clazz) {
-                return (matcherConfiguration.getTypesToIgnore().contains(clazz));
+                return typesToIgnore.contains(clazz);
             }
         });
     }
 
-    private static void markSortedFields(GsonBuilder gsonBuilder, List<Class<?>> typesToSort) {
-        gsonBuilder.setFieldNamingStrategy(f -> {
-            if (Set.class.isAssignableFrom(f.getType()) || Map.class.isAssignableFrom(f.getType())) {
-                return MARKER + f.getName();
-            }
-            if (!typesToSort.isEmpty()) {
-                if (Collection.class.isAssignableFrom(f.getType())) {
-                    java.lang.reflect.Type generic = f.getGenericType();
-                    if (generic instanceof ParameterizedType) {
-                        java.lang.reflect.Type arg = ((ParameterizedType) generic).getActualTypeArguments()[0];
-                        if (typesToSort.contains(arg)) {
-                            return MARKER + f.getName();
-                        }
-                    }
-                } else if (f.getType().isArray()) {
-                    if (typesToSort.contains(f.getType().getComponentType())) {
-                        return MARKER + f.getName();
-                    }
-                }
-            }
-            return f.getName();
-        });
+    private static void markSortedFields(GsonBuilder gsonBuilder, List<Class<?>> configuredTypesToSort) {
+        gsonBuilder.registerTypeAdapterFactory(new SortedFieldsTypeAdapterFactory(new ArrayList<>(configuredTypesToSort)));
     }
 
-    private static void registerMapSerialisation(GsonBuilder gsonBuilder) {
+    /**
+     * Maps and Sets are ordered through the {@link Gson} that is being built rather than through a fresh one created
+     * from the builder for every instance; a graph holding many small collections previously built one per collection.
+     * <p>
+     * They stay {@link JsonSerializer}s because only those are kept among the type hierarchy adapters; anything else
+     * would move ahead of the graph adapter of circular reference types and of type hierarchy adapters that users
+     * register for a Map or Set subtype.
+     */
+    private static void registerMapSerialisation(GsonBuilder gsonBuilder, EnclosingGson enclosingGson) {
         gsonBuilder.registerTypeHierarchyAdapter(Map.class, (JsonSerializer<Map>) (map, type, context) -> {
-            Gson gson = gsonBuilder.create();
+            Gson gson = enclosingGson.get();
 
-            ArrayListMultimap<String, Object> objects = mapObjectsByTheirJsonRepresentation(map, gson);
-            return arrayOfObjectsOrderedByTheirJsonRepresentation(gson, objects, map);
+            return SortAwareJsonTreeWriter.handOver(orderMapByEntriesJsonRepresentation(map, gson));
         });
     }
 
-    private static void registerSetSerialisation(GsonBuilder gsonBuilder, MatcherConfiguration matcherConfiguration) {
+    private static void registerSetSerialisation(GsonBuilder gsonBuilder, EnclosingGson enclosingGson, MatcherConfiguration matcherConfiguration) {
         boolean legacySetCollapse = matcherConfiguration.isLegacySetCollapse();
         gsonBuilder.registerTypeHierarchyAdapter(Set.class, (JsonSerializer<Set>) (set, type, context) -> {
-            Gson gson = gsonBuilder.create();
+            Gson gson = enclosingGson.get();
 
-            List<Object> orderedSet = orderSetByElementsJsonRepresentation(set, gson, legacySetCollapse);
-            return arrayOfObjectsOrderedByTheirJsonRepresentation(gson, orderedSet);
+            return SortAwareJsonTreeWriter.handOver(orderSetByElementsJsonRepresentation(set, gson, legacySetCollapse));
         });
     }
 
@@ -247,90 +326,235 @@ class GsonProvider {
      * to serialise identically - two instances of a class with no {@code equals()} override and
      * the same field values, for example - were silently dropped. A set that lost or gained such
      * an element then serialised identically either way, so the difference could not fail a test.
+     * With {@code legacySetCollapse} those elements are still collapsed into the first one.
      *
-     * <p>Each element is serialised once up front rather than inside the comparator, which also
-     * avoids re-serialising on every comparison.
+     * <p>Each element is serialised to a tree exactly once; the trees are compared by
+     * {@link PrettyPrintedJsonOrdering}, which sorts them as their pretty printed form would sort,
+     * and are then used as the output elements themselves.
      */
     @SuppressWarnings("unchecked")
-    private static List<Object> orderSetByElementsJsonRepresentation(Set set, Gson gson, boolean legacySetCollapse) {
-        if (legacySetCollapse) {
-            Set<Object> collapsed = newTreeSet(Comparator.comparing(gson::toJson));
-            collapsed.addAll(set);
-            return new ArrayList<>(collapsed);
-        }
-        List<Map.Entry<String, Object>> decorated = new ArrayList<>(set.size());
+    private static JsonArray orderSetByElementsJsonRepresentation(Set set, Gson gson, boolean legacySetCollapse) {
+        List<JsonElement> elements = new ArrayList<>(set.size());
         for (Object element : (Set<Object>) set) {
-            decorated.add(new AbstractMap.SimpleEntry<>(gson.toJson(element), element));
+            elements.add(SortAwareJsonTreeWriter.toJsonTree(gson, element));
         }
-        decorated.sort(Map.Entry.comparingByKey());
-        List<Object> objects = new ArrayList<>(decorated.size());
-        for (Map.Entry<String, Object> entry : decorated) {
-            objects.add(entry.getValue());
+        Comparator<JsonElement> ordering = new PrettyPrintedJsonOrdering(gson);
+        elements.sort(ordering);
+
+        JsonArray array = new JsonArray(elements.size());
+        JsonElement previous = null;
+        for (JsonElement element : elements) {
+            if (legacySetCollapse && previous != null && ordering.compare(previous, element) == 0) {
+                continue;
+            }
+            array.add(element);
+            previous = element;
         }
-        return objects;
+        return array;
     }
 
+    /**
+     * Returns the map's entries ordered by their key and value's JSON representation concatenated. Entries with a
+     * String, enum or primitive wrapper key are written as single member objects, any other entry as a key-value array;
+     * entries that print identically share one array, as they always have.
+     *
+     * <p>Keys and values are serialised to a tree exactly once, in a single pass over the entries, and the trees are
+     * ordered by {@link PrettyPrintedJsonOrdering}. Keys that Gson would write with its built-in String, character,
+     * boolean or integral adapter are turned into a tree straight from the raw key instead; a String key never prints
+     * as a prefix of another, so those are sorted on the key alone.
+     */
     @SuppressWarnings("unchecked")
-    private static ArrayListMultimap<String, Object> mapObjectsByTheirJsonRepresentation(Map map, Gson gson) {
-        ArrayListMultimap<String, Object> objects = ArrayListMultimap.create();
+    private static JsonArray orderMapByEntriesJsonRepresentation(Map map, Gson gson) {
+        List<SerialisedEntry> entries = new ArrayList<>(map.size());
+        boolean allKeysArePrimitiveOrStringOrEnum = true;
         for (Entry<Object, Object> mapEntry : (Set<Map.Entry<Object, Object>>) map.entrySet()) {
-            objects.put(gson.toJson(mapEntry.getKey()).concat(gson.toJson(mapEntry.getValue())), mapEntry.getKey());
+            Object key = mapEntry.getKey();
+            entries.add(new SerialisedEntry(key, keyTree(key, gson), SortAwareJsonTreeWriter.toJsonTree(gson, mapEntry.getValue())));
+            allKeysArePrimitiveOrStringOrEnum &= isPrimitiveOrStringOrEnum(key);
+        }
+        PrettyPrintedJsonOrdering ordering = new PrettyPrintedJsonOrdering(gson);
+        entries.sort((left, right) -> ordering.compare(left.key, left.value, right.key, right.value));
+
+        JsonArray array = new JsonArray(entries.size());
+        if (allKeysArePrimitiveOrStringOrEnum) {
+            for (SerialisedEntry entry : entries) {
+                JsonObject jsonObject = new JsonObject();
+                jsonObject.add(String.valueOf(entry.rawKey), entry.value);
+                array.add(jsonObject);
+            }
+        } else {
+            SerialisedEntry previous = null;
+            JsonArray keyValueArray = null;
+            for (SerialisedEntry entry : entries) {
+                if (previous == null || ordering.compare(previous.key, previous.value, entry.key, entry.value) != 0) {
+                    keyValueArray = new JsonArray();
+                }
+                keyValueArray.add(entry.key);
+                keyValueArray.add(entry.value);
+                array.add(keyValueArray);
+                previous = entry;
+            }
         }
-        return objects;
+        return array;
     }
 
-    private static JsonArray arrayOfObjectsOrderedByTheirJsonRepresentation(Gson gson, List<Object> objects) {
-        JsonArray array = new JsonArray();
-        for (Object object : objects) {
-            array.add(gson.toJsonTree(object));
+    private static JsonElement keyTree(Object key, Gson gson) {
+        if (key == null || !hasBuiltInRepresentation(key.getClass(), gson)) {
+            return SortAwareJsonTreeWriter.toJsonTree(gson, key);
         }
-        return array;
+        if (key instanceof String) {
+            return new JsonPrimitive((String) key);
+        }
+        if (key instanceof Character) {
+            return new JsonPrimitive((Character) key);
+        }
+        if (key instanceof Boolean) {
+            return new JsonPrimitive((Boolean) key);
+        }
+        return new JsonPrimitive((Number) key);
+    }
+
+    private static boolean hasBuiltInRepresentation(Class<?> keyClass, Gson gson) {
+        TypeAdapter<?> builtInAdapter = BUILT_IN_KEY_ADAPTERS.get(keyClass);
+        return builtInAdapter != null && gson.getAdapter(keyClass) == builtInAdapter;
+    }
+
+    private static boolean isPrimitiveOrStringOrEnum(Object key) {
+        return key != null && (isPrimitiveOrWrapper(key.getClass()) || key.getClass() == String.class || key.getClass().isEnum());
+    }
+
+    private static final class SerialisedEntry {
+        private final Object rawKey;
+        private final JsonElement key;
+        private final JsonElement value;
+
+        private SerialisedEntry(Object rawKey, JsonElement key, JsonElement value) {
+            this.rawKey = rawKey;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static GsonBuilder initGson() {
+        return new GsonBuilder().serializeSpecialFloatingPointValues().setPrettyPrinting();
     }
 
-    private static JsonArray arrayOfObjectsOrderedByTheirJsonRepresentation(Gson gson, ArrayListMultimap<String, Object> objects, Map map) {
-        ImmutableList<String> sortedMapKeySet = Ordering.natural().immutableSortedCopy(objects.keySet());
-        JsonArray array = new JsonArray();
-        if (allKeysArePrimitiveOrStringOrEnum(sortedMapKeySet, objects)) {
-            for (String jsonRepresentation : sortedMapKeySet) {
-                List<Object> objectsInTheSet = objects.get(jsonRepresentation);
-                for (Object objectInTheSet : objectsInTheSet) {
-                    JsonObject jsonObject = new JsonObject();
-                    jsonObject.add(String.valueOf(objectInTheSet), gson.toJsonTree(map.get(objectInTheSet)));
-                    array.add(jsonObject);
+    /**
+     * Tells the writers which fields are sorted because of their declared type: sets, maps, and collections and arrays
+     * of a type to sort. A field declared as {@code Object} or as a type variable is not, whatever it holds.
+     * <p>
+     * Only the reflective adapters are wrapped, the graph adapter of circular reference types and the adapters users
+     * register keep delegating to them. The wrapper is a {@link SerializationDelegatingTypeAdapter}, so Gson still
+     * treats it as reflective when it picks between the adapter of a field's declared type and of its value's class.
+     */
+    private static final class SortedFieldsTypeAdapterFactory implements TypeAdapterFactory {
+        private final List<Class<?>> typesToSort;
+
+        private SortedFieldsTypeAdapterFactory(List<Class<?>> typesToSort) {
+            this.typesToSort = typesToSort;
+        }
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Set<String> sortedFieldNames = sortedFieldNames(gson, type.getRawType());
+            if (sortedFieldNames.isEmpty()) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            if (!(delegate instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+                return delegate;
+            }
+            return new SerializationDelegatingTypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (value != null && out instanceof SortAwareJsonWriter) {
+                        ((SortAwareJsonWriter) out).sortFieldsByType(sortedFieldNames);
+                    }
+                    delegate.write(out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
                 }
+
+                @Override
+                public TypeAdapter<T> getSerializationDelegate() {
+                    return delegate;
+                }
+            };
+        }
+
+        private Set<String> sortedFieldNames(Gson gson, Class<?> rawType) {
+            if (rawType.isInterface() || rawType.isArray() || rawType.isPrimitive()) {
+                return java.util.Collections.emptySet();
             }
-        } else {
-            for (String jsonRepresentation : sortedMapKeySet) {
-                JsonArray keyValueArray = new JsonArray();
-                List<Object> objectsInTheSet = objects.get(jsonRepresentation);
-                for (Object objectInTheSet : objectsInTheSet) {
-                    keyValueArray.add(gson.toJsonTree(objectInTheSet));
-                    keyValueArray.add(gson.toJsonTree(map.get(objectInTheSet)));
-                    array.add(keyValueArray);
+            Set<String> names = new HashSet<>();
+            for (Class<?> declaring = rawType; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+                for (Field field : declaring.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && isSortedByType(field)) {
+                        SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                        names.add(serializedName != null ? serializedName.value() : gson.fieldNamingStrategy().translateName(field));
+                    }
                 }
             }
+            return names;
         }
 
-        return array;
-    }
-
-    private static boolean allKeysArePrimitiveOrStringOrEnum(ImmutableList<String> sortedMapKeySet, ArrayListMultimap<String, Object> objects) {
-        for (String jsonRepresentation : sortedMapKeySet) {
-            List<Object> mapKeys = objects.get(jsonRepresentation);
-            for (Object object : mapKeys) {
-                if (!(isPrimitiveOrWrapper(object.getClass()) || object.getClass() == String.class || object.getClass().isEnum())) {
-                    return false;
-                }
+        private boolean isSortedByType(Field field) {
+            Class<?> declaredType = field.getType();
+            if (Set.class.isAssignableFrom(declaredType) || Map.class.isAssignableFrom(declaredType)) {
+                return true;
             }
+            if (typesToSort.isEmpty()) {
+                return false;
+            }
+            if (Collection.class.isAssignableFrom(declaredType)) {
+                Type genericType = field.getGenericType();
+                return genericType instanceof ParameterizedType
+                        && typesToSort.contains(((ParameterizedType) genericType).getActualTypeArguments()[0]);
+            }
+            return declaredType.isArray() && typesToSort.contains(declaredType.getComponentType());
         }
-        return true;
     }
 
-    private static GsonBuilder initGson() {
-        return new GsonBuilder().serializeSpecialFloatingPointValues().setPrettyPrinting();
+    /**
+     * Writes sets, maps and optionals through {@link SortAwareJsonTreeWriter#write(TypeAdapter, JsonWriter, Object)},
+     * as their serialisers build trees of the values they hold and hand them over.
+     * <p>
+     * Registered as a factory, it comes before the type hierarchy adapters and wraps whichever adapter Gson would have
+     * picked otherwise, the graph adapter of circular reference types and the adapters users register included.
+     */
+    private static final class HandedOverTreeTypeAdapterFactory implements TypeAdapterFactory {
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if (!Set.class.isAssignableFrom(rawType) && !Map.class.isAssignableFrom(rawType)
+                    && rawType != java.util.Optional.class && rawType != Optional.class) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    SortAwareJsonTreeWriter.write(delegate, out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
     }
 
     private static class JavaOptionalSerializer<T> implements JsonSerializer<java.util.Optional<T>> {
+        private final EnclosingGson enclosingGson;
+
+        private JavaOptionalSerializer(EnclosingGson enclosingGson) {
+            this.enclosingGson = enclosingGson;
+        }
 
         @Override
         public JsonElement serialize(java.util.Optional<T> src, Type typeOfSrc, JsonSerializationContext context) {
@@ -340,11 +564,11 @@ class GsonProvider {
             JsonObject result = new JsonObject();
             Type valueType = getOptionalValueType(typeOfSrc);
             if (valueType != null && isConcrete(valueType) && !isPolymorphic(valueType, src.get())) {
-                result.add("value", context.serialize(src.get(), valueType));
+                result.add("value", SortAwareJsonTreeWriter.toJsonTree(enclosingGson.get(), src.get(), valueType));
             } else {
-                result.add("value", context.serialize(src.get()));
+                result.add("value", SortAwareJsonTreeWriter.toJsonTree(enclosingGson.get(), src.get()));
             }
-            return result;
+            return SortAwareJsonTreeWriter.handOver(result);
         }
 
         private Type getOptionalValueType(Type optionalType) {
@@ -417,13 +641,180 @@ class GsonProvider {
     }
 
     private static class OptionalSerializer<T> implements JsonSerializer<Optional<T>> {
+        private final EnclosingGson enclosingGson;
+
+        private OptionalSerializer(EnclosingGson enclosingGson) {
+            this.enclosingGson = enclosingGson;
+        }
 
         @Override
         public JsonElement serialize(Optional<T> src, Type typeOfSrc, JsonSerializationContext context) {
             JsonArray result = new JsonArray();
-            result.add(context.serialize(src.orNull()));
+            result.add(SortAwareJsonTreeWriter.toJsonTree(enclosingGson.get(), src.orNull()));
+            return SortAwareJsonTreeWriter.handOver(result);
+        }
+    }
+
+    /**
+     * The {@link Gson} instance an adapter was registered into. Adapters registered on a {@link GsonBuilder} cannot be
+     * handed the instance it builds, so it is filled in once {@link GsonBuilder#create()} returns.
+     */
+    private static final class EnclosingGson {
+        private Gson gson;
+
+        Gson get() {
+            if (gson == null) {
+                throw new IllegalStateException("Gson instance has not been built yet");
+            }
+            return gson;
+        }
+    }
+
+    /**
+     * Fingerprint of every input that shapes a {@link Gson} built by this provider. Types are compared by equality
+     * and in sets where their order does not affect the output. Hamcrest's own value based string matchers, see
+     * {@link #VALUE_BASED_MATCHERS}, are compared by their class and description, so the same pattern written again
+     * in every assertion, {@code ignoring(startsWith("id"))}, finds the instance built for it. Other matchers and
+     * user-supplied adapters rarely implement {@code equals}, and two that describe themselves alike can still behave
+     * differently, so they are compared by identity; adapter lists keep their order because registration order
+     * decides precedence.
+     * <p>
+     * The keys, and the instances cached for them, hold the matchers and adapters they were built from strongly, for
+     * as long as they stay among the {@link #GSON_CACHE_MAX_SIZE} most recently used configurations.
+     */
+    static final class GsonKey {
+        private final boolean serializeNulls;
+        private final boolean legacySetCollapse;
+        private final Set<Class<?>> typesToIgnore;
+        private final Set<Object> patternsToIgnore;
+        private final Set<Class<?>> typesToSort;
+        private final Set<Class<?>> circularReferenceTypes;
+        private final List<Identity> typeAdapterFactories;
+        private final Map<Type, List<Identity>> typeAdapters;
+        private final Map<Class<?>, List<Identity>> typeHierarchyAdapters;
+        private final Set<Class<?>> typesToSkipInFallbackFactories;
+        private final boolean pathTracking;
+        private final int hashCode;
+
+        GsonKey(MatcherConfiguration matcherConfiguration, Set<Class<?>> circularReferenceTypes, GsonConfiguration additionalConfig, boolean pathTracking) {
+            this.serializeNulls = matcherConfiguration.isSerializeNulls();
+            this.legacySetCollapse = matcherConfiguration.isLegacySetCollapse();
+            this.typesToIgnore = new HashSet<>(matcherConfiguration.getTypesToIgnore());
+            this.patternsToIgnore = new HashSet<>();
+            for (Matcher<String> pattern : matcherConfiguration.getPatternsToIgnore()) {
+                patternsToIgnore.add(fingerprintOf(pattern));
+            }
+            this.typesToSort = new HashSet<>(matcherConfiguration.getTypesToSort());
+            this.circularReferenceTypes = new HashSet<>(circularReferenceTypes);
+            GsonConfiguration config = additionalConfig != null ? additionalConfig : new GsonConfiguration();
+            this.typeAdapterFactories = Identity.of(config.getTypeAdapterFactories());
+            this.typeAdapters = identityValues(config.getTypeAdapters());
+            this.typeHierarchyAdapters = identityValues(config.getTypeHierarchyAdapter());
+            this.typesToSkipInFallbackFactories = new HashSet<>(config.getTypesToSkipInFallbackFactories());
+            this.pathTracking = pathTracking;
+            this.hashCode = Objects.hash(serializeNulls, legacySetCollapse, this.typesToIgnore, patternsToIgnore, typesToSort,
+                    this.circularReferenceTypes, typeAdapterFactories, typeAdapters, typeHierarchyAdapters, typesToSkipInFallbackFactories,
+                    pathTracking);
+        }
+
+        private static <K> Map<K, List<Identity>> identityValues(Map<K, List<Object>> adapters) {
+            Map<K, List<Identity>> result = new HashMap<>();
+            for (Map.Entry<K, List<Object>> entry : adapters.entrySet()) {
+                if (entry.getValue() != null) {
+                    result.put(entry.getKey(), Identity.of(entry.getValue()));
+                }
+            }
             return result;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GsonKey)) {
+                return false;
+            }
+            GsonKey other = (GsonKey) o;
+            return hashCode == other.hashCode
+                    && serializeNulls == other.serializeNulls
+                    && legacySetCollapse == other.legacySetCollapse
+                    && typesToIgnore.equals(other.typesToIgnore)
+                    && patternsToIgnore.equals(other.patternsToIgnore)
+                    && typesToSort.equals(other.typesToSort)
+                    && circularReferenceTypes.equals(other.circularReferenceTypes)
+                    && typeAdapterFactories.equals(other.typeAdapterFactories)
+                    && typeAdapters.equals(other.typeAdapters)
+                    && typeHierarchyAdapters.equals(other.typeHierarchyAdapters)
+                    && typesToSkipInFallbackFactories.equals(other.typesToSkipInFallbackFactories)
+                    && pathTracking == other.pathTracking;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Returns what the matcher is compared by in a {@link GsonKey}: its class and description when it is one of
+     * {@link #VALUE_BASED_MATCHERS}, itself by identity otherwise.
+     */
+    private static Object fingerprintOf(Matcher<?> matcher) {
+        if (VALUE_BASED_MATCHERS.contains(matcher.getClass().getName())) {
+            return new DescribedMatcher(matcher.getClass(), StringDescription.toString(matcher));
+        }
+        return new Identity(matcher);
+    }
+
+    private static final class DescribedMatcher {
+        private final Class<?> type;
+        private final String description;
+
+        private DescribedMatcher(Class<?> type, String description) {
+            this.type = type;
+            this.description = description;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DescribedMatcher)) {
+                return false;
+            }
+            DescribedMatcher other = (DescribedMatcher) o;
+            return type == other.type && description.equals(other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + description.hashCode();
+        }
+    }
+
+    private static final class Identity {
+        private final Object value;
+
+        private Identity(Object value) {
+            this.value = value;
+        }
+
+        static List<Identity> of(Collection<?> values) {
+            List<Identity> result = new ArrayList<>(values.size());
+            for (Object value : values) {
+                result.add(new Identity(value));
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity && ((Identity) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(value);
+        }
     }
 
     /**
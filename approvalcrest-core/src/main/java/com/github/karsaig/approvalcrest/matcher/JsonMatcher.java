@@ -1,8 +1,11 @@
 package com.github.karsaig.approvalcrest.matcher;
 
+import com.github.karsaig.approvalcrest.FieldNamePatterns;
 import com.github.karsaig.approvalcrest.FileMatcherConfig;
-import com.github.karsaig.approvalcrest.JsonElementUtil;
+import com.github.karsaig.approvalcrest.JsonTreeFilter;
 import com.github.karsaig.approvalcrest.MatcherConfiguration;
+import com.github.karsaig.approvalcrest.PathTrie;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
 import com.github.karsaig.approvalcrest.matcher.alias.AliasMap;
 import com.github.karsaig.approvalcrest.matcher.file.AbstractDiagnosingFileMatcher;
 import com.github.karsaig.approvalcrest.matcher.file.FileStoreMatcherUtils;
@@ -53,9 +56,11 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
 
     private final MatcherConfiguration matcherConfiguration = new MatcherConfiguration();
     private final Set<Class<?>> circularReferenceTypes = new HashSet<>();
+    private String approvedContent;
     private Either expected;
 
     private GsonConfiguration configuration;
+    private PathTrie pathsToIgnore;
 
     public JsonMatcher(TestMetaInformation testMetaInformation, FileMatcherConfig fileMatcherConfig) {
         super(testMetaInformation, fileMatcherConfig, new FileStoreMatcherUtils("json", fileMatcherConfig));
@@ -63,8 +68,13 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
 
     @Override
     public void describeTo(Description description) {
-        Gson gson = GsonProvider.gson(matcherConfiguration, circularReferenceTypes, configuration);
-        description.appendText(filterExpectedJson(gson, true, null, null, null));
+        // The approved content was compared sorted only when the input file is sorted, it is described sorted anyway
+        String expectedJson = fileMatcherConfig.isSortInputFile() ? getExpectedJsonOfLastMismatch() : null;
+        if (expectedJson == null) {
+            Gson gson = GsonProvider.gson(matcherConfiguration, circularReferenceTypes, configuration);
+            expectedJson = filterExpectedJson(gson, true, null, null, null);
+        }
+        description.appendText(expectedJson);
         for (String fieldPath : matcherConfiguration.getCustomMatchers().keySet()) {
             description.appendText("\nand ").appendText(fieldPath).appendText(" ")
                     .appendDescriptionOf(matcherConfiguration.getCustomMatchers().get(fieldPath));
@@ -131,7 +141,10 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
     @Override
     protected boolean doMatches(Object actual, Description mismatchDescription) {
         boolean matches = false;
-        circularReferenceTypes.addAll(getClassesWithCircularReferences(actual, matcherConfiguration));
+        JsonElement actualJsonElement = toJsonTreeIfAcyclic(actual);
+        if (actualJsonElement == null) {
+            circularReferenceTypes.addAll(getClassesWithCircularReferences(actual, matcherConfiguration));
+        }
         init();
         Gson gson = GsonProvider.gson(matcherConfiguration, circularReferenceTypes, configuration);
         if (createNotApprovedFileIfNotExists(actual, gson) && fileMatcherConfig.isPassOnCreateEnabled()) {
@@ -139,7 +152,9 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
         }
         initExpectedFromFile();
 
-        JsonElement actualJsonElement = getAsJsonElement(gson, actual);
+        if (actualJsonElement == null) {
+            actualJsonElement = getAsJsonElement(gson, actual);
+        }
 
         if (areCustomMatchersMatchingBeanOrJson(actual, actualJsonElement, mismatchDescription, gson, matcherConfiguration)) {
 
@@ -148,16 +163,37 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
             SortedFieldsTracker sortedTracker = machineReadableOutput ? new SortedFieldsTracker() : null;
             String untrackedNote = buildUntrackedNote();
 
-            String expectedJson = filterExpectedJson(gson, fileMatcherConfig.isSortInputFile(), ignoredTracker, aliasTracker, sortedTracker);
+            JsonElement filteredActual = null;
+            boolean actualFiltered = actual != null && isApprovedContentCanonical();
+            if (actualFiltered) {
+                // Nothing is recorded filtering the approved content as it is, so the actual can be filtered first
+                filteredActual = filterJson(gson, actualJsonElement, true, false, false, ignoredTracker, aliasTracker, sortedTracker);
+                // The lengths are compared first
+                if (gson.toJson(filteredActual).equals(approvedContent)) {
+                    return true;
+                }
+            }
+
+            JsonElement expectedJsonElement = filterExpectedJsonElement(gson, fileMatcherConfig.isSortInputFile(), ignoredTracker, aliasTracker, sortedTracker);
 
             if (actual == null) {
+                String expectedJson = expectedJsonElement == null ? getExpected().getOriginalContent() : gson.toJson(expectedJsonElement);
                 matches = appendMismatchDescriptionWithNote(mismatchDescription, expectedJson, "null", "actual was null",
                         ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
             } else {
-                String actualJson = filterJson(gson, actualJsonElement, true, false, false, ignoredTracker, aliasTracker, sortedTracker);
-
-                matches = assertJsonEquals(expectedJson, actualJson, mismatchDescription, e -> getAssertMessage(fileStoreMatcherUtils, e),
-                        ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
+                if (!actualFiltered) {
+                    filteredActual = filterJson(gson, actualJsonElement, true, false, false, ignoredTracker, aliasTracker, sortedTracker);
+                }
+                if (expectedJsonElement != null) {
+                    // Both are trees, they are only written when they differ
+                    matches = assertJsonEquals(gson, expectedJsonElement, filteredActual, mismatchDescription,
+                            message -> getAssertMessage(fileStoreMatcherUtils, message), ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
+                } else {
+                    String expectedJson = getExpected().getOriginalContent();
+                    String actualJson = gson.toJson(filteredActual);
+                    matches = assertJsonEquals(expectedJson, actualJson, mismatchDescription, e -> getAssertMessage(fileStoreMatcherUtils, e),
+                            ignoredTracker, aliasTracker, sortedTracker, untrackedNote);
+                }
                 if (!matches) {
                     matches = handleInPlaceOverwrite(actual, gson);
                 }
@@ -188,27 +224,49 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
         return false;
     }
 
+    /**
+     * Serialises the actual object without detecting circular references first, when that is switched on.
+     *
+     * @return the tree, or {@code null} when the actual object still has to be checked for circular references
+     */
+    private JsonElement toJsonTreeIfAcyclic(Object actual) {
+        if (actual == null || actual instanceof String || !OptimisticCycleDetection.isEnabled()) {
+            return null;
+        }
+        return OptimisticCycleDetection.toJsonTreeIfAcyclic(GsonProvider.pathTrackingGson(matcherConfiguration, circularReferenceTypes, configuration), actual);
+    }
+
     private JsonElement getAsJsonElement(Gson gson, Object object) {
         JsonElement result;
         if (object instanceof String) {
             result = JsonParser.parseString((String) object);
         } else {
-            result = gson.toJsonTree(object);
+            result = SortAwareJsonTreeWriter.toJsonTree(gson, object);
         }
         return result;
     }
 
     private void initExpectedFromFile() {
-        expected = getExpectedFromFile(fileContent -> {
+        approvedContent = getExpectedFromFile(Function.identity());
+        expected = null;
+    }
+
+    /**
+     * Parses the approved content the first time it is needed, which it is not when the actual Json is the same text,
+     * see {@link #isApprovedContentCanonical()}.
+     */
+    private Either getExpected() {
+        if (expected == null) {
             try {
-                return new Either(JsonParser.parseString(fileContent));
+                expected = new Either(JsonParser.parseString(approvedContent));
             } catch (Exception e) {
-                return new Either(fileContent);
+                expected = new Either(approvedContent);
             }
-        });
+        }
+        return expected;
     }
 
-    private String filterJson(Gson gson, JsonElement jsonElement, boolean sortFile, boolean skipIgnores, boolean skipCustomSortings,
+    private JsonElement filterJson(Gson gson, JsonElement jsonElement, boolean sortFile, boolean skipIgnores, boolean skipCustomSortings,
                               IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
         Set<String> set = skipIgnores ? emptySet() : new HashSet<>(matcherConfiguration.getPathsToIgnore());
 
@@ -223,19 +281,26 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
             }
         }
 
-        JsonElement filteredJson = findPaths(jsonElement, set, ignoredTracker, reasonMap);
-        JsonElementUtil.filterByFieldMatchers(filteredJson, skipIgnores ? emptyList() : matcherConfiguration.getPatternsToIgnore(), ignoredTracker, Reason.IGNORE_PATTERN);
+        JsonElement filteredJson = jsonElement;
+        if (!set.isEmpty()) {
+            pathsToIgnore = PathTrie.compileIfChanged(pathsToIgnore, set);
+            filteredJson = findPaths(jsonElement, pathsToIgnore, ignoredTracker, reasonMap);
+        }
+        JsonTreeFilter filter = new JsonTreeFilter(ignoredTracker, aliasTracker, sortedTracker);
         if (!skipIgnores) {
-            removeMatchingElements(filteredJson, matcherConfiguration.getElementIgnoreRules(), ignoredTracker);
-            JsonElementUtil.filterByCustomMatcherPatterns(filteredJson, matcherConfiguration, ignoredTracker);
+            filter.ignoringFieldNames(matcherConfiguration.getFieldNamePatternsToIgnore())
+                    .ignoringElements(matcherConfiguration.getCompiledElementIgnoreRules())
+                    .ignoringCustomMatcherFieldNames(matcherConfiguration.getCustomMatcherFieldNamePatterns())
+                    .aliasing(matcherConfiguration.getAliasMap());
         }
-        AliasMap aliasMap = matcherConfiguration.getAliasMap();
-        if (!aliasMap.isEmpty() && !skipIgnores) {
-            JsonElementUtil.applyAliases(filteredJson, aliasMap, aliasTracker);
+        if (skipCustomSortings) {
+            filter.sorting(emptyMap(), FieldNamePatterns.none(), sortFile);
+        } else {
+            filter.sorting(matcherConfiguration.getPathsToSort(), matcherConfiguration.getFieldNamePatternsToSort(), sortFile);
         }
-        applySorting(filteredJson, skipCustomSortings ? emptyMap() : matcherConfiguration.getPathsToSort(), skipCustomSortings ? emptyList() : matcherConfiguration.getPatternsToSort(), sortFile, sortedTracker);
+        filter.filter(filteredJson);
 
-        return removeSetMarker(gson.toJson(filteredJson));
+        return filteredJson;
     }
 
     private String buildUntrackedNote() {
@@ -252,14 +317,40 @@ public class JsonMatcher<T> extends AbstractDiagnosingFileMatcher<T, JsonMatcher
 
     private String serializeToJson(Object toApprove, Gson gson) {
         JsonElement actualJsonElement = getAsJsonElement(gson, toApprove);
-        return filterJson(gson, actualJsonElement, true, false, false, null, null, null);
+        return gson.toJson(filterJson(gson, actualJsonElement, true, false, false, null, null, null));
+    }
+
+    /**
+     * The approved content is compared as it is, when the file matching is strict and the file is not sorted, so
+     * the actual Json written the same way the approved file was written matches it when the text is the same.
+     */
+    private boolean isApprovedContentCanonical() {
+        return fileMatcherConfig.isStrictFileMatching() && !fileMatcherConfig.isSortInputFile();
     }
 
     private String filterExpectedJson(Gson gson, boolean sortFile,
             IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
+        Either expected = getExpected();
         if (!expected.isParsedJson()) {
             return expected.getOriginalContent();
         }
+        // A copy is filtered, the tree of the approved content is the one the last mismatch holds
+        return gson.toJson(filterJson(gson, expected.getParsedContent().deepCopy(),
+                sortFile,
+                fileMatcherConfig.isStrictFileMatching(),
+                fileMatcherConfig.isStrictFileMatching(),
+                ignoredTracker, aliasTracker, sortedTracker));
+    }
+
+    /**
+     * @return the filtered tree of the approved file, or {@code null} when its content is not Json
+     */
+    private JsonElement filterExpectedJsonElement(Gson gson, boolean sortFile,
+            IgnoredFieldsTracker ignoredTracker, AliasTracker aliasTracker, SortedFieldsTracker sortedTracker) {
+        Either expected = getExpected();
+        if (!expected.isParsedJson()) {
+            return null;
+        }
         return filterJson(gson, expected.getParsedContent(),
                 sortFile,
                 fileMatcherConfig.isStrictFileMatching(),
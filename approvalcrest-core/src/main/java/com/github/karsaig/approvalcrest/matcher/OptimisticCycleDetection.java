@@ -0,0 +1,260 @@
+package com.github.karsaig.approvalcrest.matcher;
+
+import static com.github.karsaig.approvalcrest.EnvVarReader.getBooleanProperties;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hamcrest.Matcher;
+
+import com.github.karsaig.approvalcrest.CyclicReferenceDetector;
+import com.github.karsaig.approvalcrest.FieldNamePatterns;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.internal.bind.SerializationDelegatingTypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Opt-in alternative to walking the object graph with {@link CyclicReferenceDetector} before Gson walks it again to
+ * serialise it. The object is serialised straight away, keeping the objects on the path from the root to the value
+ * being written in an identity set; only when one of them is written again does the matcher detect the circular
+ * reference types the usual way and serialise again, so acyclic graphs are walked once.
+ * <p>
+ * The path is kept by the reflective adapters of the {@link Gson} instance {@link GsonProvider#pathTrackingGson} builds,
+ * which is the one {@link GsonProvider#gson} builds otherwise. The detector sees a few cycles Gson never walks, so
+ * writing an object counts as a revisit as well when it holds itself in a field, which Gson skips, or when its class has
+ * a field Gson does not serialise, a transient one for example, that could close a cycle. A class whose objects cannot
+ * be followed is taken for a revisit whenever it could hide one of those: the ones written by another adapter, and the
+ * ones with a supertype having an adapter of its own, as tracking them would make Gson prefer the class' adapter to the
+ * supertype's for a field declared as the supertype. Throwables are left to the detector this way. Values written by
+ * the type adapters users register are taken as written otherwise.
+ * <p>
+ * Enabled with the {@code approvalcrestOptimisticCycleDetection} system property (alias {@code aOCDetection}).
+ */
+final class OptimisticCycleDetection {
+    private static final String OPTIMISTIC_CYCLE_DETECTION_PROPERTY = "approvalcrestOptimisticCycleDetection";
+    private static final String OPTIMISTIC_CYCLE_DETECTION_ALIAS = "aOCDetection";
+
+    // The guarded serialisation running on the current thread, if any
+    private static final ThreadLocal<Path> PATH = new ThreadLocal<>();
+
+    private OptimisticCycleDetection() {
+    }
+
+    static boolean isEnabled() {
+        return getBooleanProperties("false", OPTIMISTIC_CYCLE_DETECTION_PROPERTY, OPTIMISTIC_CYCLE_DETECTION_ALIAS);
+    }
+
+    /**
+     * Returns the factory keeping the path of a guarded serialisation. Registered ahead of the other factories, it only
+     * comes before Gson's own ones, and wraps the reflective adapters only.
+     */
+    static TypeAdapterFactory pathTrackingFactory(FieldNamePatterns<Matcher<String>> patternsToIgnore) {
+        return new PathTrackingTypeAdapterFactory(patternsToIgnore);
+    }
+
+    /**
+     * Serialises the object to a tree with a {@link Gson} instance built by {@link GsonProvider#pathTrackingGson},
+     * unless an object on the path is written again.
+     *
+     * @return the tree, or {@code null} when the object may have circular references
+     */
+    static JsonElement toJsonTreeIfAcyclic(Gson gson, Object object) {
+        if (PATH.get() != null) {
+            return SortAwareJsonTreeWriter.toJsonTree(gson, object);
+        }
+        Path path = new Path();
+        PATH.set(path);
+        try {
+            JsonElement tree = SortAwareJsonTreeWriter.toJsonTree(gson, object);
+            return path.revisited ? null : tree;
+        } catch (RevisitException e) {
+            return null;
+        } finally {
+            PATH.remove();
+        }
+    }
+
+    /**
+     * The objects on the path of a guarded serialisation, and whether one was written again. The latter is remembered
+     * in case an adapter swallows the {@link RevisitException}.
+     */
+    private static final class Path {
+        private final Set<Object> objects = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean revisited;
+
+        RevisitException revisit() {
+            revisited = true;
+            return new RevisitException();
+        }
+    }
+
+    private static final class PathTrackingTypeAdapterFactory implements TypeAdapterFactory {
+        private final FieldNamePatterns<Matcher<String>> patternsToIgnore;
+
+        private PathTrackingTypeAdapterFactory(FieldNamePatterns<Matcher<String>> patternsToIgnore) {
+            this.patternsToIgnore = patternsToIgnore;
+        }
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if (CyclicReferenceDetector.isAcyclic(rawType) || Collection.class.isAssignableFrom(rawType) || Map.class.isAssignableFrom(rawType)) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            List<Field> selfReferences = new ArrayList<>();
+            boolean hidesReferences = hidesReferences(rawType, selfReferences);
+            boolean tracked = mayBeReflective(delegate) && !hasAdapterAbove(gson, rawType);
+            if (!tracked && !hidesReferences && selfReferences.isEmpty()) {
+                return delegate;
+            }
+            return new PathTrackingAdapter<>(delegate, hidesReferences || !tracked, selfReferences);
+        }
+
+        /**
+         * Tells whether one of the class' supertypes has an adapter of its own, one Gson would pick for a field
+         * declared as that supertype over the reflective adapter of the class.
+         */
+        private static boolean hasAdapterAbove(Gson gson, Class<?> type) {
+            Deque<Class<?>> supertypes = new ArrayDeque<>();
+            if (type.getSuperclass() != null && type.getSuperclass() != Object.class) {
+                supertypes.add(type.getSuperclass());
+            }
+            Collections.addAll(supertypes, type.getInterfaces());
+            while (!supertypes.isEmpty()) {
+                Class<?> supertype = supertypes.poll();
+                if (!mayBeReflective(gson.getAdapter(supertype))) {
+                    return true;
+                }
+                if (supertype.getSuperclass() != null && supertype.getSuperclass() != Object.class) {
+                    supertypes.add(supertype.getSuperclass());
+                }
+                Collections.addAll(supertypes, supertype.getInterfaces());
+            }
+            return false;
+        }
+
+        /**
+         * Tells whether Gson takes the adapter for a reflective one. A delegating adapter is either a reflective one
+         * wrapped, or one whose type is still being resolved, which is reflective unless a factory of the user's claims
+         * the type.
+         */
+        private static boolean mayBeReflective(TypeAdapter<?> adapter) {
+            return adapter instanceof ReflectiveTypeAdapterFactory.Adapter || adapter instanceof SerializationDelegatingTypeAdapter;
+        }
+
+        /**
+         * Tells whether the class has a field Gson does not serialise, but the detector follows and could find a cycle
+         * through, or one holding the object itself that cannot be read. Collects the fields that could hold the object
+         * itself otherwise: Gson skips those rather than writing the object again.
+         */
+        private boolean hidesReferences(Class<?> type, List<Field> selfReferences) {
+            for (Class<?> declaring = type; declaring != null && declaring != Object.class; declaring = declaring.getSuperclass()) {
+                for (Field field : declaring.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || patternsToIgnore.anyMatches(field.getName())) {
+                        continue;
+                    }
+                    boolean skippedByGson = Modifier.isTransient(modifiers) || field.isSynthetic()
+                            || field.getType().isAnonymousClass() || field.getType().isLocalClass();
+                    if (skippedByGson && !CyclicReferenceDetector.isAcyclicFieldType(field.getType())) {
+                        return true;
+                    }
+                    if (!skippedByGson && field.getType().isAssignableFrom(type)) {
+                        try {
+                            field.setAccessible(true);
+                        } catch (RuntimeException e) {
+                            return true;
+                        }
+                        selfReferences.add(field);
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the object it writes on the path while its fields are written. Objects whose path cannot be followed, and
+     * the ones holding themselves in a field, are taken for a revisit straight away.
+     */
+    private static final class PathTrackingAdapter<T> extends SerializationDelegatingTypeAdapter<T> {
+        private final TypeAdapter<T> delegate;
+        private final boolean revisits;
+        private final List<Field> selfReferences;
+
+        PathTrackingAdapter(TypeAdapter<T> delegate, boolean revisits, List<Field> selfReferences) {
+            this.delegate = delegate;
+            this.revisits = revisits;
+            this.selfReferences = selfReferences;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            Path path = PATH.get();
+            if (path == null || value == null) {
+                delegate.write(out, value);
+                return;
+            }
+            if (revisits || refersToItself(value) || !path.objects.add(value)) {
+                throw path.revisit();
+            }
+            try {
+                delegate.write(out, value);
+            } finally {
+                path.objects.remove(value);
+            }
+        }
+
+        private boolean refersToItself(T value) {
+            for (Field field : selfReferences) {
+                try {
+                    if (field.get(value) == value) {
+                        return true;
+                    }
+                } catch (IllegalAccessException e) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return delegate.read(in);
+        }
+
+        @Override
+        public TypeAdapter<T> getSerializationDelegate() {
+            return delegate;
+        }
+    }
+
+    /**
+     * Thrown when an object on the path is written again, or one whose fields Gson skips could be.
+     */
+    private static final class RevisitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RevisitException() {
+            super(null, null, false, false);
+        }
+    }
+}
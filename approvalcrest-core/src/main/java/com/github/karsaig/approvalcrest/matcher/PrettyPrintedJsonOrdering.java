@@ -0,0 +1,298 @@
+package com.github.karsaig.approvalcrest.matcher;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.github.karsaig.approvalcrest.FieldsIgnorer;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Orders {@link JsonElement}s exactly the way {@link String#compareTo(String)} orders their pretty printed form, without
+ * printing them.
+ * <p>
+ * Both trees are walked lazily, producing the characters {@link Gson#toJson(JsonElement)} would write - two space
+ * indentation, {@code ": "} after names, the writer's null and HTML escaping rules - only up to the first one that
+ * differs. Sets used to be ordered by a pretty printed {@code String} per element, which is why the output has to sort
+ * identically to it: anything else would reorder approved files. The names of the fields sorted because of their type
+ * were printed with {@link FieldsIgnorer#MARKER} in front back then, so they still sort as if they were.
+ * <p>
+ * Map entries were ordered by the printed key and value concatenated, which {@link #compare(JsonElement, JsonElement,
+ * JsonElement, JsonElement)} reproduces the same way.
+ */
+final class PrettyPrintedJsonOrdering implements Comparator<JsonElement> {
+    private static final int END = -1;
+    private static final String INDENT = "  ";
+    private static final String[] INDENTATIONS = new String[16];
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+    private static final String[] HTML_SAFE_REPLACEMENT_CHARS;
+
+    static {
+        for (int depth = 0; depth < INDENTATIONS.length; depth++) {
+            INDENTATIONS[depth] = "\n" + Strings.repeat(INDENT, depth);
+        }
+        for (int i = 0; i <= 0x1f; i++) {
+            REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+        HTML_SAFE_REPLACEMENT_CHARS = REPLACEMENT_CHARS.clone();
+        HTML_SAFE_REPLACEMENT_CHARS['<'] = "\\u003c";
+        HTML_SAFE_REPLACEMENT_CHARS['>'] = "\\u003e";
+        HTML_SAFE_REPLACEMENT_CHARS['&'] = "\\u0026";
+        HTML_SAFE_REPLACEMENT_CHARS['='] = "\\u003d";
+        HTML_SAFE_REPLACEMENT_CHARS['\''] = "\\u0027";
+    }
+
+    private final boolean serializeNulls;
+    private final String[] replacements;
+
+    /**
+     * @param gson the pretty printing instance whose output order is reproduced
+     */
+    PrettyPrintedJsonOrdering(Gson gson) {
+        this(gson.serializeNulls(), gson.htmlSafe());
+    }
+
+    PrettyPrintedJsonOrdering(boolean serializeNulls, boolean htmlSafe) {
+        this.serializeNulls = serializeNulls;
+        this.replacements = htmlSafe ? HTML_SAFE_REPLACEMENT_CHARS : REPLACEMENT_CHARS;
+    }
+
+    @Override
+    public int compare(JsonElement left, JsonElement right) {
+        if (left == right) {
+            return 0;
+        }
+        return compare(new Cursor(left), new Cursor(right));
+    }
+
+    /**
+     * Orders two pairs the way the pretty printed form of each pair's first element directly followed by that of its
+     * second would sort. The second elements matter only when one first element prints as a prefix of the other, like
+     * {@code 1} and {@code 12}.
+     */
+    int compare(JsonElement leftFirst, JsonElement leftSecond, JsonElement rightFirst, JsonElement rightSecond) {
+        return compare(new Cursor(leftFirst, leftSecond), new Cursor(rightFirst, rightSecond));
+    }
+
+    private static int compare(Cursor leftCursor, Cursor rightCursor) {
+        while (true) {
+            int leftChar = leftCursor.next();
+            int rightChar = rightCursor.next();
+            if (leftChar != rightChar) {
+                return leftChar - rightChar;
+            }
+            if (leftChar == END) {
+                return 0;
+            }
+        }
+    }
+
+    private static String indentation(int depth) {
+        if (depth < INDENTATIONS.length) {
+            return INDENTATIONS[depth];
+        }
+        return "\n" + Strings.repeat(INDENT, depth);
+    }
+
+    private CharSequence escape(String value) {
+        StringBuilder escaped = null;
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 128) {
+                replacement = replacements[c];
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                replacement = null;
+            }
+            if (replacement == null) {
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(length + 16);
+            }
+            escaped.append(value, last, i).append(replacement);
+            last = i + 1;
+        }
+        if (escaped == null) {
+            return value;
+        }
+        return escaped.append(value, last, length);
+    }
+
+    /**
+     * Pulls the pretty printed characters of one or more trees, printed one after the other, on demand.
+     */
+    private final class Cursor {
+        private final Deque<CharSequence> segments = new ArrayDeque<>();
+        private final Deque<Container> containers = new ArrayDeque<>();
+        private final JsonElement[] roots;
+        private int nextRoot;
+        private JsonElement pending;
+        private CharSequence segment = "";
+        private int position;
+
+        Cursor(JsonElement... roots) {
+            this.roots = roots;
+        }
+
+        int next() {
+            while (position >= segment.length()) {
+                if (segments.isEmpty() && !advance()) {
+                    return END;
+                }
+                segment = segments.poll();
+                position = 0;
+            }
+            return segment.charAt(position++);
+        }
+
+        private boolean advance() {
+            if (pending != null) {
+                JsonElement value = pending;
+                pending = null;
+                open(value);
+                return true;
+            }
+            Container container = containers.peek();
+            if (container == null) {
+                if (nextRoot == roots.length) {
+                    return false;
+                }
+                open(roots[nextRoot++]);
+                return true;
+            }
+            if (container.hasNext()) {
+                segments.add(container.first ? "" : ",");
+                segments.add(indentation(container.depth + 1));
+                container.first = false;
+                if (container.object) {
+                    Map.Entry<String, JsonElement> member = container.nextMember();
+                    JsonElement value = member.getValue();
+                    segments.add("\"");
+                    if (SortAwareJsonTreeWriter.isSortedByType(value)) {
+                        segments.add(FieldsIgnorer.MARKER);
+                    }
+                    segments.add(escape(member.getKey()));
+                    segments.add("\"");
+                    segments.add(": ");
+                    pending = member.getValue();
+                } else {
+                    pending = container.nextElement();
+                }
+            } else {
+                containers.pop();
+                segments.add(indentation(container.depth));
+                segments.add(container.object ? "}" : "]");
+            }
+            return true;
+        }
+
+        private void open(JsonElement value) {
+            if (value == null || value.isJsonNull()) {
+                segments.add("null");
+            } else if (value.isJsonPrimitive()) {
+                JsonPrimitive primitive = value.getAsJsonPrimitive();
+                if (primitive.isString()) {
+                    quoted(primitive.getAsString());
+                } else {
+                    segments.add(primitive.getAsString());
+                }
+            } else if (value.isJsonArray()) {
+                JsonArray array = value.getAsJsonArray();
+                if (array.isEmpty()) {
+                    segments.add("[]");
+                } else {
+                    segments.add("[");
+                    containers.push(new Container(array, containers.size()));
+                }
+            } else {
+                Container container = new Container(value.getAsJsonObject(), containers.size());
+                if (container.hasNext()) {
+                    segments.add("{");
+                    containers.push(container);
+                } else {
+                    segments.add("{}");
+                }
+            }
+        }
+
+        private void quoted(String value) {
+            segments.add("\"");
+            segments.add(escape(value));
+            segments.add("\"");
+        }
+    }
+
+    /**
+     * An array or object whose children are being printed. Object members holding {@code null} are skipped unless nulls
+     * are serialised, as the writer would; an object left with no members prints as {@code {}}.
+     */
+    private final class Container {
+        private final boolean object;
+        private final int depth;
+        private final Iterator<JsonElement> elements;
+        private final Iterator<Map.Entry<String, JsonElement>> members;
+        private Map.Entry<String, JsonElement> nextMember;
+        private boolean first = true;
+
+        Container(JsonArray array, int depth) {
+            this.object = false;
+            this.depth = depth;
+            this.elements = array.iterator();
+            this.members = null;
+        }
+
+        Container(JsonObject jsonObject, int depth) {
+            this.object = true;
+            this.depth = depth;
+            this.elements = null;
+            this.members = jsonObject.entrySet().iterator();
+            this.nextMember = findNextMember();
+        }
+
+        boolean hasNext() {
+            return object ? nextMember != null : elements.hasNext();
+        }
+
+        JsonElement nextElement() {
+            return elements.next();
+        }
+
+        Map.Entry<String, JsonElement> nextMember() {
+            Map.Entry<String, JsonElement> member = nextMember;
+            nextMember = findNextMember();
+            return member;
+        }
+
+        private Map.Entry<String, JsonElement> findNextMember() {
+            while (members.hasNext()) {
+                Map.Entry<String, JsonElement> member = members.next();
+                if (serializeNulls || !member.getValue().isJsonNull()) {
+                    return member;
+                }
+            }
+            return null;
+        }
+    }
+}
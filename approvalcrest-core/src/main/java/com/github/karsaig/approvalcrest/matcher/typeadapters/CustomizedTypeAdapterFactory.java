@@ -10,11 +10,28 @@ import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
+/**
+ * Customises how values of a class are written, by default while they are streamed: the delegate adapter writes each
+ * value to the writer {@link #beforeWrite(Object, JsonWriter)} returns, typically a
+ * {@link PropertyFilteringJsonWriter}. Factories created with {@code treeBeforeWrite} serialise each value to a tree
+ * first and hand it to {@link #beforeWrite(Object, JsonElement)} instead.
+ */
 public abstract class CustomizedTypeAdapterFactory<C> implements TypeAdapterFactory {
     private final Class<C> customizedClass;
+    private final boolean treeBeforeWrite;
 
     public CustomizedTypeAdapterFactory(Class<C> customizedClass) {
+        this(customizedClass, false);
+    }
+
+    /**
+     * @param treeBeforeWrite whether values are serialised to a tree and passed to
+     *                        {@link #beforeWrite(Object, JsonElement)}, rather than streamed through
+     *                        {@link #beforeWrite(Object, JsonWriter)}
+     */
+    public CustomizedTypeAdapterFactory(Class<C> customizedClass, boolean treeBeforeWrite) {
         this.customizedClass = customizedClass;
+        this.treeBeforeWrite = treeBeforeWrite;
     }
 
     @SuppressWarnings("unchecked")
@@ -31,9 +48,20 @@ public abstract class CustomizedTypeAdapterFactory<C> implements TypeAdapterFact
         return new TypeAdapter<C>() {
             @Override
             public void write(JsonWriter out, C value) throws IOException {
-                JsonElement tree = delegate.toJsonTree(value);
-                beforeWrite(value, tree);
-                adapter.write(out, tree);
+                if (treeBeforeWrite) {
+                    JsonElement tree = delegate.toJsonTree(value);
+                    beforeWrite(value, tree);
+                    adapter.write(out, tree);
+                } else if (value == null) {
+                    delegate.write(out, null);
+                } else {
+                    JsonWriter writer = beforeWrite(value, out);
+                    try {
+                        delegate.write(writer, value);
+                    } finally {
+                        afterWrite(value, writer);
+                    }
+                }
             }
 
             @Override
@@ -47,11 +75,27 @@ public abstract class CustomizedTypeAdapterFactory<C> implements TypeAdapterFact
 
     /**
      * Override this to muck with {@code toSerialize} before it is written to
-     * the outgoing JSON stream.
+     * the outgoing JSON stream. Only called for factories created with {@code treeBeforeWrite}.
      */
     protected void beforeWrite(C source, JsonElement toSerialize) {
     }
 
+    /**
+     * Override this to filter or rename the properties of {@code source} as they
+     * are written, by returning the writer the delegate adapter should write to.
+     * Not called for factories created with {@code treeBeforeWrite}.
+     */
+    protected JsonWriter beforeWrite(C source, JsonWriter out) {
+        return out;
+    }
+
+    /**
+     * Called with the writer {@link #beforeWrite(Object, JsonWriter)} returned
+     * once {@code source} is written, or failed to be.
+     */
+    protected void afterWrite(C source, JsonWriter writer) {
+    }
+
     /**
      * Override this to muck with {@code deserialized} before it parsed into
      * the application type.
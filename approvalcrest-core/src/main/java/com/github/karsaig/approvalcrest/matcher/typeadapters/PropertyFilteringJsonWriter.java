@@ -0,0 +1,282 @@
+package com.github.karsaig.approvalcrest.matcher.typeadapters;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.github.karsaig.approvalcrest.SortAwareJsonWriter;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Forwards everything written to it to another {@link JsonWriter}, letting subclasses drop or rename properties as
+ * their names arrive and add properties before an object is closed. Returned from
+ * {@link CustomizedTypeAdapterFactory#beforeWrite(Object, JsonWriter)} to customise a value while it is streamed,
+ * instead of rewriting a tree of it.
+ * <p>
+ * Depth counts the arrays and objects opened through this writer: names of the outermost object's properties arrive
+ * at depth one, and the outermost value itself is written at depth zero.
+ * <p>
+ * Fields sorted because of their type are told to the writer forwarded to, when it keeps track of them, under the
+ * name they are forwarded with.
+ */
+public class PropertyFilteringJsonWriter extends JsonWriter implements SortAwareJsonWriter {
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final JsonWriter out;
+    private int depth;
+    private boolean droppingValue;
+    private int droppedDepth;
+    // The names of the fields sorted by type of each array and object open, null for arrays and other objects
+    private final List<Set<String>> fieldsSortedByType = new ArrayList<>();
+    private Set<String> nextFieldsSortedByType;
+
+    public PropertyFilteringJsonWriter(JsonWriter out) {
+        super(UNWRITABLE_WRITER);
+        this.out = out;
+        setFormattingStyle(out.getFormattingStyle());
+        setStrictness(out.getStrictness());
+        setHtmlSafe(out.isHtmlSafe());
+        setSerializeNulls(out.getSerializeNulls());
+    }
+
+    /**
+     * Override this to filter or rename a property of the object being written at {@link #depth()}.
+     *
+     * @return the name to write, or {@code null} to drop the property together with its value
+     */
+    protected String filterName(String name) throws IOException {
+        return name;
+    }
+
+    /**
+     * Override this to add properties, through {@link #delegate()}, to the object at {@link #depth()} before it is
+     * closed.
+     */
+    protected void beforeEndObject() throws IOException {
+    }
+
+    protected final int depth() {
+        return depth;
+    }
+
+    protected final JsonWriter delegate() {
+        return out;
+    }
+
+    /**
+     * Tells whether the value about to be written belongs to a dropped property, so a type adapter can skip producing
+     * it. Any single value, {@code null} included, completes it.
+     */
+    public final boolean isDroppingValue() {
+        return droppingValue && droppedDepth == 0;
+    }
+
+    @Override
+    public void sortNextByType() {
+        if (!droppingValue && out instanceof SortAwareJsonWriter) {
+            ((SortAwareJsonWriter) out).sortNextByType();
+        }
+    }
+
+    @Override
+    public void sortFieldsByType(Set<String> names) {
+        if (!droppingValue) {
+            nextFieldsSortedByType = names;
+        }
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        if (droppingValue) {
+            droppedDepth++;
+            return this;
+        }
+        depth++;
+        fieldsSortedByType.add(null);
+        nextFieldsSortedByType = null;
+        out.beginArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        if (droppingValue) {
+            droppedValuePart(true);
+            return this;
+        }
+        depth--;
+        fieldsSortedByType.remove(fieldsSortedByType.size() - 1);
+        out.endArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        if (droppingValue) {
+            droppedDepth++;
+            return this;
+        }
+        depth++;
+        fieldsSortedByType.add(nextFieldsSortedByType);
+        nextFieldsSortedByType = null;
+        out.beginObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (droppingValue) {
+            droppedValuePart(true);
+            return this;
+        }
+        beforeEndObject();
+        depth--;
+        fieldsSortedByType.remove(fieldsSortedByType.size() - 1);
+        out.endObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (droppingValue) {
+            return this;
+        }
+        String filteredName = filterName(name);
+        if (filteredName == null) {
+            droppingValue = true;
+        } else {
+            out.name(filteredName);
+            Set<String> names = fieldsSortedByType.isEmpty() ? null : fieldsSortedByType.get(fieldsSortedByType.size() - 1);
+            if (names != null && names.contains(name) && out instanceof SortAwareJsonWriter) {
+                ((SortAwareJsonWriter) out).sortNextByType();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.jsonValue(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.nullValue();
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (droppingValue) {
+            droppedValuePart(false);
+            return this;
+        }
+        out.value(value);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // The writer forwarded to is closed by whoever opened it
+    }
+
+    private void droppedValuePart(boolean closing) {
+        if (closing) {
+            droppedDepth--;
+        }
+        if (droppedDepth == 0) {
+            droppingValue = false;
+        }
+    }
+}
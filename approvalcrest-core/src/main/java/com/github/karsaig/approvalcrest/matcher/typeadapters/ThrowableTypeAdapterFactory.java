@@ -1,129 +1,150 @@
 package com.github.karsaig.approvalcrest.matcher.typeadapters;
 
 import com.github.karsaig.approvalcrest.FieldsIgnorer;
-import com.github.karsaig.approvalcrest.InaccessibleFieldException;
-import com.github.karsaig.approvalcrest.ReflectUtil;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
-import java.lang.reflect.Field;
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
 
+/**
+ * Writes throwables without their {@code stackTrace} and with a {@code class} property naming their concrete type.
+ * <p>
+ * The throwable is streamed through a {@link ThrowableJsonWriter} that drops the {@code stackTrace} member as its
+ * name arrives and writes {@code class} just before the object closes. The stack trace array itself is never
+ * serialised when {@link #STACK_TRACE_FACTORY} is registered as well: it skips arrays written to a dropped member.
+ * <p>
+ * When the throwable is the root of an object graph, its output is the {@code 0x} reference envelope instead, and the
+ * same is done for every throwable entry of that envelope. The throwable each entry stands for is learnt while the
+ * envelope is written: every throwable written as a {@code 0x} reference passes through this factory, which records
+ * it against the envelope being written.
+ */
 public class ThrowableTypeAdapterFactory extends CustomizedTypeAdapterFactory<Throwable> {
 
     private static final String STACK_TRACE_NAME = "stackTrace";
+    private static final String CLASS_NAME = "class";
+    private static final ThreadLocal<Deque<ThrowableJsonWriter>> WRITERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Leaves stack traces unvisited when they are written to a property a {@link PropertyFilteringJsonWriter} drops.
+     */
+    public static final TypeAdapterFactory STACK_TRACE_FACTORY = new TypeAdapterFactory() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != StackTraceElement[].class) {
+                return null;
+            }
+            TypeAdapter<StackTraceElement[]> delegate = gson.getDelegateAdapter(this, (TypeToken<StackTraceElement[]>) type);
+            return (TypeAdapter<T>) new TypeAdapter<StackTraceElement[]>() {
+                @Override
+                public void write(JsonWriter out, StackTraceElement[] value) throws IOException {
+                    if (out instanceof PropertyFilteringJsonWriter && ((PropertyFilteringJsonWriter) out).isDroppingValue()) {
+                        out.nullValue();
+                        return;
+                    }
+                    delegate.write(out, value);
+                }
+
+                @Override
+                public StackTraceElement[] read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    };
 
     public ThrowableTypeAdapterFactory() {
         super(Throwable.class);
     }
 
     @Override
-    protected void beforeWrite(Throwable source, JsonElement toSerialize) {
-        if (toSerialize.isJsonObject()) {
-            JsonObject jsonObject = toSerialize.getAsJsonObject();
-            if (jsonObject.has(STACK_TRACE_NAME)) {
-                addClass(source, jsonObject);
-                jsonObject.remove(STACK_TRACE_NAME);
-            } else {
-                Map<String, Object> refToObjectmap = buildSourceObjectMap(source, jsonObject);
-                for (Map.Entry<String, JsonElement> actual : jsonObject.entrySet()) {
-                    JsonElement actualElement = actual.getValue();
-                    if (actualElement.isJsonObject()) {
-                        JsonObject actualObject = actualElement.getAsJsonObject();
-                        if (actualObject.has(STACK_TRACE_NAME)) {
-                            addClass(refToObjectmap.get(actual.getKey()), actualObject);
-                            actualObject.remove(STACK_TRACE_NAME);
-                        }
-                    }
+    protected JsonWriter beforeWrite(Throwable source, JsonWriter out) {
+        ThrowableJsonWriter writer = new ThrowableJsonWriter(out, source);
+        WRITERS.get().push(writer);
+        return writer;
+    }
+
+    @Override
+    protected void afterWrite(Throwable source, JsonWriter writer) {
+        Deque<ThrowableJsonWriter> writers = WRITERS.get();
+        String reference = writers.pop().reference;
+        if (reference != null) {
+            for (ThrowableJsonWriter enclosing : writers) {
+                if (enclosing.envelope) {
+                    enclosing.throwables.putIfAbsent(reference, source);
+                    break;
                 }
             }
         }
     }
 
-    private void addClass(Object source, JsonObject jsonObject) {
-        jsonObject.add("class", new JsonPrimitive(source.getClass().getCanonicalName()));
-    }
+    /**
+     * Drops the {@code stackTrace} members and adds the {@code class} ones. Depth one holds the members of the
+     * throwable itself, or the entries of its reference envelope, whose members are at depth two.
+     */
+    private static final class ThrowableJsonWriter extends PropertyFilteringJsonWriter {
+        private final Throwable source;
+        private final Map<String, Throwable> throwables = new HashMap<>();
+        private boolean envelope;
+        private String reference;
+        private boolean droppedStackTrace;
+        private String entry;
+        private boolean droppedEntryStackTrace;
 
-    private Map<String, Object> buildSourceObjectMap(Throwable source, JsonObject jsonObject) {
-        Optional<String> firstRef = jsonObject.keySet().stream().filter(FieldsIgnorer::isGraphAdapterKey).findFirst();
-        if (!firstRef.isPresent()) {
-            return Collections.emptyMap();
+        ThrowableJsonWriter(JsonWriter out, Throwable source) {
+            super(out);
+            this.source = source;
         }
-        Map<String, Object> result = new HashMap<>();
-        JsonElement currentElement = jsonObject.get(firstRef.get());
-        result.put(firstRef.get(), source);
 
-        doBuildSourceObjectMap(result, source, jsonObject, currentElement.getAsJsonObject());
-        return result;
-    }
-
-    /**
-     * Walks the object graph, recording which source object each {@code 0x} reference stands for so
-     * that {@link #addClass} can name the concrete type of every nested throwable.
-     *
-     * <p>Following a reference is a jump across the graph rather than a step down the JSON tree, so
-     * a cycle leads straight back to a reference already seen. {@code result} doubles as the visited
-     * set: a reference is descended into only the first time it is encountered, which is enough,
-     * because the second visit would map it to the same object anyway.
-     */
-    private void doBuildSourceObjectMap(Map<String, Object> result, Object o, JsonObject originalObject, JsonObject currentObject) {
-        List<Map.Entry<String, JsonElement>> jsonPrimitiveRefs = currentObject.entrySet().stream()
-                .filter(e -> e.getValue().isJsonPrimitive()).filter(e -> FieldsIgnorer.isGraphAdapterKey(e.getValue().getAsJsonPrimitive().getAsString()))
-                .collect(Collectors.toList());
-        Map<String, Field> fieldMap = getEveryField(o);
-        if (!jsonPrimitiveRefs.isEmpty()) {
-            for (Map.Entry<String, JsonElement> entry : jsonPrimitiveRefs) {
-                try {
-                    Field field = fieldMap.get(entry.getKey());
-                    Object current = ReflectUtil.getFieldValue(field, o);
-                    String key = entry.getValue().getAsJsonPrimitive().getAsString();
-                    // containsKey rather than the return of put: a field that is legitimately null
-                    // would make put(...) == null indistinguishable from "not yet seen".
-                    boolean firstVisit = !result.containsKey(key);
-                    result.put(key, current);
-                    JsonElement jsonElementForCurrent = originalObject.get(key);
-                    if (firstVisit && jsonElementForCurrent != null && jsonElementForCurrent.isJsonObject()) {
-                        doBuildSourceObjectMap(result, current, originalObject, jsonElementForCurrent.getAsJsonObject());
-                    }
-                } catch (InaccessibleFieldException e) {
-                    // Field in locked module — skip circular reference tracking for this field
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+        @Override
+        protected String filterName(String name) {
+            if (depth() == 1) {
+                if (!envelope && throwables.isEmpty() && FieldsIgnorer.isGraphAdapterKey(name)) {
+                    envelope = true;
+                    throwables.put(name, source);
+                }
+                if (envelope) {
+                    entry = name;
+                } else if (STACK_TRACE_NAME.equals(name)) {
+                    droppedStackTrace = true;
+                    return null;
                 }
+            } else if (depth() == 2 && envelope && STACK_TRACE_NAME.equals(name) && throwables.containsKey(entry)) {
+                droppedEntryStackTrace = true;
+                return null;
             }
+            return name;
         }
-        List<Map.Entry<String, JsonElement>> jsonObjectRefs = currentObject.entrySet().stream()
-                .filter(e -> e.getValue().isJsonObject()).collect(Collectors.toList());
-        if (!jsonObjectRefs.isEmpty()) {
-            for (Map.Entry<String, JsonElement> entry : jsonObjectRefs) {
-                try {
-                    Field field = fieldMap.get(entry.getKey());
-                    Object current = ReflectUtil.getFieldValue(field, o);
-                    doBuildSourceObjectMap(result, current, originalObject, entry.getValue().getAsJsonObject());
-                } catch (InaccessibleFieldException e) {
-                    // Field in locked module — skip circular reference tracking for this field
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
+
+        @Override
+        protected void beforeEndObject() throws IOException {
+            if (depth() == 1 && droppedStackTrace) {
+                writeClass(source);
+            } else if (depth() == 2 && droppedEntryStackTrace) {
+                writeClass(throwables.get(entry));
+                droppedEntryStackTrace = false;
             }
         }
-    }
 
-    private Map<String, Field> getEveryField(Object o) {
-        Map<String, Field> result = new HashMap<>();
-        for (Class<?> c = o.getClass(); c != null; c = c.getSuperclass()) {
-            Field[] fields = c.getDeclaredFields();
-            for (Field classField : fields) {
-                result.put(classField.getName(), classField);
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            if (depth() == 0 && FieldsIgnorer.isGraphAdapterKey(value)) {
+                reference = value;
             }
+            return super.value(value);
+        }
+
+        private void writeClass(Throwable throwable) throws IOException {
+            delegate().name(CLASS_NAME);
+            delegate().value(throwable.getClass().getCanonicalName());
         }
-        return result;
     }
 }
@@ -7,6 +7,8 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -431,4 +433,106 @@ public class CyclicReferenceDetectorTest {
 
         assertThat(returnedClasses, is(empty()));
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unused")
+    static final class Money {
+        private final long amount;
+        private final String currency;
+        private final LocalDate date;
+        private final DayOfWeek day;
+        private final int[] history;
+
+        Money(long amount, String currency, LocalDate date, DayOfWeek day, int[] history) {
+            this.amount = amount;
+            this.currency = currency;
+            this.date = date;
+            this.day = day;
+            this.history = history;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class Account {
+        private Money balance;
+    }
+
+    @SuppressWarnings("unused")
+    static final class Link {
+        private Chain chain;
+    }
+
+    @SuppressWarnings("unused")
+    static final class Chain {
+        private Link link;
+    }
+
+    @SuppressWarnings("unused")
+    static final class Holder {
+        private Object value;
+    }
+
+    @Test
+    public void classesHoldingOnlyLeavesAndAcyclicFinalClassesAreAcyclic() {
+        assertThat(CyclicReferenceDetector.isAcyclic(Money.class), is(true));
+        assertThat(CyclicReferenceDetector.isAcyclic(Account.class), is(true));
+    }
+
+    @Test
+    public void classesReachingThemselvesOrOpenTypesAreNotAcyclic() {
+        assertThat(CyclicReferenceDetector.isAcyclic(Chain.class), is(false));
+        assertThat(CyclicReferenceDetector.isAcyclic(Link.class), is(false));
+        assertThat(CyclicReferenceDetector.isAcyclic(Holder.class), is(false));
+        assertThat(CyclicReferenceDetector.isAcyclic(ArrayList.class), is(false));
+    }
+
+    @Test
+    public void shouldReturnTheClassesOfFinalClassesReferencingEachOther() {
+        Link link = new Link();
+        link.chain = new Chain();
+        link.chain.link = link;
+        MatcherConfiguration matcherConfig = new MatcherConfiguration().addTypeToIgnore(EMPTY_TYPES_TO_IGNORE).addPatternToIgnore(EMPTY_PATTERNS_TO_IGNORE).addPathToIgnore(EMPTY_PATHS_TO_IGNORE);
+
+        Set<Class<?>> returnedClasses = getClassesWithCircularReferences(link, matcherConfig);
+
+        assertThat(returnedClasses, hasItem(Link.class));
+    }
+
+    @SuppressWarnings("unused")
+    static class LinkedNode {
+        private LinkedNode next;
+        private LinkedNode other;
+    }
+
+    @Test
+    public void shouldReturnTheClassWithCyclicReferenceAtTheEndOfALongChain() {
+        LinkedNode first = new LinkedNode();
+        LinkedNode last = first;
+        for (int i = 0; i < 50_000; i++) {
+            last.next = new LinkedNode();
+            last = last.next;
+        }
+        last.next = first;
+        MatcherConfiguration matcherConfig = new MatcherConfiguration().addTypeToIgnore(EMPTY_TYPES_TO_IGNORE).addPatternToIgnore(EMPTY_PATTERNS_TO_IGNORE).addPathToIgnore(EMPTY_PATHS_TO_IGNORE);
+
+        Set<Class<?>> returnedClasses = getClassesWithCircularReferences(first, matcherConfig);
+
+        assertThat(returnedClasses, hasItem(LinkedNode.class));
+    }
+
+    @Test
+    public void shouldReturnAnEmptySetForSharedNodesReachedThroughManyPaths() {
+        LinkedNode first = new LinkedNode();
+        LinkedNode last = first;
+        for (int i = 0; i < 64; i++) {
+            LinkedNode shared = new LinkedNode();
+            last.next = shared;
+            last.other = shared;
+            last = shared;
+        }
+        MatcherConfiguration matcherConfig = new MatcherConfiguration().addTypeToIgnore(EMPTY_TYPES_TO_IGNORE).addPatternToIgnore(EMPTY_PATTERNS_TO_IGNORE).addPathToIgnore(EMPTY_PATHS_TO_IGNORE);
+
+        Set<Class<?>> returnedClasses = getClassesWithCircularReferences(first, matcherConfig);
+
+        assertThat(returnedClasses, is(empty()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.karsaig.approvalcrest;
 
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
@@ -9,12 +10,16 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -134,6 +139,40 @@ public class FieldsIgnorerTest {
         assertThat(json.get("a").getAsString(), is("b"));
     }
 
+    @Test
+    void pathsSharingAPrefixAreRemovedTogether() {
+        JsonObject json = parseObject("{\"keep\":1,\"outer\":{\"a\":1,\"b\":{\"c\":2},\"list\":[{\"d\":3},{\"d\":4,\"e\":5}]}}");
+
+        FieldsIgnorer.findPaths(json, paths("outer.a", "outer.b.c", "outer.list.d", "outer.list.e"));
+
+        assertThat(json.toString(), is("{\"keep\":1}"));
+    }
+
+    @Test
+    void onlyPathsRemovingTheirFieldAreTracked() {
+        JsonObject json = parseObject("{\"a\":{\"b\":1},\"c\":2}");
+        IgnoredFieldsTracker tracker = new IgnoredFieldsTracker();
+        Map<String, IgnoredFieldsTracker.Reason> reasons = new HashMap<>();
+        reasons.put("c", IgnoredFieldsTracker.Reason.CUSTOM_MATCHER);
+
+        FieldsIgnorer.findPaths(json, PathTrie.compile(paths("a.b", "c", "missing")), tracker, reasons);
+
+        assertThat(json.toString(), is("{}"));
+        assertThat(tracker.getFields().size(), is(2));
+        assertThat(tracker.getFields().get(0).getPath(), is("a.b"));
+        assertThat(tracker.getFields().get(0).getReason(), is(IgnoredFieldsTracker.Reason.IGNORE_PATH));
+        assertThat(tracker.getFields().get(1).getPath(), is("c"));
+        assertThat(tracker.getFields().get(1).getReason(), is(IgnoredFieldsTracker.Reason.CUSTOM_MATCHER));
+    }
+
+    @Test
+    void compiledPathsAreReusedUntilTheyChange() {
+        PathTrie compiled = PathTrie.compile(paths("a.b", "c"));
+
+        assertThat(PathTrie.compileIfChanged(compiled, new HashSet<>(Arrays.asList("c", "a.b"))), sameInstance(compiled));
+        assertThat(PathTrie.compileIfChanged(compiled, paths("a.b")).getPaths(), is(paths("a.b")));
+    }
+
     // -------------------------------------------------------------------------
     // removeMatchingElements — element ignoring
     // -------------------------------------------------------------------------
@@ -223,6 +262,28 @@ public class FieldsIgnorerTest {
         assertThat(json.getAsJsonArray("tags").size(), is(1));
     }
 
+    @Test
+    void removesElementsOfRulesSharingAPrefixRecordingThemRuleByRule() {
+        JsonObject json = parseObject(
+                "{\"entry\":[{\"tag\":[{\"system\":\"drop\"},{\"code\":\"x\"}],\"status\":\"gone\"}," +
+                            "{\"tag\":[{\"code\":\"x\"},{\"system\":\"keep\"}]}]}");
+        List<ElementIgnoreRule> rules = Arrays.asList(
+                ElementIgnoreRule.ofValue("entry.tag.code", "x"),
+                ElementIgnoreRule.ofValue("entry.tag.system", "drop"),
+                ElementIgnoreRule.ofValue("entry.status", "gone"));
+        IgnoredFieldsTracker tracker = new IgnoredFieldsTracker();
+
+        FieldsIgnorer.removeMatchingElements(json, rules, tracker);
+
+        assertThat(json.toString(), is("{\"entry\":[{\"tag\":[{\"system\":\"keep\"}]}]}"));
+        // The indexes are the ones left by the rules before, as when applying the rules one after the other
+        assertThat(tracker.getFields().size(), is(4));
+        assertThat(tracker.getFields().get(0).getPath(), is("entry.tag[1]"));
+        assertThat(tracker.getFields().get(1).getPath(), is("entry.tag[0]"));
+        assertThat(tracker.getFields().get(2).getPath(), is("entry.tag[0]"));
+        assertThat(tracker.getFields().get(3).getPath(), is("entry[0]"));
+    }
+
     // -------------------------------------------------------------------------
     // isGraphAdapterKey / removeSetMarker
     // -------------------------------------------------------------------------
@@ -301,6 +301,21 @@ public class JsonElementUtilTest {
         assertThat(removedEmptyRecorded, is(true));
     }
 
+    @Test
+    void trackerWithoutReasonRecordsOnlyRemovedEmptyParent() {
+        JsonElement json = parse("{\"outer\":{\"secret\":\"b\"},\"secret\":\"c\"}");
+        IgnoredFieldsTracker tracker = new IgnoredFieldsTracker();
+
+        JsonElementUtil.filterByFieldMatchers(json, matchers(equalTo("secret")), tracker, null);
+
+        assertThat(json.toString(), is("{}"));
+        assertThat(tracker.getFields().size(), is(1));
+        IgnoredFieldsTracker.IgnoredField field = tracker.getFields().get(0);
+        assertThat(field.getPath(), is("outer"));
+        assertThat(field.getReason(), is(IgnoredFieldsTracker.Reason.REMOVED_EMPTY));
+        assertThat(field.getCauses().isEmpty(), is(true));
+    }
+
     // -------------------------------------------------------------------------
     // applyAliases with an AliasTracker
     // -------------------------------------------------------------------------
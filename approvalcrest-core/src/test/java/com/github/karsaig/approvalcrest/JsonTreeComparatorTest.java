@@ -0,0 +1,92 @@
+package com.github.karsaig.approvalcrest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Unit tests for {@link JsonTreeComparator}: the trees are compared like JSONAssert compares the Json written from
+ * them in strict mode, and the differences are described with the same message.
+ */
+public class JsonTreeComparatorTest {
+
+    @Test
+    void objectsWithTheSameFieldsInADifferentOrderAreEqual() {
+        assertThat(compare("{\"a\":1,\"b\":[true,\"x\"]}", "{\"b\":[true,\"x\"],\"a\":1}", true), is(nullValue()));
+    }
+
+    @Test
+    void numbersAreComparedByTheirValue() {
+        assertThat(compare("{\"a\":1}", "{\"a\":1.0}", true), is(nullValue()));
+    }
+
+    @Test
+    void describesMissingAndUnexpectedFieldsInTheOrderOfTheirNames() {
+        assertThat(compare("{\"o\":{\"b\":1,\"a\":2}}", "{\"o\":{\"c\":1,\"a\":3}}", true),
+                is("o.a\nExpected: 2\n     got: 3\n ; o\nExpected: b\n     but none found\n ; o\nUnexpected: c\n"));
+    }
+
+    @Test
+    void describesArraysOfDifferentLengthsAndDifferentElements() {
+        assertThat(compare("{\"a\":[1,2],\"b\":[\"x\",{}]}", "{\"a\":[1],\"b\":[\"y\",[]]}", true),
+                is("a[]: Expected 2 values but got 1 ; b[0]\nExpected: x\n     got: y\n ; b[1]\nExpected: a JSON object\n     got: a JSON array\n"));
+    }
+
+    @Test
+    void describesOnlyTheSubtreesThatDiffer() {
+        String equalSubtree = "{\"x\":[1,{\"y\":\"z\",\"w\":null}],\"v\":0}";
+        String reorderedSubtree = "{\"v\":-0.0,\"x\":[1.0,{\"w\":null,\"y\":\"z\"}]}";
+
+        assertThat(compare("[" + equalSubtree + ",{\"a\":1}]", "[" + reorderedSubtree + ",{\"a\":2}]", true),
+                is("[1].a\nExpected: 1\n     got: 2\n"));
+    }
+
+    @Test
+    void fieldsHoldingNullAreLeftOutWhenNullsAreNotWritten() {
+        assertThat(compare("{\"a\":1,\"b\":null}", "{\"a\":1}", false), is(nullValue()));
+        assertThat(compare("{\"a\":1,\"b\":null}", "{\"a\":1}", true), is("\nExpected: b\n     but none found\n"));
+    }
+
+    @Test
+    void comparesObjectsAndArraysOnly() {
+        assertThat(JsonTreeComparator.canCompare(JsonParser.parseString("{}"), JsonParser.parseString("[]")), is(true));
+        assertThat(JsonTreeComparator.canCompare(JsonParser.parseString("{}"), JsonParser.parseString("\"a\"")), is(false));
+    }
+
+    @Test
+    void diffedArraysAreDescribedByTheElementsAddedRemovedAndChanged() {
+        assertThat(compareDiffingArrays("[0,1,2,3,{\"a\":1},5]", "[9,0,1,3,{\"a\":2},5,6]"),
+                is("[0]\nUnexpected: 9\n ; [2]\nExpected: 2\n     but none found\n ; [4].a\nExpected: 1\n     got: 2\n ; [6]\nUnexpected: 6\n"));
+    }
+
+    @Test
+    void elementAddedToALargeArrayIsDescribedAlone() {
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 10_000; i++) {
+            expected.append("{\"id\":").append(i).append("},");
+        }
+        String actual = "[{\"id\":-1}," + expected.substring(1, expected.length() - 1) + "]";
+
+        assertThat(compareDiffingArrays(expected.substring(0, expected.length() - 1) + "]", actual),
+                is("[0]\nUnexpected: a JSON object\n"));
+    }
+
+    @Test
+    void equalArraysAreEqualWhenDiffed() {
+        assertThat(compareDiffingArrays("{\"a\":[1,{\"b\":2}]}", "{\"a\":[1.0,{\"b\":2}]}"), is(nullValue()));
+    }
+
+    private static String compareDiffingArrays(String expected, String actual) {
+        return JsonTreeComparator.compare(JsonParser.parseString(expected), JsonParser.parseString(actual), true, true);
+    }
+
+    private static String compare(String expected, String actual, boolean serializeNulls) {
+        JsonElement expectedTree = JsonParser.parseString(expected);
+        JsonElement actualTree = JsonParser.parseString(actual);
+        return JsonTreeComparator.compare(expectedTree, actualTree, serializeNulls);
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.karsaig.approvalcrest;
+
+import com.github.karsaig.approvalcrest.matcher.machinereadable.AliasTracker;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.IgnoredFieldsTracker;
+import com.github.karsaig.approvalcrest.matcher.machinereadable.SortedFieldsTracker;
+import com.github.karsaig.approvalcrest.matcher.sorting.SortField;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.hamcrest.Matcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Checks that {@link JsonTreeFilter} leaves the same tree and records the same as applying the field name ignores,
+ * element ignores, custom matcher patterns, aliases and sorting one pass after the other.
+ */
+public class JsonTreeFilterTest {
+
+    private static final String JSON = "{"
+            + "\"secret\":\"s\","
+            + "\"wrapper\":{\"secret\":\"t\"},"
+            + "\"items\":["
+            + "{\"id\":\"3\",\"status\":\"DELETED\",\"tags\":[\"b\",\"a\"],\"secretCount\":1},"
+            + "{\"id\":\"1\",\"status\":\"ACTIVE\",\"tags\":[\"d\",\"c\"],\"custom\":{\"x\":1}},"
+            + "{\"id\":\"2\",\"status\":\"ACTIVE\",\"tags\":[],\"nested\":{\"customValue\":2}}"
+            + "],"
+            + "\"code\":\"1\""
+            + "}";
+
+    @Test
+    void transformsLikeThePassesOneAfterTheOther() {
+        MatcherConfiguration configuration = configuration();
+        Result passByPass = passByPass(configuration);
+        Result fused = fused(configuration);
+
+        assertThat(fused.json, equalTo(passByPass.json));
+        assertThat(fused.ignored, equalTo(passByPass.ignored));
+        assertThat(fused.aliased, equalTo(passByPass.aliased));
+        assertThat(fused.sorted, equalTo(passByPass.sorted));
+    }
+
+    @Test
+    void recordsTheCustomMatcherPatternsAfterTheFieldNameIgnores() {
+        Result fused = fused(configuration());
+
+        assertThat(fused.ignored.get(0), startsWith("secret IGNORE_PATTERN"));
+        assertThat(fused.ignored.get(fused.ignored.size() - 1), startsWith("items[1].nested REMOVED_EMPTY"));
+    }
+
+    @Test
+    void recordsSortedArraysInSortedFieldOrder() {
+        MatcherConfiguration configuration = new MatcherConfiguration()
+                .addPatternToSort(equalTo("b"))
+                .addPatternToSort(equalTo("a"));
+        JsonElement json = JsonParser.parseString("{\"b\":[2,1],\"a\":[4,3]}");
+        SortedFieldsTracker sorted = new SortedFieldsTracker();
+
+        new JsonTreeFilter(null, null, sorted)
+                .sorting(configuration.getPathsToSort(), configuration.getFieldNamePatternsToSort(), true)
+                .filter(json);
+
+        assertThat(json.toString(), is("{\"a\":[3,4],\"b\":[1,2]}"));
+        assertThat(sorted.getFields().get(0).getPath(), is("a"));
+        assertThat(sorted.getFields().get(1).getPath(), is("b"));
+    }
+
+    private static MatcherConfiguration configuration() {
+        Matcher<String> customPattern = startsWith("custom");
+        return new MatcherConfiguration()
+                .addPatternToIgnore(startsWith("secret"))
+                .addElementIgnoreRule("items.status", "DELETED")
+                .addCustomMatcherPattern(customPattern, equalTo(1))
+                .addAlias("1", "ONE")
+                .addPathToSort("items")
+                .addPatternToSort(SortField.of(equalTo("tags")));
+    }
+
+    private static Result passByPass(MatcherConfiguration configuration) {
+        Result result = new Result();
+        JsonElement json = JsonParser.parseString(JSON);
+        JsonElementUtil.filterByFieldMatchers(json, configuration.getPatternsToIgnore(), result.ignoredTracker, IgnoredFieldsTracker.Reason.IGNORE_PATTERN);
+        FieldsIgnorer.removeMatchingElements(json, configuration.getElementIgnoreRules(), result.ignoredTracker);
+        JsonElementUtil.filterByCustomMatcherPatterns(json, configuration, result.ignoredTracker);
+        JsonElementUtil.applyAliases(json, configuration.getAliasMap(), result.aliasTracker);
+        FieldsIgnorer.applySorting(json, configuration.getPathsToSort(), configuration.getPatternsToSort(), true, result.sortedTracker);
+        return result.of(json);
+    }
+
+    private static Result fused(MatcherConfiguration configuration) {
+        Result result = new Result();
+        JsonElement json = JsonParser.parseString(JSON);
+        new JsonTreeFilter(result.ignoredTracker, result.aliasTracker, result.sortedTracker)
+                .ignoringFieldNames(configuration.getFieldNamePatternsToIgnore())
+                .ignoringElements(configuration.getCompiledElementIgnoreRules())
+                .ignoringCustomMatcherFieldNames(configuration.getCustomMatcherFieldNamePatterns())
+                .aliasing(configuration.getAliasMap())
+                .sorting(configuration.getPathsToSort(), configuration.getFieldNamePatternsToSort(), true)
+                .filter(json);
+        return result.of(json);
+    }
+
+    private static final class Result {
+        private final IgnoredFieldsTracker ignoredTracker = new IgnoredFieldsTracker();
+        private final AliasTracker aliasTracker = new AliasTracker();
+        private final SortedFieldsTracker sortedTracker = new SortedFieldsTracker();
+        private String json;
+        private final List<String> ignored = new ArrayList<>();
+        private final List<String> aliased = new ArrayList<>();
+        private final List<String> sorted = new ArrayList<>();
+
+        private Result of(JsonElement json) {
+            this.json = json.toString();
+            for (IgnoredFieldsTracker.IgnoredField field : ignoredTracker.getFields()) {
+                ignored.add(field.getPath() + " " + field.getReason() + " " + field.getPattern() + " " + field.getCauses());
+            }
+            for (AliasTracker.AliasedField field : aliasTracker.getFields()) {
+                aliased.add(field.getPath() + " " + field.getOriginalValue() + " " + field.getAlias());
+            }
+            for (SortedFieldsTracker.SortedField field : sortedTracker.getFields()) {
+                sorted.add(field.getPath() + " " + field.getReason() + " " + field.getPattern());
+            }
+            return this;
+        }
+    }
+}
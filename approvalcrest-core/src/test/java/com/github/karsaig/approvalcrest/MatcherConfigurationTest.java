@@ -2,7 +2,11 @@ package com.github.karsaig.approvalcrest;
 
 import com.github.karsaig.approvalcrest.matcher.alias.AliasMap;
 import com.github.karsaig.approvalcrest.matcher.sorting.SortField;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.hamcrest.Description;
 import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeMatcher;
 import org.junit.jupiter.api.Test;
 
 import java.nio.file.Paths;
@@ -10,10 +14,14 @@ import java.util.Arrays;
 import java.util.Optional;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.Matchers.startsWith;
 
 /**
@@ -227,6 +235,103 @@ public class MatcherConfigurationTest {
         assertThat(configuration.getElementIgnoreRules(), hasSize(2));
     }
 
+    @Test
+    void elementIgnoreRulesAskTheMatcherOnceForEachValue() {
+        CountingMatcher drop = new CountingMatcher(equalTo("drop"));
+        MatcherConfiguration configuration = new MatcherConfiguration().addElementIgnoreRule("tags.system", drop);
+        JsonObject json = new JsonObject();
+        JsonArray tags = new JsonArray();
+        for (int i = 0; i < 1000; i++) {
+            JsonObject tag = new JsonObject();
+            tag.addProperty("system", i % 2 == 0 ? "drop" : "keep");
+            tags.add(tag);
+        }
+        json.add("tags", tags);
+
+        configuration.getCompiledElementIgnoreRules().removeMatchingElements(json, null);
+
+        assertThat(tags.size(), is(500));
+        assertThat(drop.calls, is(2));
+    }
+
+    @Test
+    void elementIgnoreRulesAreCompiledUntilTheRulesChange() {
+        MatcherConfiguration configuration = new MatcherConfiguration().addElementIgnoreRule("tags.system", "drop");
+        ElementIgnoreRules rules = configuration.getCompiledElementIgnoreRules();
+
+        assertThat(configuration.getCompiledElementIgnoreRules(), sameInstance(rules));
+
+        configuration.addElementIgnoreRule("tags.code", "drop");
+
+        assertThat(configuration.getCompiledElementIgnoreRules().getRules(), hasSize(2));
+        assertThat(rules.getRules(), hasSize(1));
+    }
+
+    // --- field name patterns ---
+
+    @Test
+    void fieldNamePatternsMatchEachFieldNameOnce() {
+        CountingMatcher secret = new CountingMatcher(equalTo("secret"));
+        MatcherConfiguration configuration = new MatcherConfiguration().addPatternToIgnore(secret);
+
+        for (int i = 0; i < 1000; i++) {
+            JsonObject element = new JsonObject();
+            element.addProperty("secret", i);
+            element.addProperty("keep", i);
+            JsonElementUtil.filterByFieldMatchers(element, configuration.getFieldNamePatternsToIgnore(), null, null);
+            assertThat(element.has("secret"), is(false));
+        }
+
+        assertThat(secret.calls, is(2));
+    }
+
+    @Test
+    void fieldNamePatternsAreReusedUntilThePatternsChange() {
+        MatcherConfiguration configuration = new MatcherConfiguration().addPatternToIgnore(equalTo("a"));
+        FieldNamePatterns<Matcher<String>> patterns = configuration.getFieldNamePatternsToIgnore();
+
+        assertThat(configuration.getFieldNamePatternsToIgnore(), sameInstance(patterns));
+        assertThat(patterns.anyMatches("b"), is(false));
+
+        configuration.getPatternsToIgnore().add(equalTo("b"));
+
+        assertThat(configuration.getFieldNamePatternsToIgnore().anyMatches("b"), is(true));
+        assertThat(patterns.anyMatches("b"), is(false));
+    }
+
+    @Test
+    void fieldNamePatternsToSortFindEveryMatchingSortField() {
+        SortField<Matcher<String>> byPrefix = SortField.of(startsWith("item"));
+        SortField<Matcher<String>> byName = SortField.of(equalTo("items"));
+        MatcherConfiguration configuration = new MatcherConfiguration()
+                .addPatternToSort(byPrefix)
+                .addPatternToSort(byName);
+
+        assertThat(configuration.getFieldNamePatternsToSort().findMatches("items"), contains(byPrefix, byName));
+        assertThat(configuration.getFieldNamePatternsToSort().findFirstMatch("itemCount"), sameInstance(byPrefix));
+        assertThat(configuration.getFieldNamePatternsToSort().findFirstMatch("other"), is(nullValue()));
+    }
+
+    private static final class CountingMatcher extends TypeSafeMatcher<String> {
+        private final Matcher<String> delegate;
+        private int calls;
+
+        CountingMatcher(Matcher<String> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected boolean matchesSafely(String item) {
+            calls++;
+            return delegate.matches(item);
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendDescriptionOf(delegate);
+        }
+    }
+
     @SafeVarargs
     @SuppressWarnings("varargs")
     private static Matcher<String>[] asMatcherArray(Matcher<String>... matchers) {
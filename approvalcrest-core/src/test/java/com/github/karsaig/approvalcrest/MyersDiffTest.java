@@ -0,0 +1,74 @@
+package com.github.karsaig.approvalcrest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Unit tests for {@link MyersDiff}: the elements are matched in order, as many of them as the longest common
+ * subsequence holds.
+ */
+public class MyersDiffTest {
+
+    @Test
+    void matchesTheLongestCommonSubsequence() {
+        int[] matches = match("ABCDEF", "XABDEYF", Integer.MAX_VALUE);
+
+        assertThat(matches, is(new int[]{1, 2, -1, 3, 4, 6}));
+    }
+
+    @Test
+    void matchesAsManyElementsAsTheLongestCommonSubsequenceHolds() {
+        Random random = new Random(42);
+        for (int run = 0; run < 1_000; run++) {
+            String first = randomText(random);
+            String second = randomText(random);
+
+            int[] matches = match(first, second, Integer.MAX_VALUE);
+
+            int matched = 0;
+            int previous = -1;
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] >= 0) {
+                    assertThat(first.charAt(i), is(second.charAt(matches[i])));
+                    assertThat(matches[i] > previous, is(true));
+                    previous = matches[i];
+                    matched++;
+                }
+            }
+            assertThat(first + " / " + second, matched, is(longestCommonSubsequence(first, second)));
+        }
+    }
+
+    @Test
+    void givesUpWhenTheStepsRunOut() {
+        assertThat(match("ABCD", "EFGH", 3), is(nullValue()));
+    }
+
+    private static int[] match(String first, String second, int maxSteps) {
+        return MyersDiff.match(first.length(), second.length(), (i, j) -> first.charAt(i) == second.charAt(j), maxSteps);
+    }
+
+    private static String randomText(Random random) {
+        char[] text = new char[random.nextInt(20)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('A' + random.nextInt(3));
+        }
+        return new String(text);
+    }
+
+    private static int longestCommonSubsequence(String first, String second) {
+        int[][] lengths = new int[first.length() + 1][second.length() + 1];
+        for (int i = 1; i <= first.length(); i++) {
+            for (int j = 1; j <= second.length(); j++) {
+                lengths[i][j] = first.charAt(i - 1) == second.charAt(j - 1)
+                        ? lengths[i - 1][j - 1] + 1 : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[first.length()][second.length()];
+    }
+}
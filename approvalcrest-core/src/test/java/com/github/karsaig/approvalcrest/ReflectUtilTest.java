@@ -83,6 +83,24 @@ public class ReflectUtilTest {
         assertThat(value, is(42));
     }
 
+    @Test
+    void getFieldValueReadsEachInstanceThroughTheCachedPlan() throws Exception {
+        AllTypes first = new AllTypes();
+        AllTypes second = new AllTypes();
+        second.intField = 7;
+
+        assertThat(ReflectUtil.getFieldValue(field("intField"), first), is(42));
+        assertThat(ReflectUtil.getFieldValue(field("intField"), second), is(7));
+        assertThat(ReflectUtil.getFieldValue(field("nullField"), second), is((Object) null));
+    }
+
+    @Test
+    void getFieldValueReadsStaticField() throws Exception {
+        Field staticField = WithStaticField.class.getDeclaredField("staticField");
+
+        assertThat(ReflectUtil.getFieldValue(staticField, new WithStaticField()), is("value"));
+    }
+
     @Test
     void makeAccessibleReturnsTrueForOwnField() throws Exception {
         assertThat(ReflectUtil.makeAccessible(field("intField")), is(true));
@@ -125,6 +143,24 @@ public class ReflectUtilTest {
         assertThat(ReflectUtil.isInLockedModule(int.class), is(false));
     }
 
+    @SuppressWarnings("unused")
+    static class AskedAboutTwice {
+    }
+
+    @Test
+    void lockedModuleDecisionIsMadeOncePerClass() {
+        assumeTrue(!ReflectUtil.isForceMode(), "force mode never inspects modules");
+        assumeTrue(!System.getProperty("java.specification.version").startsWith("1."), "requires the module API");
+        long misses = ReflectUtil.getLockedModuleCacheMisses();
+        long hits = ReflectUtil.getLockedModuleCacheHits();
+
+        ReflectUtil.isInLockedModule(AskedAboutTwice.class);
+        ReflectUtil.isInLockedModule(AskedAboutTwice.class);
+
+        assertThat(ReflectUtil.getLockedModuleCacheMisses(), is(misses + 1));
+        assertThat(ReflectUtil.getLockedModuleCacheHits(), is(hits + 1));
+    }
+
     @Test
     void classpathTypesAreNotLocked() {
         // Types on our own (unnamed) module are never locked.
@@ -0,0 +1,190 @@
+package com.github.karsaig.approvalcrest;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link SortAwareJsonTreeWriter}: the values of the fields the adapters tell it are sorted because of
+ * their type are remembered, also when they are part of a tree a serialiser hands over.
+ */
+public class SortAwareJsonTreeWriterTest {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new SortedByTypeFactory(Set.class, true))
+            .create();
+
+    @SuppressWarnings("unused")
+    private static class Bean {
+        private final Set<String> tags = new LinkedHashSet<>(Arrays.asList("b", "a"));
+        private final List<String> names = Arrays.asList("b", "a");
+        private final Set<String> empty = null;
+    }
+
+    @Test
+    void leavesTheFieldNamesAlone() {
+        JsonElement tree = SortAwareJsonTreeWriter.toJsonTree(GSON, new Bean());
+
+        assertThat(tree.toString(), is("{\"tags\":[\"b\",\"a\"],\"names\":[\"b\",\"a\"]}"));
+    }
+
+    @Test
+    void remembersTheArraysOfTheFieldsSortedByType() {
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(GSON, new Bean()).getAsJsonObject();
+
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("tags")), is(true));
+        // Equal to the array of the set, but not sorted because of its type
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("names")), is(false));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("names").deepCopy()), is(false));
+    }
+
+    @Test
+    void remembersTheArraysOfTreesSerialisersHandOver() {
+        // Gson copies the tree a serialiser returns into the writer, the tree handed over is written instead
+        Gson[] enclosing = new Gson[1];
+        enclosing[0] = GSON.newBuilder()
+                .registerTypeAdapter(Wrapper.class, (JsonSerializer<Wrapper>) (wrapper, type, context) -> {
+                    JsonArray beans = new JsonArray();
+                    beans.add(SortAwareJsonTreeWriter.toJsonTree(enclosing[0], wrapper.bean));
+                    return SortAwareJsonTreeWriter.handOver(beans);
+                })
+                // Registered last so it wraps the serialiser
+                .registerTypeAdapterFactory(new SortedByTypeFactory(Wrapper.class, false))
+                .create();
+
+        JsonArray tree = SortAwareJsonTreeWriter.toJsonTree(enclosing[0], new Wrapper()).getAsJsonArray();
+
+        JsonObject bean = tree.get(0).getAsJsonObject();
+        assertThat(bean.has("tags"), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(bean.getAsJsonArray("tags")), is(true));
+    }
+
+    @Test
+    void writesTheCopyWhenNothingWasHandedOver() {
+        Gson gson = GSON.newBuilder()
+                .registerTypeAdapter(Wrapper.class, (JsonSerializer<Wrapper>) (wrapper, type, context) -> {
+                    JsonArray beans = new JsonArray();
+                    beans.add(context.serialize(wrapper.bean));
+                    return beans;
+                })
+                .registerTypeAdapterFactory(new SortedByTypeFactory(Wrapper.class, false))
+                .create();
+
+        JsonArray tree = SortAwareJsonTreeWriter.toJsonTree(gson, new Wrapper()).getAsJsonArray();
+
+        assertThat(tree.toString(), is("[{\"tags\":[\"b\",\"a\"],\"names\":[\"b\",\"a\"]}]"));
+    }
+
+    @Test
+    void remembersTheValuesOfTheFieldsAnObjectsAdapterNames() {
+        Gson gson = new GsonBuilder()
+                .serializeNulls()
+                .registerTypeAdapterFactory(new SortedFieldsFactory(Bean.class, new HashSet<>(Arrays.asList("tags", "empty"))))
+                .create();
+
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(gson, new Bean()).getAsJsonObject();
+
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("tags")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("names")), is(false));
+        // A null of its own, the shared one is not remembered
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.get("empty")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(JsonNull.INSTANCE), is(false));
+    }
+
+    @Test
+    void writesNullAsJsonNull() {
+        assertThat(SortAwareJsonTreeWriter.toJsonTree(GSON, null), is(JsonNull.INSTANCE));
+    }
+
+    private static class Wrapper {
+        private final Bean bean = new Bean();
+    }
+
+    /**
+     * Tells the writer which fields of a type are sorted because of their type.
+     */
+    private static final class SortedFieldsFactory implements TypeAdapterFactory {
+        private final Class<?> type;
+        private final Set<String> names;
+
+        SortedFieldsFactory(Class<?> type, Set<String> names) {
+            this.type = type;
+            this.names = names;
+        }
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            if (typeToken.getRawType() != type) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, typeToken);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    ((SortAwareJsonWriter) out).sortFieldsByType(names);
+                    delegate.write(out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+
+    /**
+     * Writes the values of a type through {@link SortAwareJsonTreeWriter#write(TypeAdapter, JsonWriter, Object)}.
+     */
+    private static final class SortedByTypeFactory implements TypeAdapterFactory {
+        private final Class<?> type;
+        private final boolean sortedByType;
+
+        SortedByTypeFactory(Class<?> type, boolean sortedByType) {
+            this.type = type;
+            this.sortedByType = sortedByType;
+        }
+
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            if (!type.isAssignableFrom(typeToken.getRawType())) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, typeToken);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (sortedByType && out instanceof SortAwareJsonWriter) {
+                        ((SortAwareJsonWriter) out).sortNextByType();
+                    }
+                    SortAwareJsonTreeWriter.write(delegate, out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+}
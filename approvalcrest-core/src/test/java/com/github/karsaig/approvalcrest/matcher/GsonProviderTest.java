@@ -2,7 +2,11 @@ package com.github.karsaig.approvalcrest.matcher;
 
 import com.github.karsaig.approvalcrest.FieldsIgnorer;
 import com.github.karsaig.approvalcrest.MatcherConfiguration;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializer;
 import com.google.gson.TypeAdapter;
@@ -10,6 +14,8 @@ import com.google.gson.TypeAdapterFactory;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import org.hamcrest.CustomTypeSafeMatcher;
+import org.hamcrest.Matcher;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -23,13 +29,17 @@ import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 
 /**
  * Unit tests for {@link GsonProvider}'s configuration assembly — specifically the
  * {@code additionalConfiguration} registration loops (custom factories, type adapters and
  * type-hierarchy adapters supplied via {@link GsonConfiguration}) and the {@code markSortedFields}
- * field-naming strategy that prefixes Set/Map/typesToSort fields with the sort marker.
+ * type adapter factory that tells the writers which Set/Map/typesToSort fields are sorted because of their type.
  */
 public class GsonProviderTest {
 
@@ -50,18 +60,18 @@ public class GsonProviderTest {
     }
 
     @Test
-    void markSortedFieldsPrefixesSetMapAndTypesToSortFields() {
+    void markSortedFieldsMarksSetMapAndTypesToSortFields() {
         MatcherConfiguration config = new MatcherConfiguration().addTypeToSort(SortMe.class);
         Gson gson = GsonProvider.gson(config, NO_CIRCULAR);
 
-        String json = gson.toJson(new Holder());
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(gson, new Holder()).getAsJsonObject();
 
-        // Set, Map, Collection<SortMe> and SortMe[] fields are marked; plain is not.
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "aSet"));
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "aMap"));
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "sortList"));
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "sortArr"));
-        assertThat(json, containsString("\"plain\""));
+        // Set, Map, Collection<SortMe> and SortMe[] fields are marked; no field name is touched.
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("aSet")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("aMap")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("sortList")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("sortArr")), is(true));
+        assertThat(gson.toJson(new Holder()), not(containsString(FieldsIgnorer.MARKER)));
     }
 
     @Test
@@ -69,13 +79,142 @@ public class GsonProviderTest {
         MatcherConfiguration config = new MatcherConfiguration();
         Gson gson = GsonProvider.gson(config, NO_CIRCULAR);
 
-        String json = gson.toJson(new Holder());
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(gson, new Holder()).getAsJsonObject();
 
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "aSet"));
-        assertThat(json, containsString(FieldsIgnorer.MARKER + "aMap"));
-        // no typesToSort → Collection/array fields keep their plain names
-        assertThat(json, containsString("\"sortList\""));
-        assertThat(json, containsString("\"sortArr\""));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("aSet")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("aMap")), is(true));
+        // no typesToSort → Collection/array fields are not marked
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("sortList")), is(false));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("sortArr")), is(false));
+    }
+
+    @SuppressWarnings("unused")
+    static class Inner {
+        List<SortMe> sortList = Arrays.asList(new SortMe(3));
+    }
+
+    @SuppressWarnings("unused")
+    static class Outer {
+        Set<Inner> inners = Collections.singleton(new Inner());
+        java.util.Optional<Inner> optional = java.util.Optional.of(new Inner());
+    }
+
+    @Test
+    void markSortedFieldsMarksFieldsInsideTreesSerialisersBuild() {
+        MatcherConfiguration config = new MatcherConfiguration().addTypeToSort(SortMe.class);
+        Gson gson = GsonProvider.gson(config, NO_CIRCULAR);
+
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(gson, new Outer()).getAsJsonObject();
+
+        JsonObject inSet = tree.getAsJsonArray("inners").get(0).getAsJsonObject();
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(inSet.getAsJsonArray("sortList")), is(true));
+        JsonObject inOptional = tree.getAsJsonObject("optional").getAsJsonObject("value");
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(inOptional.getAsJsonArray("sortList")), is(true));
+    }
+
+    @SuppressWarnings("unused")
+    static class WithSet {
+        Set<String> zSet = Collections.singleton("x");
+    }
+
+    @SuppressWarnings("unused")
+    static class WithList {
+        List<String> aList = Collections.singletonList("x");
+    }
+
+    @Test
+    void setElementsAreOrderedAsIfSortedFieldNamesStillHeldTheMarker() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+        Set<Object> elements = new LinkedHashSet<>(Arrays.asList(new WithList(), new WithSet()));
+
+        JsonArray tree = SortAwareJsonTreeWriter.toJsonTree(gson, elements).getAsJsonArray();
+
+        // "!_TO_BE_SORTED_!zSet" printed before "aList", as it did in approved files
+        assertThat(tree.get(0).getAsJsonObject().has("zSet"), is(true));
+        assertThat(tree.get(1).getAsJsonObject().has("aList"), is(true));
+    }
+
+    static class Item {
+        final String id;
+        final String name;
+        Item(String id, String name) { this.id = id; this.name = name; }
+    }
+
+    static class Items extends LinkedHashSet<Item> {
+        private static final long serialVersionUID = 1L;
+
+        Items(Item... items) { super(Arrays.asList(items)); }
+    }
+
+    @SuppressWarnings({"unused", "rawtypes"})
+    static class RawAndSubclassFields {
+        final Set rawSet = new LinkedHashSet<>(Arrays.asList("x"));
+        final Map rawMap = new LinkedHashMap<>();
+        final Items items = new Items(new Item("1", "a"));
+        final Object objectSet = new LinkedHashSet<>(Arrays.asList("x"));
+    }
+
+    @Test
+    void markSortedFieldsMarksRawAndSubclassSetAndMapFieldsByTheirDeclaredType() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+
+        JsonObject tree = SortAwareJsonTreeWriter.toJsonTree(gson, new RawAndSubclassFields()).getAsJsonObject();
+
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("rawSet")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("rawMap")), is(true));
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("items")), is(true));
+        // Declared as Object, not sorted because of its type whatever it holds
+        assertThat(SortAwareJsonTreeWriter.isSortedByType(tree.getAsJsonArray("objectSet")), is(false));
+    }
+
+    @SuppressWarnings({"unused", "rawtypes"})
+    static class WithRawItems {
+        final Set items;
+        WithRawItems(Item... items) { this.items = new LinkedHashSet<>(Arrays.asList(items)); }
+    }
+
+    @SuppressWarnings("unused")
+    static class WithItems {
+        final Items items;
+        WithItems(Item... items) { this.items = new Items(items); }
+    }
+
+    @Test
+    void ignoredPathsInsideRawSetFieldsLeaveTheRestSorted() {
+        WithRawItems expected = new WithRawItems(new Item("1", "b"), new Item("2", "a"));
+        WithRawItems actual = new WithRawItems(new Item("3", "b"), new Item("0", "a"));
+
+        assertThat(new DiagnosingCustomisableMatcher<>(expected).ignoring("items.id").matches(actual), is(true));
+    }
+
+    @Test
+    void ignoredPathsInsideSetSubclassFieldsLeaveTheRestSorted() {
+        WithItems expected = new WithItems(new Item("1", "b"), new Item("2", "a"));
+        WithItems actual = new WithItems(new Item("3", "b"), new Item("0", "a"));
+
+        assertThat(new DiagnosingCustomisableMatcher<>(expected).ignoring("items.id").matches(actual), is(true));
+    }
+
+    @SuppressWarnings("unused")
+    static class WithNullSet {
+        Set<String> tags = null;
+    }
+
+    @SuppressWarnings("unused")
+    static class WithString {
+        String a = "a";
+    }
+
+    @Test
+    void setElementsWithANullSortedFieldAreOrderedAsIfItsNameStillHeldTheMarker() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration().setSerializeNulls(true), NO_CIRCULAR);
+        Set<Object> elements = new LinkedHashSet<>(Arrays.asList(new WithString(), new WithNullSet()));
+
+        JsonArray tree = SortAwareJsonTreeWriter.toJsonTree(gson, elements).getAsJsonArray();
+
+        // "!_TO_BE_SORTED_!tags": null printed before "a", as it did in approved files
+        assertThat(tree.get(0).getAsJsonObject().has("tags"), is(true));
+        assertThat(tree.get(1).getAsJsonObject().has("a"), is(true));
     }
 
     static class Custom {
@@ -155,4 +294,185 @@ public class GsonProviderTest {
         // The custom adapter (wrapped in LenientTypeAdapterFactory) drives serialization.
         assertThat(gson.toJson(new Custom("z")), is("\"lenient:z\""));
     }
+
+    @Test
+    void identicalConfigurationsShareOneCachedInstance() {
+        Matcher<String> pattern = equalTo("plain");
+        MatcherConfiguration first = new MatcherConfiguration().addTypeToSort(SortMe.class).addPatternToIgnore(pattern);
+        MatcherConfiguration second = new MatcherConfiguration().addTypeToSort(SortMe.class).addPatternToIgnore(pattern);
+
+        Gson gson = GsonProvider.gson(first, Collections.singleton(SortMe.class));
+
+        assertThat(GsonProvider.gson(second, Collections.singleton(SortMe.class)), sameInstance(gson));
+    }
+
+    @Test
+    void differingConfigurationsGetSeparateInstances() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+
+        assertThat(GsonProvider.gson(new MatcherConfiguration().setSerializeNulls(false), NO_CIRCULAR), not(sameInstance(gson)));
+        assertThat(GsonProvider.gson(new MatcherConfiguration().addTypeToIgnore(SortMe.class), NO_CIRCULAR), not(sameInstance(gson)));
+        assertThat(GsonProvider.gson(new MatcherConfiguration(), Collections.singleton(SortMe.class)), not(sameInstance(gson)));
+        assertThat(GsonProvider.gson(new MatcherConfiguration().setLegacySetCollapse(true), NO_CIRCULAR), not(sameInstance(gson)));
+    }
+
+    @Test
+    void hamcrestStringMatchersCreatedAgainShareOneCachedInstance() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(equalTo("plain")).addPatternToIgnore(startsWith("id")), NO_CIRCULAR);
+
+        assertThat(GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(startsWith("id")).addPatternToIgnore(equalTo("plain")), NO_CIRCULAR), sameInstance(gson));
+        assertThat(GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(startsWith("ids")).addPatternToIgnore(equalTo("plain")), NO_CIRCULAR), not(sameInstance(gson)));
+    }
+
+    @Test
+    void equalLookingUserMatchersAreNotConflated() {
+        // User matchers do not implement equals, and two that describe themselves alike may still
+        // behave differently, so they are keyed by identity.
+        Gson gson = GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(fieldNamed("plain")), NO_CIRCULAR);
+
+        assertThat(GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(fieldNamed("plain")), NO_CIRCULAR), not(sameInstance(gson)));
+        assertThat(GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(not(equalTo("plain"))), NO_CIRCULAR),
+                not(sameInstance(GsonProvider.gson(new MatcherConfiguration().addPatternToIgnore(not(equalTo("plain"))), NO_CIRCULAR))));
+    }
+
+    private static Matcher<String> fieldNamed(String name) {
+        return new CustomTypeSafeMatcher<String>("a field named " + name) {
+            @Override
+            protected boolean matchesSafely(String item) {
+                return item.equals(name);
+            }
+        };
+    }
+
+    @Test
+    void gsonConfigurationsAreComparedByContent() {
+        JsonSerializer<Custom> serializer = (src, type, ctx) -> new JsonPrimitive("custom:" + src.value);
+        GsonConfiguration first = new GsonConfiguration();
+        first.addTypeAdapter(Custom.class, serializer);
+        GsonConfiguration second = new GsonConfiguration();
+        second.addTypeAdapter(Custom.class, serializer);
+        GsonConfiguration other = new GsonConfiguration();
+        other.addTypeAdapter(Custom.class, (JsonSerializer<Custom>) (src, type, ctx) -> new JsonPrimitive("other:" + src.value));
+
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR, first);
+
+        assertThat(GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR, second), sameInstance(gson));
+        Gson otherGson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR, other);
+        assertThat(otherGson, not(sameInstance(gson)));
+        assertThat(otherGson.toJson(new Custom("x")), is("\"other:x\""));
+    }
+
+    @Test
+    void cachedInstanceIsNotAffectedByLaterConfigurationChanges() {
+        MatcherConfiguration config = new MatcherConfiguration().addPatternToIgnore(equalTo("plain"));
+        Gson gson = GsonProvider.gson(config, NO_CIRCULAR);
+
+        config.addPatternToIgnore(equalTo("aSet"));
+
+        assertThat(gson.toJson(new Holder()), containsString("aSet"));
+    }
+
+    @Test
+    void cacheCanBeSwitchedOff() {
+        String previous = System.getProperty("approvalcrestGsonCache");
+        System.setProperty("approvalcrestGsonCache", "false");
+        try {
+            MatcherConfiguration config = new MatcherConfiguration();
+
+            assertThat(GsonProvider.gson(config, NO_CIRCULAR), not(sameInstance(GsonProvider.gson(config, NO_CIRCULAR))));
+        } finally {
+            if (previous == null) {
+                System.clearProperty("approvalcrestGsonCache");
+            } else {
+                System.setProperty("approvalcrestGsonCache", previous);
+            }
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class NullCollections {
+        Set<String> aSet;
+        Map<String, String> aMap;
+    }
+
+    @Test
+    void nullSetAndMapFieldsAreWrittenAsNull() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+
+        String json = gson.toJson(new NullCollections());
+
+        assertThat(json, containsString("\"aSet\": null"));
+        assertThat(json, containsString("\"aMap\": null"));
+    }
+
+    @Test
+    void userTypeHierarchyAdapterForMapSubtypeTakesPrecedence() {
+        GsonConfiguration additional = new GsonConfiguration();
+        JsonSerializer<LinkedHashMap<?, ?>> serializer = (src, type, ctx) -> new JsonPrimitive("linked:" + src.size());
+        additional.addTypeHierarchyAdapter(LinkedHashMap.class, serializer);
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("k", "v");
+
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR, additional);
+
+        assertThat(gson.toJson(map), is("\"linked:1\""));
+    }
+
+    @Test
+    void mapEntriesAreOrderedByKeyAndValuePrintedTogether() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+        Map<Integer, Integer> valueDecides = new LinkedHashMap<>();
+        valueDecides.put(1, 3);
+        valueDecides.put(12, 0);
+        Map<Integer, Integer> keyDecides = new LinkedHashMap<>();
+        keyDecides.put(12, 0);
+        keyDecides.put(1, -5);
+
+        assertThat(JsonParser.parseString(gson.toJson(valueDecides)), is(JsonParser.parseString("[{\"12\": 0}, {\"1\": 3}]")));
+        assertThat(JsonParser.parseString(gson.toJson(keyDecides)), is(JsonParser.parseString("[{\"1\": -5}, {\"12\": 0}]")));
+    }
+
+    @Test
+    void stringMapKeysAreOrderedByTheirPrintedForm() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        map.put("a b", 2);
+        map.put("a<", 3);
+
+        // The closing quote of "a" sorts after the space of "a b" but before the escaped '<' of "a\u003c".
+        assertThat(JsonParser.parseString(gson.toJson(map)), is(JsonParser.parseString("[{\"a b\": 2}, {\"a\": 1}, {\"a<\": 3}]")));
+    }
+
+    @Test
+    void customStringAdapterDecidesMapKeyOrder() {
+        GsonConfiguration additional = new GsonConfiguration();
+        JsonSerializer<String> reversing = (src, type, ctx) -> new JsonPrimitive(new StringBuilder(src).reverse().toString());
+        additional.addTypeAdapter(String.class, reversing);
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("ab", 1);
+        map.put("ba", 2);
+
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR, additional);
+
+        assertThat(JsonParser.parseString(gson.toJson(map)), is(JsonParser.parseString("[{\"ba\": 2}, {\"ab\": 1}]")));
+    }
+
+    static class Key {
+        final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    void objectMapKeysAreWrittenAsKeyValueArrays() {
+        Gson gson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+        Map<Key, String> map = new LinkedHashMap<>();
+        map.put(new Key(2), "two");
+        map.put(new Key(1), "one");
+
+        assertThat(JsonParser.parseString(gson.toJson(map)), is(JsonParser.parseString("[[{\"id\": 1}, \"one\"], [{\"id\": 2}, \"two\"]]")));
+    }
 }
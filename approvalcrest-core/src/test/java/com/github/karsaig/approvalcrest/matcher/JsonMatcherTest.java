@@ -280,6 +280,26 @@ public class JsonMatcherTest extends AbstractFileMatcherTest {
         });
     }
 
+    @Test
+    public void shouldNotThrowAssertionErrorWhenApprovedContentIsTheSameJsonWrittenDifferently() {
+        BeanWithPrimitives actual = getBeanWithPrimitives();
+        String approvedFileContent = "{\"beanShort\": 1, \"beanLong\": 6, \"beanInteger\": 4, \"beanFloat\": 3, \"beanDouble\": 5,"
+                + " \"beanChar\": \"c\", \"beanByte\": 2, \"beanBoolean\": true}\n";
+        inMemoryUnixFs(imfsi -> {
+            DummyInformation dummyTestInfo = dummyInformation(imfsi, "ContentMatcherTest", "shouldNotThrowAssertionErrorWhenApprovedContentIsTheSameJsonWrittenDifferently");
+            JsonMatcher<BeanWithPrimitives> underTest = MATCHER_FACTORY.jsonMatcher(dummyTestInfo, getDefaultFileMatcherConfig());
+
+            writeFile(imfsi.getTestPath().resolve("87668f").resolve("ec5999-approved.json"), approvedFileContent);
+
+            MatcherAssert.assertThat(actual, underTest);
+
+            List<InMemoryFiles> actualFiles = getFiles(imfsi);
+            InMemoryFiles expected = new InMemoryFiles("87668f/ec5999-approved.json", approvedFileContent);
+
+            assertIterableEquals(singletonList(expected), actualFiles);
+        });
+    }
+
     @Test
     public void shouldThrowAssertionErrorWhenContentDiffersFromApprovedContent() {
         BeanWithPrimitives actual = getBeanWithPrimitives();
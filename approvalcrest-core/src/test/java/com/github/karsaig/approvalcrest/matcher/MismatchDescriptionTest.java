@@ -0,0 +1,98 @@
+package com.github.karsaig.approvalcrest.matcher;
+
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.StringDescription;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that describing a failed match reuses what the match found: the expected and the actual objects are serialised
+ * once for the match, and not again for the description of the matcher or of the mismatch.
+ */
+public class MismatchDescriptionTest extends AbstractFileMatcherTest {
+
+    private final List<String> serialised = new ArrayList<>();
+
+    @Test
+    void failedMatchIsDescribedWithoutSerialisingAgain() {
+        DiagnosingCustomisableMatcher<Holder> underTest = MATCHER_FACTORY.beanMatcher(new Holder("expected"))
+                .withGsonConfiguration(countingConfiguration());
+
+        AssertionError error = assertThrows(AssertionError.class, () -> MatcherAssert.assertThat(new Holder("actual"), underTest));
+
+        MatcherAssert.assertThat(error.getMessage(), containsString("Expected: expected\n     got: actual"));
+        MatcherAssert.assertThat(serialised, contains("actual", "expected"));
+    }
+
+    @Test
+    void mismatchOfAnotherActualIsNotReused() {
+        DiagnosingCustomisableMatcher<Holder> underTest = MATCHER_FACTORY.beanMatcher(new Holder("expected"))
+                .withGsonConfiguration(countingConfiguration());
+        Holder first = new Holder("first");
+        Holder second = new Holder("second");
+
+        MatcherAssert.assertThat(underTest.matches(first), is(false));
+        StringDescription description = new StringDescription();
+        underTest.describeMismatch(second, description);
+
+        MatcherAssert.assertThat(description.toString(), containsString("got: second"));
+    }
+
+    @Test
+    void failedJsonMatchIsDescribedWithoutSerialisingAgain() {
+        runJsonMatcherTestWithDummyTestInfo("{\n  \"value\": \"expected\"\n}", testInfo -> {
+            List<String> expectedOfLastMismatch = new ArrayList<>();
+            JsonMatcher<Holder> underTest = new JsonMatcher<Holder>(testInfo, getDefaultFileMatcherConfig()) {
+                @Override
+                protected String getExpectedJsonOfLastMismatch() {
+                    String expectedJson = super.getExpectedJsonOfLastMismatch();
+                    expectedOfLastMismatch.add(expectedJson);
+                    return expectedJson;
+                }
+            }.withGsonConfiguration(countingConfiguration());
+
+            AssertionError error = assertThrows(AssertionError.class, () -> MatcherAssert.assertThat(new Holder("actual"), underTest));
+
+            MatcherAssert.assertThat(error.getMessage(), containsString("Expected: {\n  \"value\": \"expected\"\n}"));
+            MatcherAssert.assertThat(error.getMessage(), containsString("Expected: expected\n     got: actual"));
+            MatcherAssert.assertThat(serialised, contains("actual"));
+            // Not sorting the input file, the approved content is described sorted, unlike it was compared
+            MatcherAssert.assertThat(expectedOfLastMismatch, is(empty()));
+        });
+    }
+
+    private GsonConfiguration countingConfiguration() {
+        GsonConfiguration configuration = new GsonConfiguration();
+        configuration.addTypeAdapter(Value.class, (JsonSerializer<Value>) (value, type, context) -> {
+            serialised.add(value.value);
+            return new JsonPrimitive(value.value);
+        });
+        return configuration;
+    }
+
+    private static class Holder {
+        private final Value value;
+
+        private Holder(String value) {
+            this.value = new Value(value);
+        }
+    }
+
+    private static class Value {
+        private final String value;
+
+        private Value(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.github.karsaig.approvalcrest.matcher;
+
+import com.github.karsaig.approvalcrest.MatcherConfiguration;
+import com.github.karsaig.approvalcrest.SortAwareJsonTreeWriter;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that {@link OptimisticCycleDetection} serialises acyclic objects exactly like the matchers do without it, and
+ * gives up on the ones the circular reference detector has to see.
+ */
+public class OptimisticCycleDetectionTest extends AbstractBeanMatcherTest {
+
+    private static final Set<Class<?>> NO_CIRCULAR = Collections.emptySet();
+
+    @SuppressWarnings("unused")
+    static class Node {
+        String name;
+        Node next;
+        List<Node> children;
+        Set<Node> nodeSet = new HashSet<>();
+        Map<String, Node> nodeMap = new HashMap<>();
+
+        Node(String name, Node... children) {
+            this.name = name;
+            this.children = Arrays.asList(children);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class Parent {
+        String name;
+        List<Child> children = new ArrayList<>();
+
+        Parent(String name) {
+            this.name = name;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    static class Child {
+        String name;
+        transient Parent parent;
+
+        Child(String name, Parent parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+    }
+
+    private final Gson defaultGson = GsonProvider.gson(new MatcherConfiguration(), NO_CIRCULAR);
+    private final Gson gson = GsonProvider.pathTrackingGson(new MatcherConfiguration(), NO_CIRCULAR, new GsonConfiguration());
+
+    @Test
+    void acyclicObjectIsSerialisedLikeGsonDoes() {
+        Node root = new Node("root", new Node("a"), new Node("b", new Node("c")));
+        root.nodeSet.add(new Node("d"));
+        root.nodeMap.put("e", new Node("e"));
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), equalTo(SortAwareJsonTreeWriter.toJsonTree(defaultGson, root)));
+    }
+
+    @Test
+    void deepAcyclicObjectIsSerialisedLikeGsonDoes() {
+        Node root = new Node("0");
+        Node last = root;
+        for (int i = 1; i < 1000; i++) {
+            last.next = new Node(String.valueOf(i));
+            last = last.next;
+        }
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), equalTo(SortAwareJsonTreeWriter.toJsonTree(defaultGson, root)));
+    }
+
+    @Test
+    void objectWrittenTwiceOffThePathIsSerialisedLikeGsonDoes() {
+        Node shared = new Node("shared");
+        Node root = new Node("root", shared, shared);
+        root.next = shared;
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), equalTo(SortAwareJsonTreeWriter.toJsonTree(defaultGson, root)));
+    }
+
+    @Test
+    void circularReferenceThroughFieldTripsTheGuard() {
+        Node root = new Node("root");
+        root.next = new Node("next");
+        root.next.next = root;
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), is(nullValue()));
+    }
+
+    @Test
+    void circularReferenceThroughSetElementTripsTheGuard() {
+        Node root = new Node("root");
+        root.nodeSet.add(root);
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), is(nullValue()));
+    }
+
+    @Test
+    void circularReferenceThroughMapValueTripsTheGuard() {
+        Node root = new Node("root");
+        root.nodeMap.put("self", root);
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), is(nullValue()));
+    }
+
+    @Test
+    void circularReferenceThroughTransientFieldTripsTheGuard() {
+        Parent parent = new Parent("parent");
+        parent.children.add(new Child("child", parent));
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, parent), is(nullValue()));
+    }
+
+    @Test
+    void throwableTripsTheGuard() {
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, new IllegalStateException("bad")), is(nullValue()));
+    }
+
+    @Test
+    void objectHoldingItselfTripsTheGuard() {
+        Node root = new Node("root");
+        root.next = root;
+
+        assertThat(OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, root), is(nullValue()));
+    }
+
+    @Test
+    void pathIsOnlyTrackedDuringTheGuardedSerialisation() {
+        Node root = new Node("root");
+        root.next = new Node("next");
+        root.next.next = root;
+        OptimisticCycleDetection.toJsonTreeIfAcyclic(gson, new Node("root"));
+
+        assertThrows(StackOverflowError.class, () -> SortAwareJsonTreeWriter.toJsonTree(gson, root));
+    }
+
+    @Test
+    void circularReferenceIsStillMatchedWhenEnabled() {
+        String previous = System.getProperty("approvalcrestOptimisticCycleDetection");
+        System.setProperty("approvalcrestOptimisticCycleDetection", "true");
+        try {
+            Node actual = new Node("root");
+            actual.next = actual;
+            Node expected = new Node("root");
+            expected.next = expected;
+
+            assertDiagnosingMatcher(actual, expected);
+        } finally {
+            restore(previous);
+        }
+    }
+
+    @Test
+    void differenceInObjectsWithTransientCycleIsDescribedLikeWithoutIt() {
+        Parent actual = new Parent("actual");
+        actual.children.add(new Child("child", actual));
+        Parent expected = new Parent("expected");
+        expected.children.add(new Child("child", expected));
+        String description = describeMismatch(actual, expected);
+
+        String previous = System.getProperty("approvalcrestOptimisticCycleDetection");
+        System.setProperty("approvalcrestOptimisticCycleDetection", "true");
+        try {
+            assertThat(describeMismatch(actual, expected), equalTo(description));
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private String describeMismatch(Object actual, Object expected) {
+        DiagnosingCustomisableMatcher<Object> matcher = MATCHER_FACTORY.beanMatcher(expected);
+        return assertThrows(AssertionError.class, () -> assertThat(actual, matcher)).getMessage();
+    }
+
+    private static void restore(String previous) {
+        if (previous == null) {
+            System.clearProperty("approvalcrestOptimisticCycleDetection");
+        } else {
+            System.setProperty("approvalcrestOptimisticCycleDetection", previous);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.karsaig.approvalcrest.matcher;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class PrettyPrintedJsonOrderingTest {
+
+    private static final Gson GSON = new GsonBuilder().serializeSpecialFloatingPointValues().setPrettyPrinting().create();
+    private static final Gson GSON_WITH_NULLS = new GsonBuilder().serializeSpecialFloatingPointValues().setPrettyPrinting().serializeNulls().create();
+    private static final Gson GSON_NOT_HTML_SAFE = new GsonBuilder().serializeSpecialFloatingPointValues().setPrettyPrinting().disableHtmlEscaping().create();
+
+    @Test
+    public void ordersLikeThePrettyPrintedStrings() {
+        assertSameOrderAsPrettyPrinting(GSON, samples());
+    }
+
+    @Test
+    public void ordersLikeThePrettyPrintedStringsWhenNullsAreSerialised() {
+        assertSameOrderAsPrettyPrinting(GSON_WITH_NULLS, samples());
+    }
+
+    @Test
+    public void ordersLikeThePrettyPrintedStringsWithoutHtmlEscaping() {
+        assertSameOrderAsPrettyPrinting(GSON_NOT_HTML_SAFE, samples());
+    }
+
+    @Test
+    public void objectsDifferingOnlyInSkippedNullsAreEqual() {
+        JsonObject withNull = new JsonObject();
+        withNull.add("a", JsonNull.INSTANCE);
+        withNull.addProperty("b", 1);
+        JsonObject withoutNull = new JsonObject();
+        withoutNull.addProperty("b", 1);
+
+        assertThat(new PrettyPrintedJsonOrdering(GSON).compare(withNull, withoutNull), is(0));
+    }
+
+    @Test
+    public void deeplyNestedTreesAreCompared() {
+        JsonElement left = new JsonPrimitive(1);
+        JsonElement right = new JsonPrimitive(2);
+        for (int i = 0; i < 40; i++) {
+            JsonArray leftWrapper = new JsonArray();
+            leftWrapper.add(left);
+            left = leftWrapper;
+            JsonObject rightWrapper = new JsonObject();
+            rightWrapper.add("k", right);
+            right = rightWrapper;
+        }
+
+        assertSameOrderAsPrettyPrinting(GSON, Arrays.asList(left, right));
+    }
+
+    private static List<JsonElement> samples() {
+        List<JsonElement> samples = new ArrayList<>();
+        for (String json : Arrays.asList(
+                "null", "true", "false", "0", "1", "12", "-1", "1.5", "1e3", "\"\"", "\"a\"", "\"ab\"", "\"A\"", "\"<tag>\"",
+                "\"a=b\"", "\"it's\"", "\"tab\\tnew\\nline\"", "\"quote\\\"back\\\\slash\"", "\"\\u0001\"", "\"\\u2028\"", "\"\\u00e9\"",
+                "[]", "[1]", "[12]", "[1,2]", "[[1]]", "[[]]", "[{}]", "[null]", "[\"a\",\"b\"]",
+                "{}", "{\"a\":1}", "{\"ab\":1}", "{\"a\":1,\"b\":2}", "{\"a\":null}", "{\"a\":null,\"b\":2}", "{\"b\":2}",
+                "{\"a\":{\"b\":1}}", "{\"a\":{}}", "{\"a\":[]}", "{\"a\":[1,2]}", "{\"a\":{\"b\":null}}", "{\"a<\":1}", "{\"a\":\"x\"}")) {
+            samples.add(JsonParser.parseString(json));
+        }
+        samples.add(new JsonPrimitive(Double.NaN));
+        samples.add(new JsonPrimitive(Double.NEGATIVE_INFINITY));
+        samples.add(new JsonPrimitive(1L));
+        samples.add(new JsonPrimitive(1.0d));
+        samples.add(new JsonPrimitive('c'));
+        return samples;
+    }
+
+    private static void assertSameOrderAsPrettyPrinting(Gson gson, List<JsonElement> samples) {
+        PrettyPrintedJsonOrdering ordering = new PrettyPrintedJsonOrdering(gson);
+        for (JsonElement left : samples) {
+            for (JsonElement right : samples) {
+                String leftJson = gson.toJson(left);
+                String rightJson = gson.toJson(right);
+                assertThat(leftJson + " vs " + rightJson, Integer.signum(ordering.compare(left, right)), is(Integer.signum(leftJson.compareTo(rightJson))));
+            }
+        }
+    }
+}
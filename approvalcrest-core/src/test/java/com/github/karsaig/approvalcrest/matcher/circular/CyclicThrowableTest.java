@@ -12,10 +12,9 @@ import org.junit.jupiter.api.Test;
  * Cycles between throwables must terminate, the way cycles between ordinary beans already do in
  * {@link BeanMatcherCircularReferenceTest}.
  *
- * <p>Throwables take a different path: {@code ThrowableTypeAdapterFactory} post-processes the
- * serialised graph to name the concrete type of each nested throwable, and that walk follows
- * {@code 0x} references across the graph rather than descending the JSON tree, so a ring leads back
- * to a reference it has already seen.
+ * <p>Throwables take a different path: {@code ThrowableTypeAdapterFactory} names the concrete type
+ * of each throwable in the reference envelope, matching every {@code 0x} reference to the throwable
+ * it stands for, so a ring leads back to a reference it has already seen.
  */
 public class CyclicThrowableTest extends AbstractBeanMatcherTest {
 
@@ -177,6 +177,32 @@ public class FieldsIgnorerSortingTest {
                 .get("name").getAsString(), is("a"));
     }
 
+    @Test
+    void applySortingKeepsOrderOfEqualKeysInLargeArrays() {
+        // Large enough to be sorted in parallel; elements differing only in the ignored id keep their order.
+        JsonArray list = new JsonArray();
+        for (int i = 0; i < 20000; i++) {
+            JsonObject element = new JsonObject();
+            element.addProperty("id", i);
+            element.addProperty("v", 9 - i % 10);
+            list.add(element);
+        }
+        JsonObject json = new JsonObject();
+        json.add("list", list);
+        Map<String, List<SortField<String>>> paths = new HashMap<>();
+        paths.put("list", Arrays.asList(SortField.of("list").ignoring("id")));
+
+        FieldsIgnorer.applySorting(json, paths, NO_MATCHERS, true);
+
+        JsonArray sorted = json.getAsJsonArray("list");
+        for (int i = 1; i < sorted.size(); i++) {
+            JsonObject previous = sorted.get(i - 1).getAsJsonObject();
+            JsonObject current = sorted.get(i).getAsJsonObject();
+            int byValue = Integer.compare(previous.get("v").getAsInt(), current.get("v").getAsInt());
+            assertThat(byValue < 0 || byValue == 0 && previous.get("id").getAsInt() < current.get("id").getAsInt(), is(true));
+        }
+    }
+
     // -------------------------------------------------------------------------
     // applyRootCollectionSorting — Set/Map/Collection/type-based root ordering
     // -------------------------------------------------------------------------
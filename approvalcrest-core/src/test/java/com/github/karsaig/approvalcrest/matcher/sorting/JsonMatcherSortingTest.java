@@ -3874,8 +3874,8 @@ public class JsonMatcherSortingTest extends AbstractJsonMatcherIgnoreTest  {
     @Test
     public void collectionInCollectionSortingOrdersInnerArraysByTheirContent() {
         // sort-gap-12: sort a collection whose elements are themselves collections;
-        // getFilteredStringForSorting hits the isJsonArray branch for inner elements
-        // and uses their full JSON as sort key.
+        // the inner arrays are sorted first and their sort key is built from the
+        // keys of their elements, which is their full JSON.
         String actual = "{\n" +
                 "  \"matrix\": [\n" +
                 "    [\"Z\", \"B\"],\n" +
@@ -3988,7 +3988,7 @@ public class JsonMatcherSortingTest extends AbstractJsonMatcherIgnoreTest  {
     public void sortFieldWithNullElementProducesConsistentOrder() {
         // A null element inside a sorted array must not cause an NPE.
         // SortElement.compareTo uses the filtered JSON string as key; for JsonNull
-        // getFilteredStringForSorting returns "null", so nulls sort consistently
+        // SortKeyWriter writes "null", so nulls sort consistently
         // (lexicographically before any non-null value that doesn't start with '"n').
         // The test just verifies no exception and a deterministic approved order.
         String actual = "{\n" +
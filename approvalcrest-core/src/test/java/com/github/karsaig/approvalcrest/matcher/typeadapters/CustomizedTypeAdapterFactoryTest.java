@@ -0,0 +1,99 @@
+package com.github.karsaig.approvalcrest.matcher.typeadapters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link CustomizedTypeAdapterFactory}: properties are filtered and renamed while streamed, and the
+ * tree based hook is only called when asked for.
+ */
+public class CustomizedTypeAdapterFactoryTest {
+
+    @SuppressWarnings("unused")
+    static class Bean {
+        String name = "bean";
+        String secret = "hidden";
+        List<Bean> children;
+    }
+
+    private static Bean bean() {
+        Bean child = new Bean();
+        child.name = "child";
+        Bean actual = new Bean();
+        actual.children = Arrays.asList(child, null);
+        return actual;
+    }
+
+    private static final class StreamingFactory extends CustomizedTypeAdapterFactory<Bean> {
+        StreamingFactory() {
+            super(Bean.class);
+        }
+
+        @Override
+        protected JsonWriter beforeWrite(Bean source, JsonWriter out) {
+            return new PropertyFilteringJsonWriter(out) {
+                @Override
+                protected String filterName(String name) {
+                    if (depth() != 1) {
+                        return name;
+                    }
+                    return "secret".equals(name) ? null : name.toUpperCase();
+                }
+
+                @Override
+                protected void beforeEndObject() throws IOException {
+                    if (depth() == 1) {
+                        delegate().name("length").value(source.name.length());
+                    }
+                }
+            };
+        }
+
+        @Override
+        protected void beforeWrite(Bean source, JsonElement toSerialize) {
+            throw new AssertionError("tree built");
+        }
+    }
+
+    private static final class TreeFactory extends CustomizedTypeAdapterFactory<Bean> {
+        TreeFactory() {
+            super(Bean.class, true);
+        }
+
+        @Override
+        protected JsonWriter beforeWrite(Bean source, JsonWriter out) {
+            throw new AssertionError("streamed");
+        }
+
+        @Override
+        protected void beforeWrite(Bean source, JsonElement toSerialize) {
+            if (source != null) {
+                toSerialize.getAsJsonObject().remove("secret");
+            }
+        }
+    }
+
+    @Test
+    void propertiesAreFilteredAndRenamedWhileStreamed() {
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(new StreamingFactory()).create();
+
+        assertThat(gson.toJson(bean()), is("{\"NAME\":\"bean\",\"CHILDREN\":[{\"NAME\":\"child\",\"length\":5},null],\"length\":4}"));
+    }
+
+    @Test
+    void treeIsOnlyBuiltWhenAskedFor() {
+        Gson gson = new GsonBuilder().serializeNulls().registerTypeAdapterFactory(new TreeFactory()).create();
+
+        assertThat(gson.toJson(bean()), is("{\"name\":\"bean\",\"children\":[{\"name\":\"child\",\"children\":null},null]}"));
+    }
+}
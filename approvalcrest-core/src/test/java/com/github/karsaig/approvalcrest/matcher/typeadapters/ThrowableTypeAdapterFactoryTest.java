@@ -0,0 +1,80 @@
+package com.github.karsaig.approvalcrest.matcher.typeadapters;
+
+import com.github.karsaig.approvalcrest.ReflectUtil;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.graph.GraphAdapterBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link ThrowableTypeAdapterFactory}: stack traces are left out without being serialised, and every
+ * throwable, including the ones in a reference envelope, is labelled with its class.
+ */
+public class ThrowableTypeAdapterFactoryTest {
+
+    @BeforeAll
+    static void openJavaLang() {
+        // Loading ReflectUtil opens java.lang, whose Throwable fields Gson reads reflectively
+        ReflectUtil.getMode();
+    }
+
+    private static Gson gson(Class<?>... circularTypes) {
+        GsonBuilder builder = new GsonBuilder();
+        if (circularTypes.length > 0) {
+            GraphAdapterBuilder graphAdapterBuilder = new GraphAdapterBuilder();
+            for (Class<?> type : circularTypes) {
+                graphAdapterBuilder.addType(type);
+            }
+            graphAdapterBuilder.registerOn(builder);
+        }
+        builder.registerTypeAdapter(StackTraceElement.class, new TypeAdapter<StackTraceElement>() {
+            @Override
+            public void write(JsonWriter out, StackTraceElement value) {
+                throw new AssertionError("stack trace element serialised");
+            }
+
+            @Override
+            public StackTraceElement read(JsonReader in) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        return builder.registerTypeAdapterFactory(new ThrowableTypeAdapterFactory())
+                .registerTypeAdapterFactory(ThrowableTypeAdapterFactory.STACK_TRACE_FACTORY)
+                .create();
+    }
+
+    @Test
+    void stackTraceIsLeftOutWithoutSerialisingItsElements() {
+        RuntimeException actual = new RuntimeException("outer", new IllegalStateException("inner"));
+        actual.getStackTrace();
+        actual.getCause().getStackTrace();
+
+        assertThat(gson().toJson(actual), is("{\"detailMessage\":\"outer\",\"cause\":{\"detailMessage\":\"inner\",\"suppressedExceptions\":[],\"class\":\"java.lang.IllegalStateException\"},"
+                + "\"suppressedExceptions\":[],\"class\":\"java.lang.RuntimeException\"}"));
+    }
+
+    @Test
+    void everyThrowableOfAReferenceEnvelopeIsLabelled() {
+        RuntimeException actual = new RuntimeException("outer");
+        actual.addSuppressed(new IllegalStateException("suppressed"));
+        actual.getStackTrace();
+
+        assertThat(gson(RuntimeException.class, IllegalStateException.class).toJson(actual), is("{\"0x1\":{\"detailMessage\":\"outer\",\"suppressedExceptions\":[\"0x2\"],\"class\":\"java.lang.RuntimeException\"},"
+                + "\"0x2\":{\"detailMessage\":\"suppressed\",\"suppressedExceptions\":[],\"class\":\"java.lang.IllegalStateException\"}}"));
+    }
+
+    @Test
+    void causeRootingItsOwnGraphIsLabelledInsideItsEnvelope() {
+        RuntimeException actual = new RuntimeException("outer", new IllegalStateException("inner"));
+
+        assertThat(gson(IllegalStateException.class).toJson(actual), is("{\"detailMessage\":\"outer\",\"cause\":{\"0x1\":{\"detailMessage\":\"inner\",\"suppressedExceptions\":[],\"class\":\"java.lang.IllegalStateException\"}},"
+                + "\"suppressedExceptions\":[],\"class\":\"java.lang.RuntimeException\"}"));
+    }
+}